@@ -0,0 +1,128 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.util.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Boards and inputs shared by the benchmarks. Everything is drawn from a
+// fixed seed so two runs (or two commits) measure the same boards.
+final class Boards {
+    static final long SEED = 42;
+    static final int NOTE_WIDTH = 10;
+    static final int NOTE_HEIGHT = 5;
+    static final List<String> COLOURS = List.of("red", "blue", "green", "yellow");
+    private static final String[] WORDS = {
+        "meeting", "lunch", "deadline", "review", "release", "standup", "coffee",
+        "budget", "roadmap", "hiring", "offsite", "retro", "demo", "launch",
+        "invoice", "holiday", "training", "support", "server", "backup"
+    };
+
+    private Boards() {
+    }
+
+    // Side of a square board where notes cover it about once over
+    static int sideFor(int notes) {
+        return Math.max(100, (int) Math.ceil(Math.sqrt((double) notes * NOTE_WIDTH * NOTE_HEIGHT)));
+    }
+
+    static Board empty(int notes) {
+        int side = sideFor(notes);
+        return new Board(side, side, NOTE_WIDTH, NOTE_HEIGHT, COLOURS);
+    }
+
+    // A board holding exactly this many notes at random corners
+    static Board filled(int notes) {
+        Board board = empty(notes);
+        fill(board, notes, new Random(SEED));
+        return board;
+    }
+
+    static void fill(Board board, int notes, Random random) {
+        int posted = 0;
+        while (posted < notes) {
+            int x = random.nextInt(board.getBoardWidth() - NOTE_WIDTH + 1);
+            int y = random.nextInt(board.getBoardHeight() - NOTE_HEIGHT + 1);
+            if (board.postNote(x, y, colour(random), message(random)).equals("OK NOTE_POSTED")) {
+                posted++;
+            }
+        }
+    }
+
+    // Pin about one in every `every` notes, through their corners
+    static void pinSome(Board board, int every) {
+        BoardSnapshot snapshot = board.snapshot();
+        for (int i = 0; i < snapshot.size(); i += every) {
+            board.pinNote(snapshot.getX(i), snapshot.getY(i));
+        }
+    }
+
+    static String colour(Random random) {
+        return COLOURS.get(random.nextInt(COLOURS.size()));
+    }
+
+    static String message(Random random) {
+        return WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(1000);
+    }
+
+    // A word most messages don't contain, for refersTo= filters
+    static String searchTerm(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    // Random points on the board, each as {x, y}
+    static int[][] points(Board board, int count, Random random) {
+        int[][] points = new int[count][];
+        for (int i = 0; i < count; i++) {
+            points[i] = new int[]{random.nextInt(board.getBoardWidth()), random.nextInt(board.getBoardHeight())};
+        }
+        return points;
+    }
+
+    // Points inside existing notes, so PIN and UNPIN find something
+    static int[][] notePoints(Board board, int count, Random random) {
+        BoardSnapshot snapshot = board.snapshot();
+        int[][] points = new int[count][];
+        for (int i = 0; i < count; i++) {
+            int n = random.nextInt(snapshot.size());
+            points[i] = new int[]{snapshot.getX(n) + random.nextInt(NOTE_WIDTH), snapshot.getY(n) + random.nextInt(NOTE_HEIGHT)};
+        }
+        return points;
+    }
+
+    // GET output goes to the blackhole instead of a socket
+    static NoteSink sink(Blackhole blackhole) {
+        return new NoteSink() {
+            @Override
+            public void count(int n) {
+                blackhole.consume(n);
+            }
+
+            @Override
+            public void note(int x, int y, String colour, String message, boolean pinned) {
+                blackhole.consume(x);
+                blackhole.consume(y);
+                blackhole.consume(colour);
+                blackhole.consume(message);
+                blackhole.consume(pinned);
+            }
+
+            // the server writes the note's stored line as it is, so no decoding here either
+            @Override
+            public void note(BoardSnapshot snapshot, int i) {
+                blackhole.consume(snapshot);
+                blackhole.consume(i);
+            }
+
+            @Override
+            public void cursor(long after) {
+                blackhole.consume(after);
+            }
+
+            @Override
+            public void pin(int x, int y) {
+                blackhole.consume(x);
+                blackhole.consume(y);
+            }
+        };
+    }
+}
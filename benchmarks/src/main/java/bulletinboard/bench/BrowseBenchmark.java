@@ -0,0 +1,63 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// A client browsing a large board over loopback: every note in one GET,
+// against the same notes a page at a time with GET limit= after=, the next
+// page from the CURSOR line of the last one and back to the first after
+// the end. An operation is one request and its whole reply, so whole is the
+// time to read the board and page the time a browsing client waits; the
+// sampled percentiles show what paging does to the tail.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class BrowseBenchmark {
+    @Param({"nio"})
+    public String engine;
+
+    @Param({"text", "binary"})
+    public String protocol;
+
+    @Param({"20000"})
+    public int notes;
+
+    @Param({"100"})
+    public int limit;
+
+    private ClientConnection connection;
+    private long after = Board.FROM_START;
+
+    @Setup(Level.Trial)
+    public void connect() throws IOException, InterruptedException {
+        int port = Servers.start(engine, notes);
+        connection = new ClientConnection("localhost", port);
+        if (protocol.equals("binary") && !connection.enableBinary().equals("OK BINARY")) {
+            throw new IllegalStateException("server refused BINARY");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void disconnect() throws IOException {
+        connection.disconnect();
+    }
+
+    @Benchmark
+    public List<String> whole() throws IOException {
+        return connection.get(null, null, null);
+    }
+
+    @Benchmark
+    public List<String> page() throws IOException {
+        List<String> reply = connection.get(null, null, null, limit, after);
+        String last = reply.get(reply.size() - 1);
+        after = last.startsWith("CURSOR ") ? Long.parseLong(last.substring("CURSOR ".length())) : Board.FROM_START;
+        return reply;
+    }
+}
@@ -0,0 +1,78 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// Request latency for a few active clients while many more connections sit
+// idle. The idle sockets cost a thread each on the thread engine, a virtual
+// thread on the virtual engine and only a selector key on nio, which is
+// where the engines should pull apart.
+//
+// Every connection is two file descriptors in this JVM (both ends), so
+// 10000 idle connections need `ulimit -n` above 20000 or the setup fails
+// with "Too many open files". The server's connection cap is lifted, since
+// 10000 idle ones plus the active ones are over the default.
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g", "-Dbulletinboard.maxConnections=0"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class ConnectionScalingBenchmark {
+    private static final int POINTS = 4096;
+
+    @Param({"thread", "virtual", "nio"})
+    public String engine;
+
+    @Param({"100", "1000", "10000"})
+    public int idleConnections;
+
+    private int port;
+    private final List<Socket> idle = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, InterruptedException {
+        port = Servers.start(engine, 20000);
+        for (int i = 0; i < idleConnections; i++) {
+            idle.add(new Socket("localhost", port));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Socket socket : idle) {
+            socket.close();
+        }
+        idle.clear();
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        ClientConnection connection;
+        int[][] points;
+        int next = 0;
+
+        @Setup(Level.Trial)
+        public void connect(ConnectionScalingBenchmark benchmark, ThreadParams thread) throws IOException {
+            connection = new ClientConnection("localhost", benchmark.port);
+            points = Boards.notePoints(BulletinBoard.BOARD, POINTS, new Random(Boards.SEED + thread.getThreadIndex()));
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            connection.disconnect();
+        }
+    }
+
+    @Benchmark
+    public void get(Client client, Blackhole blackhole) throws IOException {
+        blackhole.consume(client.connection.get(null, client.points[client.next++ & (POINTS - 1)], null));
+    }
+}
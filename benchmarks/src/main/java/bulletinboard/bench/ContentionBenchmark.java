@@ -0,0 +1,66 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// Several threads on one board. Run with -t 1, 2, 4, ... to see how it
+// scales: writers in different tiles shouldn't wait for each other. Each
+// operation is a write (PIN then UNPIN of a point, so the board stays the
+// same size) with probability writePercent, otherwise a point GET.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class ContentionBenchmark {
+    private static final int POINTS = 4096;
+
+    @Param({"20000"})
+    public int notes;
+
+    @Param({"0", "10", "50", "100"})
+    public int writePercent;
+
+    private Board board;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        board = Boards.filled(notes);
+    }
+
+    @State(Scope.Thread)
+    public static class Worker {
+        int[][] points;
+        boolean[] writes;
+        int next = 0;
+
+        @Setup(Level.Trial)
+        public void setup(ContentionBenchmark benchmark, ThreadParams thread) {
+            Random random = new Random(Boards.SEED + thread.getThreadIndex());
+            points = Boards.notePoints(benchmark.board, POINTS, random);
+            writes = new boolean[POINTS];
+            for (int i = 0; i < POINTS; i++) {
+                writes[i] = random.nextInt(100) < benchmark.writePercent;
+            }
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public void mixed(Worker worker, Blackhole blackhole) {
+        int i = worker.next++ & (POINTS - 1);
+        int[] point = worker.points[i];
+        if (worker.writes[i]) {
+            blackhole.consume(board.pinNote(point[0], point[1]));
+            blackhole.consume(board.unpinNote(point[0], point[1]));
+        } else {
+            board.streamNotes(null, point, null, Boards.sink(blackhole));
+        }
+    }
+}
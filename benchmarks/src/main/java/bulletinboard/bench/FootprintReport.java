@@ -0,0 +1,33 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+
+// Not a JMH benchmark: prints the heap a filled Board keeps per note, first
+// its tiles (Note objects, the tiles' maps and text indexes), then the
+// columns of the snapshot it publishes for GET. Heap use is read around
+// System.gc(), so run it with a fixed heap and nothing else going on:
+//   java -Xms4g -Xmx4g -cp benchmarks/target/benchmarks.jar bulletinboard.bench.FootprintReport
+public class FootprintReport {
+    public static void main(String[] args) {
+        int notes = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long start = used();
+        Board board = Boards.filled(notes);
+        long afterTiles = used();
+        BoardSnapshot published = board.snapshot();
+        long afterSnapshot = used();
+        System.out.printf("%d notes%n", notes);
+        System.out.printf("board tiles        %6.1f B/note%n", (double) (afterTiles - start) / notes);
+        System.out.printf("published snapshot %6.1f B/note%n", (double) (afterSnapshot - afterTiles) / notes);
+        System.out.printf("total              %6.1f B/note%n", (double) (afterSnapshot - start) / notes);
+        // keep both alive until after the last measurement
+        System.out.println(published == board.snapshot() ? "" : "snapshot changed");
+    }
+
+    private static long used() {
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        Runtime runtime = Runtime.getRuntime();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,71 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// GET with every combination of filters, on boards of growing size. A point
+// filter (contains=) should stay flat as the board grows; the others are
+// bounded by how many notes match. The queries repeat on an unchanging
+// board, so with cache=on they come from the board's GET cache after the
+// first round; cache=off measures the indexes and the scan, comparable with
+// runs from before there was a cache. The cache size is read once per JVM,
+// so each setting needs its own fork (the default).
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class GetBenchmark {
+    private static final int QUERIES = 1024;
+
+    @Param({"1000", "20000", "200000"})
+    public int notes;
+
+    @Param({"none", "colour", "contains", "refersTo", "colour+contains",
+            "colour+refersTo", "contains+refersTo", "colour+contains+refersTo"})
+    public String filter;
+
+    @Param({"off", "on"})
+    public String cache;
+
+    private Board board;
+    private String[] colours;
+    private int[][] points;
+    private String[] terms;
+    private boolean byColour;
+    private boolean byPoint;
+    private boolean byText;
+    private int next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        // before Board, and with it GetCache, is loaded
+        System.setProperty("bulletinboard.getCache", cache.equals("on") ? "1024" : "0");
+        byColour = filter.contains("colour");
+        byPoint = filter.contains("contains");
+        byText = filter.contains("refersTo");
+        board = Boards.filled(notes);
+        Boards.pinSome(board, 3);
+        Random random = new Random(Boards.SEED);
+        colours = new String[QUERIES];
+        terms = new String[QUERIES];
+        for (int i = 0; i < QUERIES; i++) {
+            colours[i] = Boards.colour(random);
+            terms[i] = Boards.searchTerm(random);
+        }
+        points = Boards.notePoints(board, QUERIES, random);
+    }
+
+    @Benchmark
+    public void getNotes(Blackhole blackhole) {
+        int i = next++ & (QUERIES - 1);
+        String colour = byColour ? colours[i] : null;
+        int[] contains = byPoint ? points[i] : null;
+        String referenceTo = byText ? terms[i] : null;
+        board.streamNotes(colour, contains, referenceTo, Boards.sink(blackhole));
+    }
+}
@@ -0,0 +1,84 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// End to end over loopback TCP: one ClientConnection per benchmark thread
+// against the server running in this JVM, for each engine and protocol. An
+// operation is a request and its whole reply, so this includes parsing,
+// reply encoding and the socket round trip that the in-process benchmarks
+// leave out. Each operation is a PIN+UNPIN with probability writePercent,
+// otherwise a point GET.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(8)
+@State(Scope.Benchmark)
+public class LoopbackBenchmark {
+    private static final int POINTS = 4096;
+
+    @Param({"thread", "virtual", "nio"})
+    public String engine;
+
+    @Param({"text", "binary"})
+    public String protocol;
+
+    @Param({"20000"})
+    public int notes;
+
+    @Param({"10"})
+    public int writePercent;
+
+    private int port;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException, InterruptedException {
+        port = Servers.start(engine, notes);
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        ClientConnection connection;
+        int[][] points;
+        boolean[] writes;
+        int next = 0;
+
+        @Setup(Level.Trial)
+        public void connect(LoopbackBenchmark benchmark, ThreadParams thread) throws IOException {
+            connection = new ClientConnection("localhost", benchmark.port);
+            if (benchmark.protocol.equals("binary") && !connection.enableBinary().equals("OK BINARY")) {
+                throw new IllegalStateException("server refused BINARY");
+            }
+            Random random = new Random(Boards.SEED + thread.getThreadIndex());
+            points = Boards.notePoints(BulletinBoard.BOARD, POINTS, random);
+            writes = new boolean[POINTS];
+            for (int i = 0; i < POINTS; i++) {
+                writes[i] = random.nextInt(100) < benchmark.writePercent;
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() throws IOException {
+            connection.disconnect();
+        }
+    }
+
+    @Benchmark
+    public void request(Client client, Blackhole blackhole) throws IOException {
+        int i = client.next++ & (POINTS - 1);
+        int[] point = client.points[i];
+        if (client.writes[i]) {
+            blackhole.consume(client.connection.pin(point[0], point[1]));
+            blackhole.consume(client.connection.unpin(point[0], point[1]));
+        } else {
+            blackhole.consume(client.connection.get(null, point, null));
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// POST (with and without a TTL), PIN, UNPIN and SHAKE each change the board, so they are measured in
+// single-shot batches on a freshly filled board per iteration instead of in
+// a loop that would keep growing (or emptying) it. A score is the time for
+// one batch of BATCH operations; for SHAKE it is one shake.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = MutationBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = MutationBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Benchmark)
+public class MutationBenchmark {
+    static final int BATCH = 1000;
+
+    @Param({"1000", "20000", "200000"})
+    public int notes;
+
+    private Board board;
+    private int[][] points;
+    private String[] colours;
+    private String[] messages;
+    private int next;
+    // one seed per iteration, so every iteration sees a different but repeatable board
+    private long iteration = 0;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        Random random = new Random(Boards.SEED + iteration++);
+        board = Boards.empty(notes);
+        Boards.fill(board, notes, random);
+        Boards.pinSome(board, 2);
+        colours = new String[BATCH];
+        messages = new String[BATCH];
+        for (int i = 0; i < BATCH; i++) {
+            colours[i] = Boards.colour(random);
+            messages[i] = Boards.message(random);
+        }
+        points = Boards.notePoints(board, BATCH, random);
+        next = 0;
+    }
+
+    @Benchmark
+    public String postNote() {
+        int i = next++ % BATCH;
+        return board.postNote(points[i][0], points[i][1], colours[i], messages[i]);
+    }
+
+    // The same with a time to live, for what scheduling its expiry costs
+    @Benchmark
+    public String postExpiringNote() {
+        int i = next++ % BATCH;
+        return board.postNote(points[i][0], points[i][1], colours[i], messages[i], 3600);
+    }
+
+    @Benchmark
+    public String pinNote() {
+        int[] point = points[next++ % BATCH];
+        return board.pinNote(point[0], point[1]);
+    }
+
+    // Every point is pinned first, so each UNPIN removes something
+    @State(Scope.Benchmark)
+    public static class Pinned {
+        @Setup(Level.Iteration)
+        public void pinAll(MutationBenchmark benchmark) {
+            for (int[] point : benchmark.points) {
+                benchmark.board.pinNote(point[0], point[1]);
+            }
+        }
+    }
+
+    @Benchmark
+    public String unpinNote(Pinned pinned) {
+        int[] point = points[next++ % BATCH];
+        return board.unpinNote(point[0], point[1]);
+    }
+
+    // Half the notes are pinned, so one shake takes the other half off
+    @Benchmark
+    @Warmup(iterations = 5, batchSize = 1)
+    @Measurement(iterations = 10, batchSize = 1)
+    public String shakeBoard() {
+        return board.shakeBoard();
+    }
+}
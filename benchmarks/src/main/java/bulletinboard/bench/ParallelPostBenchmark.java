@@ -0,0 +1,59 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// Every thread posts its own batch of new notes all over one board. Run
+// with -t 1, 2, 4, ...: with per-tile locks the time for a batch per thread
+// should stay about the same as threads are added, up to the core count.
+// A score is the time until every thread has posted BATCH notes.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = ParallelPostBenchmark.BATCH)
+@Measurement(iterations = 10, batchSize = ParallelPostBenchmark.BATCH)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(4)
+@State(Scope.Benchmark)
+public class ParallelPostBenchmark {
+    static final int BATCH = 5000;
+
+    @Param({"20000"})
+    public int notes;
+
+    private Board board;
+
+    @Setup(Level.Iteration)
+    public void setup() {
+        board = Boards.filled(notes);
+    }
+
+    @State(Scope.Thread)
+    public static class Poster {
+        int[][] points;
+        String[] colours;
+        String[] messages;
+        int next;
+
+        @Setup(Level.Iteration)
+        public void setup(ParallelPostBenchmark benchmark, ThreadParams thread) {
+            Random random = new Random(Boards.SEED + thread.getThreadIndex());
+            points = Boards.points(benchmark.board, BATCH, random);
+            colours = new String[BATCH];
+            messages = new String[BATCH];
+            for (int i = 0; i < BATCH; i++) {
+                colours[i] = Boards.colour(random);
+                messages[i] = Boards.message(random);
+            }
+            next = 0;
+        }
+    }
+
+    @Benchmark
+    public String postNote(Poster poster) {
+        int i = poster.next++ % BATCH;
+        return board.postNote(poster.points[i][0], poster.points[i][1], poster.colours[i], poster.messages[i]);
+    }
+}
@@ -0,0 +1,57 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Parse cost per command type, through CommandProcessor.handle as the server
+// calls it. Every line is fully parsed but then rejected by a cheap check
+// (off the board, unknown colour), so the board itself costs next to nothing.
+// Run with -prof gc for the allocation rate per command.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class ParserBenchmark {
+    private static final Map<String, String> LINES = Map.of(
+        "post", "POST 100000 200000 red Team meeting moved to   room 4 at three",
+        "pin", "PIN 100000 200000",
+        "unpin", "UNPIN 100000 200000",
+        "get", "GET colour=purple contains=12 34 refersTo=meeting room",
+        "invalid", "POST 12 twelve red message");
+
+    @Param({"post", "pin", "unpin", "get", "invalid"})
+    public String command;
+
+    private CommandProcessor processor;
+    // the server hands lines over in a reused builder, not as Strings
+    private final StringBuilder line = new StringBuilder();
+    private DiscardReplies replies;
+
+    // Keeps the last reply so the work can't be optimised away
+    static class DiscardReplies extends ReplyWriter {
+        Blackhole blackhole;
+
+        @Override
+        protected void writeLine(CharSequence text) {
+            blackhole.consume(text);
+        }
+    }
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        processor = new CommandProcessor(new Board(1000, 1000, 10, 5, Boards.COLOURS));
+        line.append(LINES.get(command));
+        replies = new DiscardReplies();
+        replies.blackhole = blackhole;
+    }
+
+    @Benchmark
+    public void handle() {
+        processor.handle(line, replies);
+    }
+}
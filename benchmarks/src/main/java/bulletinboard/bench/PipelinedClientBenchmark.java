@@ -0,0 +1,74 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// Requests per client thread through AsyncClientConnection, keeping up to
+// `window` requests outstanding. window=1 waits for every reply like the
+// blocking ClientConnection in LoopbackBenchmark; larger windows show what
+// pipelining buys over loopback TCP.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(1)
+@State(Scope.Benchmark)
+public class PipelinedClientBenchmark {
+    private static final int POINTS = 4096;
+
+    @Param({"thread", "nio"})
+    public String engine;
+
+    @Param({"1", "16", "256"})
+    public int window;
+
+    private int port;
+
+    @Setup(Level.Trial)
+    public void startServer() throws IOException, InterruptedException {
+        port = Servers.start(engine, 20000);
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        AsyncClientConnection connection;
+        final ArrayDeque<CompletableFuture<List<String>>> outstanding = new ArrayDeque<>();
+        int[][] points;
+        int next = 0;
+
+        @Setup(Level.Trial)
+        public void connect(PipelinedClientBenchmark benchmark, ThreadParams thread) throws IOException {
+            connection = new AsyncClientConnection("localhost", benchmark.port);
+            points = Boards.notePoints(BulletinBoard.BOARD, POINTS, new Random(Boards.SEED + thread.getThreadIndex()));
+        }
+
+        // Replies still outstanding at the end of an iteration are waited for
+        // here, outside the measurement
+        @TearDown(Level.Iteration)
+        public void drain() {
+            while (!outstanding.isEmpty()) {
+                outstanding.poll().join();
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void disconnect() {
+            connection.close();
+        }
+    }
+
+    @Benchmark
+    public void get(Client client, Blackhole blackhole) {
+        if (client.outstanding.size() >= window) {
+            blackhole.consume(client.outstanding.poll().join());
+        }
+        client.outstanding.add(client.connection.get(null, client.points[client.next++ & (POINTS - 1)], null));
+    }
+}
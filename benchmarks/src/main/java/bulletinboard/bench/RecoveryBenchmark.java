@@ -0,0 +1,58 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+// Startup recovery: load the snapshot and replay the log into an empty
+// board. The store is written once per trial: a snapshot of all the notes
+// but the last tenth, which are left in the log to be replayed.
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms6g", "-Xmx6g"})
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    @Param({"100000", "1000000"})
+    public int notes;
+
+    private Path dir;
+    private BoardStore recovered;
+
+    @Setup(Level.Trial)
+    public void write() throws IOException {
+        dir = Files.createTempDirectory("bulletinboard-recovery");
+        Board board = Boards.empty(notes);
+        BoardStore store = BoardStore.open(board, dir, WriteAheadLog.Durability.NONE, Long.MAX_VALUE);
+        Random random = new Random(Boards.SEED);
+        Boards.fill(board, notes - notes / 10, random);
+        Boards.pinSome(board, 3);
+        store.checkpoint();
+        Boards.fill(board, notes / 10, random);
+        store.close();
+    }
+
+    @TearDown(Level.Iteration)
+    public void closeRecovered() throws IOException {
+        if (recovered != null) {
+            recovered.close();
+            recovered = null;
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() throws IOException {
+        Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+
+    @Benchmark
+    public Board recover() throws IOException {
+        Board board = Boards.empty(notes);
+        recovered = BoardStore.open(board, dir, WriteAheadLog.Durability.NONE, Long.MAX_VALUE);
+        return board;
+    }
+}
@@ -0,0 +1,251 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Not a JMH benchmark: plays a capture taken with -Dbulletinboard.capture
+// back against a running server, one ClientConnection per recorded
+// connection, each opened and sending at the recorded times. Prints the
+// throughput, latency percentiles per command, and every reply that differs
+// from the recorded one. Run with
+//   java -cp benchmarks/target/benchmarks.jar bulletinboard.bench.Replay <capture> <host> <port> [speed]
+// where speed is 1 (the recorded pace, the default), N for N times as fast,
+// or max to send each command as soon as the one before is answered.
+//
+// Replies are only comparable if the server starts from the board the
+// capture started from, and connections that raced each other may well
+// see each other's changes in another order this time; STATS always differs.
+public class Replay {
+    // Differences printed in full; the rest are only counted
+    private static final int SHOWN_DIFFERENCES = 20;
+
+    // One request: a text line, the lines of a BATCH, or a binary frame;
+    // and the reply recorded for it
+    static class Step {
+        long micros;
+        final List<String> lines = new ArrayList<>();
+        byte[] frame;
+        final List<String> expected = new ArrayList<>();
+
+        String command() {
+            if (frame != null) return frameName(frame[0]);
+            String line = lines.get(0).trim();
+            int space = line.indexOf(' ');
+            return (space < 0 ? line : line.substring(0, space)).toUpperCase();
+        }
+    }
+
+    // One recorded connection
+    static class Session {
+        final int id;
+        final long openMicros;
+        final List<String> handshake = new ArrayList<>();
+        final List<Step> steps = new ArrayList<>();
+
+        Session(int id, long openMicros) {
+            this.id = id;
+            this.openMicros = openMicros;
+        }
+
+        Step current() {
+            return steps.isEmpty() ? null : steps.get(steps.size() - 1);
+        }
+    }
+
+    private final Map<String, LatencyHistogram> latency = new ConcurrentSkipListMap<>();
+    private final LatencyHistogram all = new LatencyHistogram();
+    private final AtomicLong commands = new AtomicLong();
+    private final AtomicLong differences = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final List<String> shown = Collections.synchronizedList(new ArrayList<>());
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.out.println("Usage: Replay <capture> <host> <port> [1|N|max]");
+            return;
+        }
+        String host = args[1];
+        int port = Integer.parseInt(args[2]);
+        String speedArg = args.length > 3 ? args[3] : "1";
+        // 0 means as fast as possible
+        double speed = speedArg.equals("max") ? 0 : Double.parseDouble(speedArg);
+        Collection<Session> sessions = sessions(Capture.read(Paths.get(args[0])));
+        new Replay().run(sessions, host, port, speed);
+    }
+
+    // Split the records into connections and each into request steps. A
+    // command with no reply recorded yet when the next one comes is the
+    // start (or middle) of a BATCH, so both belong to one step.
+    static Collection<Session> sessions(List<Capture.Record> records) {
+        Map<Integer, Session> sessions = new LinkedHashMap<>();
+        for (Capture.Record record : records) {
+            if (record.kind == Capture.OPEN) {
+                sessions.put(record.connection, new Session(record.connection, record.micros));
+                continue;
+            }
+            Session session = sessions.get(record.connection);
+            if (session == null) continue;
+            Step step = session.current();
+            switch (record.kind) {
+                case Capture.LINE:
+                case Capture.FRAME:
+                    if (step == null || !step.expected.isEmpty() || step.frame != null) {
+                        step = new Step();
+                        step.micros = record.micros;
+                        session.steps.add(step);
+                    }
+                    if (record.kind == Capture.LINE) {
+                        step.lines.add(record.text);
+                    } else if (record.bytes.length > 0 && record.bytes[0] == BinaryCodec.TEXT) {
+                        // a text command inside a frame: same as the line
+                        BinaryCodec.FrameReader text = new BinaryCodec.FrameReader(record.bytes);
+                        text.getByte();
+                        step.lines.add(text.getString());
+                    } else if (step.lines.isEmpty()) {
+                        step.frame = record.bytes;
+                    }
+                    break;
+                case Capture.REPLY:
+                    (step == null ? session.handshake : step.expected).add(record.text);
+                    break;
+                default:
+                    break;
+            }
+        }
+        return sessions.values();
+    }
+
+    private void run(Collection<Session> sessions, String host, int port, double speed) throws InterruptedException {
+        long start = System.nanoTime();
+        List<Thread> threads = new ArrayList<>();
+        for (Session session : sessions) {
+            Thread thread = new Thread(() -> play(session, host, port, speed, start), "replay-" + session.id);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        report(sessions.size(), seconds);
+    }
+
+    private void play(Session session, String host, int port, double speed, long start) {
+        waitUntil(session.openMicros, speed, start);
+        ClientConnection connection = null;
+        try {
+            connection = new ClientConnection(host, port);
+            compare(session, "handshake", session.handshake, connection.getHandshakeResponse());
+            for (Step step : session.steps) {
+                // nothing was answered: the capture ended mid-request
+                if (step.expected.isEmpty()) break;
+                if (step.lines.size() > CommandProcessor.MAX_BATCH + 1) {
+                    // a BATCH refused for its length, which ClientConnection won't send
+                    compare(session, step.command(), step.expected, List.of("(not replayed)"));
+                    continue;
+                }
+                waitUntil(step.micros, speed, start);
+                long sent = System.nanoTime();
+                List<String> reply = send(connection, step);
+                long nanos = System.nanoTime() - sent;
+                all.record(nanos);
+                latency.computeIfAbsent(step.command(), k -> new LatencyHistogram()).record(nanos);
+                commands.incrementAndGet();
+                compare(session, step.frame != null ? step.command() : step.lines.get(0), step.expected, reply);
+                // events aren't recorded, so there is nothing to hold them for
+                connection.pendingEvents();
+            }
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            shown.add("connection " + session.id + " failed: " + e.getMessage());
+        } finally {
+            if (connection != null) {
+                try {
+                    connection.disconnect();
+                } catch (IOException e) {
+                    // done with it anyway
+                }
+            }
+        }
+    }
+
+    private static List<String> send(ClientConnection connection, Step step) throws IOException {
+        if (step.frame != null) {
+            return connection.sendFrame(step.frame);
+        }
+        if (step.lines.size() > 1) {
+            // BATCH n and its lines
+            return connection.sendBatch(step.lines.subList(1, step.lines.size()));
+        }
+        String line = step.lines.get(0);
+        if (line.trim().equals("BINARY") && !connection.isBinary()) {
+            return List.of(connection.enableBinary());
+        }
+        if (line.startsWith("USE ")) {
+            // so binary replies decode with the new board's colours
+            return connection.use(line.substring(4).trim());
+        }
+        return connection.sendCommand(line);
+    }
+
+    private void compare(Session session, String command, List<String> expected, List<String> actual) {
+        if (expected.equals(actual)) return;
+        if (differences.incrementAndGet() <= SHOWN_DIFFERENCES) {
+            shown.add("connection " + session.id + " " + command + "\n  recorded " + expected + "\n  replayed " + actual);
+        }
+    }
+
+    // Sleep until the recorded time, scaled by speed, has come
+    private static void waitUntil(long micros, double speed, long start) {
+        if (speed == 0) return;
+        long due = start + (long) (micros * 1000 / speed);
+        long wait;
+        while ((wait = due - System.nanoTime()) > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void report(int sessions, double seconds) {
+        System.out.printf(Locale.ROOT, "%d connections, %d commands in %.2f s, %.0f commands/s%n",
+            sessions, commands.get(), seconds, commands.get() / seconds);
+        System.out.printf("%-12s %9s %9s %9s %9s %9s %9s%n", "command", "count", "p50_us", "p90_us", "p99_us", "p999_us", "max_us");
+        printLatency("all", all);
+        latency.forEach(this::printLatency);
+        System.out.println(differences.get() + " replies differ from the capture, " + failures.get() + " connections failed");
+        for (String line : shown) {
+            System.out.println(line);
+        }
+    }
+
+    private void printLatency(String name, LatencyHistogram histogram) {
+        LatencyHistogram.Snapshot times = histogram.snapshot();
+        System.out.printf(Locale.ROOT, "%-12s %9d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name, times.getCount(),
+            times.percentile(0.5) / 1000.0, times.percentile(0.9) / 1000.0, times.percentile(0.99) / 1000.0,
+            times.percentile(0.999) / 1000.0, times.getMaxNanos() / 1000.0);
+    }
+
+    private static String frameName(byte kind) {
+        switch (kind) {
+            case BinaryCodec.POST: return "POST";
+            case BinaryCodec.PIN: return "PIN";
+            case BinaryCodec.UNPIN: return "UNPIN";
+            case BinaryCodec.GET: return "GET";
+            case BinaryCodec.GET_PINS: return "GET_PINS";
+            case BinaryCodec.SHAKE: return "SHAKE";
+            case BinaryCodec.CLEAR: return "CLEAR";
+            case BinaryCodec.SUBSCRIBE: return "SUBSCRIBE";
+            case BinaryCodec.UNSUBSCRIBE: return "UNSUBSCRIBE";
+            case BinaryCodec.DISCONNECT: return "DISCONNECT";
+            default: return "FRAME_" + kind;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.util.*;
+
+// Not a JMH benchmark: how long a POST on a primary takes to show up on a
+// replica, measured against two running servers. Posts notes one at a time
+// on the primary, each with a message of its own, and polls the replica
+// with GET refersTo=<message> until it is there. Run with
+//   java -cp benchmarks/target/benchmarks.jar bulletinboard.bench.ReplicationLag <primaryHost> <primaryPort> <replicaHost> <replicaPort> [notes]
+// against servers started with the same board arguments, the primary with
+// -Dbulletinboard.replicationPort and the replica with -Dbulletinboard.replicaOf.
+// The notes are left on the board.
+public class ReplicationLag {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: ReplicationLag <primaryHost> <primaryPort> <replicaHost> <replicaPort> [notes]");
+            return;
+        }
+        int notes = args.length > 4 ? Integer.parseInt(args[4]) : 1000;
+        ClientConnection primary = new ClientConnection(args[0], Integer.parseInt(args[1]));
+        ClientConnection replica = new ClientConnection(args[2], Integer.parseInt(args[3]));
+        // board size and a colour from the handshake: BOARD w h, NOTE_SIZE w h, COLORS ...
+        List<String> handshake = primary.getHandshakeResponse();
+        String[] board = handshake.get(0).split(" ");
+        String[] noteSize = handshake.get(1).split(" ");
+        String colour = handshake.get(2).split(" ")[1];
+        int width = Integer.parseInt(board[1]) - Integer.parseInt(noteSize[1]);
+        int height = Integer.parseInt(board[2]) - Integer.parseInt(noteSize[2]);
+        Random random = new Random(Boards.SEED);
+        String run = Long.toString(System.nanoTime(), 36);
+        LatencyHistogram lag = new LatencyHistogram();
+        long polls = 0;
+        for (int i = 0; i < notes; i++) {
+            String message = "lag" + run + "n" + i;
+            int x = random.nextInt(Math.max(1, width));
+            int y = random.nextInt(Math.max(1, height));
+            long posted = System.nanoTime();
+            List<String> reply = primary.sendCommand("POST " + x + " " + y + " " + colour + " " + message);
+            if (!reply.get(0).startsWith("OK")) {
+                // most likely a complete overlap; try somewhere else
+                i--;
+                continue;
+            }
+            while (true) {
+                polls++;
+                List<String> found = replica.sendCommand("GET refersTo=" + message);
+                if (found.get(0).startsWith("ERROR")) {
+                    throw new IOException("replica answered " + found.get(0));
+                }
+                if (found.size() > 1) break;
+            }
+            lag.record(System.nanoTime() - posted);
+        }
+        primary.disconnect();
+        replica.disconnect();
+        LatencyHistogram.Snapshot times = lag.snapshot();
+        System.out.printf(Locale.ROOT, "%d notes, %.1f polls per note%n", times.getCount(), (double) polls / notes);
+        System.out.printf(Locale.ROOT, "POST to visible on the replica: p50 %.1f us, p90 %.1f us, p99 %.1f us, max %.1f us%n",
+            times.percentile(0.5) / 1000.0, times.percentile(0.9) / 1000.0, times.percentile(0.99) / 1000.0,
+            times.getMaxNanos() / 1000.0);
+    }
+}
@@ -0,0 +1,47 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.*;
+
+// Starts the real server inside the benchmark JVM. The engine is read once
+// when BulletinBoard is first loaded, so every benchmark that uses this must
+// run each engine in its own fork (the default, since forks are per @Param).
+final class Servers {
+    private Servers() {
+    }
+
+    // Runs BulletinBoard.main on a free port with a board sized for `notes`,
+    // fills it, and returns the port once the server accepts connections
+    static int start(String engine, int notes) throws IOException, InterruptedException {
+        System.setProperty("bulletinboard.engine", engine);
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        int side = Boards.sideFor(notes);
+        List<String> args = new ArrayList<>(List.of(String.valueOf(port), String.valueOf(side), String.valueOf(side),
+            String.valueOf(Boards.NOTE_WIDTH), String.valueOf(Boards.NOTE_HEIGHT)));
+        args.addAll(Boards.COLOURS);
+        // with -f 0 an earlier trial's server is still running in this JVM
+        BulletinBoard.BOARD = null;
+        Thread server = new Thread(() -> BulletinBoard.main(args.toArray(new String[0])), "bulletinboard-server");
+        server.setDaemon(true);
+        server.start();
+        while (BulletinBoard.BOARD == null) {
+            Thread.sleep(10);
+        }
+        Boards.fill(BulletinBoard.BOARD, notes, new Random(Boards.SEED));
+        Boards.pinSome(BulletinBoard.BOARD, 3);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                new ClientConnection("localhost", port).disconnect();
+                return port;
+            } catch (IOException e) {
+                if (attempt == 200) throw e;
+                Thread.sleep(10);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+
+// Write throughput with the board kept on disk, for each durability mode.
+// Each operation is a PIN and an UNPIN (two log records) so the board stays
+// the same size. With fsync, threads writing at the same time share one
+// fsync, so throughput should grow with -t even though every reply waits.
+// The log goes to java.io.tmpdir; point that at the disk being measured.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(8)
+@State(Scope.Benchmark)
+public class StoreBenchmark {
+    private static final int POINTS = 4096;
+
+    @Param({"none", "async", "fsync", "memory"})
+    public String durability;
+
+    private Board board;
+    private BoardStore store;
+    private Path dir;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        board = Boards.filled(20000);
+        if (!durability.equals("memory")) {
+            dir = Files.createTempDirectory("bulletinboard-bench");
+            store = BoardStore.open(board, dir, WriteAheadLog.Durability.valueOf(durability.toUpperCase()), 100000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (store != null) {
+            store.close();
+            Files.walk(dir).sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        int[][] points;
+        int next = 0;
+
+        @Setup(Level.Trial)
+        public void setup(StoreBenchmark benchmark, ThreadParams thread) {
+            points = Boards.notePoints(benchmark.board, POINTS, new Random(Boards.SEED + thread.getThreadIndex()));
+        }
+    }
+
+    @Benchmark
+    public void pinAndUnpin(Writer writer, Blackhole blackhole) {
+        int[] point = writer.points[writer.next++ & (POINTS - 1)];
+        blackhole.consume(board.pinNote(point[0], point[1]));
+        blackhole.consume(board.unpinNote(point[0], point[1]));
+    }
+}
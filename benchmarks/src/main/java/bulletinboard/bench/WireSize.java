@@ -0,0 +1,65 @@
+package bulletinboard.bench;
+
+import bulletinboard.*;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Not a JMH benchmark: prints how many bytes each reply takes on the wire
+// in the text and the binary protocol, for the same boards the benchmarks
+// use. Run with
+//   java -cp benchmarks/target/benchmarks.jar bulletinboard.bench.WireSize
+public class WireSize {
+    // Counts bytes instead of sending them
+    static class CountingStream extends OutputStream {
+        long bytes = 0;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    static class TextBytes extends ReplyWriter {
+        long bytes = 0;
+
+        @Override
+        protected void writeLine(CharSequence text) {
+            bytes += text.toString().getBytes(StandardCharsets.UTF_8).length + 1;
+        }
+    }
+
+    public static void main(String[] args) {
+        System.out.printf("%-28s %12s %12s %7s%n", "reply", "text bytes", "binary bytes", "ratio");
+        for (int notes : new int[]{1000, 20000, 200000}) {
+            Board board = Boards.filled(notes);
+            Boards.pinSome(board, 3);
+            Random random = new Random(Boards.SEED);
+            int[] point = Boards.notePoints(board, 1, random)[0];
+            String colour = Boards.colour(random);
+            report("GET (" + notes + " notes)", board, out -> board.streamNotes(null, null, null, out));
+            report("GET colour=" + colour, board, out -> board.streamNotes(colour, null, null, out));
+            report("GET contains=", board, out -> board.streamNotes(null, point, null, out));
+            report("GET PINS", board, out -> board.streamPins(out));
+        }
+        Board board = Boards.filled(1000);
+        report("OK NOTE_POSTED", board, out -> out.println("OK NOTE_POSTED"));
+    }
+
+    interface Reply {
+        void writeTo(ReplyWriter out);
+    }
+
+    static void report(String name, Board board, Reply reply) {
+        TextBytes text = new TextBytes();
+        reply.writeTo(text);
+        CountingStream counted = new CountingStream();
+        reply.writeTo(new BinaryReplies(counted, board.getColours()));
+        System.out.printf("%-28s %12d %12d %6.2fx%n", name, text.bytes, counted.bytes, (double) text.bytes / counted.bytes);
+    }
+}
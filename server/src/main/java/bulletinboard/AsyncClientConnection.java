@@ -0,0 +1,261 @@
+package bulletinboard;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+import java.util.function.*;
+
+// Pipelined client: any number of threads may send commands without waiting
+// for the replies before them. The server answers in the order it received
+// commands, so a reader thread matches each reply to the oldest command
+// still waiting and completes its future.
+//
+// Senders only queue their commands; a writer thread takes everything that
+// has piled up since its last write and flushes it at once, so a busy
+// connection sends many commands per system call instead of one, and a
+// sender never waits for the socket.
+//
+// Futures complete on the reader thread; callbacks attached to them must
+// not block (that includes send() on a full connection), or every later
+// reply on this connection waits too.
+public class AsyncClientConnection implements Closeable {
+    // Replies outstanding before send() starts blocking
+    public static final int DEFAULT_MAX_IN_FLIGHT = 1024;
+
+    private final Socket socket;
+    private final BufferedReader input;
+    private final Writer output;
+    private final ArrayList<String> handshakeResponse = new ArrayList<>();
+    // commands not yet written, and commands written and waiting for a reply
+    private final Queue<Request> outgoing = new ConcurrentLinkedQueue<>();
+    private final Queue<Request> awaiting = new ConcurrentLinkedQueue<>();
+    // true while the writer is busy or has been woken, so senders only
+    // unpark it when it may be parked
+    private final AtomicBoolean writing = new AtomicBoolean();
+    private final Thread writer;
+    private final Semaphore inFlight;
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile IOException failure;
+    private volatile Consumer<String> events = line -> {};
+
+    // One command (or a BATCH with its lines) and the future for its reply
+    private static class Request {
+        final String command;
+        final List<String> lines;
+        final CompletableFuture<List<String>> reply = new CompletableFuture<>();
+
+        Request(String command, List<String> lines){
+            this.command = command;
+            this.lines = lines;
+        }
+    }
+
+    public AsyncClientConnection(String host, int port) throws IOException{
+        this(host, port, DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public AsyncClientConnection(String host, int port, int maxInFlight) throws IOException{
+        socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        output = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 16384);
+        inFlight = new Semaphore(maxInFlight);
+        for (int i = 0; i < 3; i++){
+            String response = input.readLine();
+            if (response == null){
+                socket.close();
+                throw new IOException("ERROR SERVER_ERROR during connection. not client side error");
+            }
+            if (response.startsWith("ERROR")){
+                // turned away, e.g. ERROR SERVER_BUSY
+                socket.close();
+                throw new IOException(response);
+            }
+            handshakeResponse.add(response);
+        }
+        writer = new Thread(this::writeOutgoing, "bulletinboard-client-writer-" + socket.getLocalPort());
+        writer.setDaemon(true);
+        writer.start();
+        Thread reader = new Thread(this::readReplies, "bulletinboard-client-reader-" + socket.getLocalPort());
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    public ArrayList<String> getHandshakeResponse(){
+        return new ArrayList<>(handshakeResponse);
+    }
+
+    // Send one command. The future holds its reply lines, e.g. OK n and the
+    // n notes of a GET, or fails with an IOException if the connection is
+    // lost first. Blocks only while maxInFlight replies are outstanding.
+    public CompletableFuture<List<String>> send(String command){
+        return enqueue(new Request(command, List.of(command)));
+    }
+
+    // Send POST/PIN commands as one BATCH, its reply is OK n and one line per
+    // command. At most CommandProcessor.MAX_BATCH commands, as for ClientConnection.
+    public CompletableFuture<List<String>> sendBatch(List<String> commands){
+        ClientConnection.checkBatch(commands);
+        List<String> lines = new ArrayList<>(commands.size() + 1);
+        lines.add("BATCH " + commands.size());
+        lines.addAll(commands);
+        return enqueue(new Request("BATCH", lines));
+    }
+
+    public CompletableFuture<List<String>> post(int x, int y, String colour, String message){
+        return send("POST " + x + " " + y + " " + colour + " " + message);
+    }
+
+    public CompletableFuture<List<String>> pin(int x, int y){
+        return send("PIN " + x + " " + y);
+    }
+
+    public CompletableFuture<List<String>> unpin(int x, int y){
+        return send("UNPIN " + x + " " + y);
+    }
+
+    // GET with any of the filters; null leaves a filter out
+    public CompletableFuture<List<String>> get(String colour, int[] contains, String referenceTo){
+        return get(colour, contains, referenceTo, Integer.MAX_VALUE, Board.FROM_START);
+    }
+
+    // One page of a GET, as ClientConnection.get: at most limit notes after
+    // the cursor (Board.FROM_START for the first page), and a CURSOR line
+    // last if there are more
+    public CompletableFuture<List<String>> get(String colour, int[] contains, String referenceTo, int limit, long after){
+        StringBuilder command = new StringBuilder("GET");
+        if (colour != null) command.append(" colour=").append(colour);
+        if (contains != null) command.append(" contains=").append(contains[0]).append(' ').append(contains[1]);
+        if (limit != Integer.MAX_VALUE) command.append(" limit=").append(limit);
+        if (after != Board.FROM_START) command.append(" after=").append(after);
+        if (referenceTo != null) command.append(" refersTo=").append(referenceTo);
+        return send(command.toString());
+    }
+
+    // SUBSCRIBE with GET style filters ("" for everything). EVENT lines are
+    // handed to the consumer on the reader thread as they arrive.
+    public CompletableFuture<List<String>> subscribe(String filters, Consumer<String> events){
+        this.events = events;
+        return send(filters.isEmpty() ? "SUBSCRIBE" : "SUBSCRIBE " + filters);
+    }
+
+    // Commands sent and not yet answered
+    public int pendingReplies(){
+        return pending.get();
+    }
+
+    public boolean isClosed(){
+        return failure != null || socket.isClosed();
+    }
+
+    private CompletableFuture<List<String>> enqueue(Request request){
+        if (failure != null){
+            request.reply.completeExceptionally(failure);
+            return request.reply;
+        }
+        try{
+            inFlight.acquire();
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            request.reply.completeExceptionally(e);
+            return request.reply;
+        }
+        pending.incrementAndGet();
+        outgoing.add(request);
+        if (writing.compareAndSet(false, true)){
+            LockSupport.unpark(writer);
+        }
+        if (failure != null){
+            // lost while this was being queued; make sure nothing is left waiting
+            fail(failure);
+        }
+        return request.reply;
+    }
+
+    // Writer thread: write everything queued, flush once, and park when
+    // the queue is empty. A sender that queues just after the writer looked
+    // takes the flag and unparks it, and unpark before park isn't lost.
+    private void writeOutgoing(){
+        try{
+            while (failure == null){
+                Request request = outgoing.poll();
+                if (request == null){
+                    writing.set(false);
+                    if (outgoing.isEmpty() || !writing.compareAndSet(false, true)){
+                        LockSupport.park(this);
+                    }
+                    continue;
+                }
+                do {
+                    // waiting before it is written, so its reply always finds it
+                    awaiting.add(request);
+                    for (String line : request.lines){
+                        output.write(line);
+                        output.write('\n');
+                    }
+                } while ((request = outgoing.poll()) != null);
+                output.flush();
+            }
+        } catch (IOException e){
+            fail(e);
+        }
+    }
+
+    private void readReplies(){
+        try{
+            String line;
+            while ((line = input.readLine()) != null){
+                // events only come between replies
+                if (line.startsWith("EVENT ")){
+                    events.accept(line);
+                    continue;
+                }
+                Request request = awaiting.poll();
+                if (request == null) throw new IOException("ERROR INVALID_RESPONSE unexpected " + line);
+                List<String> reply = new ArrayList<>();
+                reply.add(line);
+                if (ClientConnection.isMultiLine(request.command) && line.startsWith("OK ")){
+                    int n = ClientConnection.parseLineCount(line);
+                    for (int i = 0; i < n; i++){
+                        String next = input.readLine();
+                        if (next == null) throw new IOException("ERROR INVALID_RESPONSE");
+                        reply.add(next);
+                    }
+                }
+                pending.decrementAndGet();
+                inFlight.release();
+                request.reply.complete(reply);
+            }
+            fail(new IOException("ERROR SERVER_ERROR connection closed"));
+        } catch (IOException e){
+            fail(e);
+        }
+    }
+
+    // The connection is unusable: fail every reply still to come
+    private void fail(IOException e){
+        if (failure == null) failure = e;
+        LockSupport.unpark(writer);
+        try{
+            socket.close();
+        } catch (IOException ignored){
+            // already failing
+        }
+        Request request;
+        while ((request = awaiting.poll()) != null || (request = outgoing.poll()) != null){
+            pending.decrementAndGet();
+            inFlight.release();
+            request.reply.completeExceptionally(failure);
+        }
+    }
+
+    // Close without DISCONNECT; replies still outstanding fail
+    @Override
+    public void close(){
+        fail(new IOException("connection closed by client"));
+    }
+}
@@ -0,0 +1,238 @@
+package bulletinboard;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Binary framing, the alternative to text lines. A client switches to it by
+// sending BINARY as a text command and waiting for OK BINARY; everything
+// after that, both ways, is frames. A frame is a varint payload length
+// followed by the payload, whose first byte says what it is.
+//
+// Ints (coordinates) are 4 bytes big-endian, longs (cursors) 8, counts and
+// ids are unsigned varints, strings are a varint byte length followed by
+// UTF-8. Colours are sent as their index in the handshake's COLORS line.
+//
+// Requests: POST x y colourId message [ttl] | PIN x y | UNPIN x y
+//   | GET flags [colourId] [x y] [reference] [limit] [after] | GET_PINS | SHAKE | CLEAR
+//   | SUBSCRIBE flags [colourId] [x y] [reference] | UNSUBSCRIBE | DISCONNECT
+//   | TEXT line (any text command, e.g. BATCH and its lines)
+// Replies: REPLY code (an index into REPLIES) | LINE text (any other line,
+//   including EVENTs) | COUNT n, followed by n more frames (GET and BATCH)
+//   | NOTE x y colourId pinned message | PIN_AT x y | CURSOR after (last of a GET page)
+public final class BinaryCodec {
+    public static final byte POST = 1;
+    public static final byte PIN = 2;
+    public static final byte UNPIN = 3;
+    public static final byte GET = 4;
+    public static final byte GET_PINS = 5;
+    public static final byte SHAKE = 6;
+    public static final byte CLEAR = 7;
+    public static final byte SUBSCRIBE = 8;
+    public static final byte UNSUBSCRIBE = 9;
+    public static final byte DISCONNECT = 10;
+    public static final byte TEXT = 11;
+
+    public static final byte REPLY = 1;
+    public static final byte LINE = 2;
+    public static final byte COUNT = 3;
+    public static final byte NOTE = 4;
+    public static final byte PIN_AT = 5;
+    public static final byte CURSOR = 6;
+
+    // GET and SUBSCRIBE flags: which filters follow
+    public static final int HAS_COLOUR = 1;
+    public static final int HAS_CONTAINS = 2;
+    public static final int HAS_REFERENCE = 4;
+    // GET only: a page of at most limit notes, and where it starts
+    public static final int HAS_LIMIT = 8;
+    public static final int HAS_AFTER = 16;
+
+    // Longest payload either side accepts
+    public static final int MAX_FRAME = 1 << 20;
+
+    // Single line replies sent as their index instead of their text
+    public static final List<String> REPLIES = List.of(
+        "OK NOTE_POSTED", "OK PIN_ADDED", "OK PIN_REMOVED", "OK SHAKE_COMPLETE",
+        "OK BOARD_CLEARED", "OK DISCONNECTED", "OK SUBSCRIBED", "OK UNSUBSCRIBED",
+        "ERROR INVALID_FORMAT", "ERROR OUT_OF_BOUNDS", "ERROR COMPLETE_OVERLAP",
+        "ERROR COLOUR_NOT_SUPPORTED", "ERROR COLOR_NOT_SUPPORTED", "ERROR NOTE_NOT_FOUND",
+        "ERROR PIN_NOT_FOUND", "ERROR SERVER_ERROR");
+    private static final Map<String, Integer> REPLY_CODES = new HashMap<>();
+    static {
+        for (int i = 0; i < REPLIES.size(); i++) {
+            REPLY_CODES.put(REPLIES.get(i), i);
+        }
+    }
+
+    private BinaryCodec() {
+    }
+
+    // Code of a known reply line, or -1
+    public static int replyCode(String line) {
+        return REPLY_CODES.getOrDefault(line, -1);
+    }
+
+    // Write a finished payload as a frame
+    public static void writeFrame(OutputStream out, byte[] payload) throws IOException {
+        int v = payload.length;
+        while ((v & ~0x7F) != 0) {
+            out.write((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.write(v);
+        out.write(payload);
+    }
+
+    // Read one frame's payload, or null at end of stream
+    public static byte[] readFrame(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                if (shift == 0) return null;
+                throw new EOFException();
+            }
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+            if (shift >= 28) throw new IOException("frame length too long");
+        }
+        if (length < 0 || length > MAX_FRAME) throw new IOException("frame too large");
+        byte[] payload = new byte[length];
+        int read = 0;
+        while (read < length) {
+            int n = in.read(payload, read, length - read);
+            if (n < 0) throw new EOFException();
+            read += n;
+        }
+        return payload;
+    }
+
+    // Builds one payload at a time in a reused buffer
+    public static class FrameWriter {
+        private byte[] buf = new byte[256];
+        private int size = 0;
+
+        public FrameWriter start(byte kind) {
+            size = 0;
+            return putByte(kind);
+        }
+
+        public FrameWriter putByte(int b) {
+            ensure(1);
+            buf[size++] = (byte) b;
+            return this;
+        }
+
+        public FrameWriter putInt(int v) {
+            ensure(4);
+            buf[size++] = (byte) (v >>> 24);
+            buf[size++] = (byte) (v >>> 16);
+            buf[size++] = (byte) (v >>> 8);
+            buf[size++] = (byte) v;
+            return this;
+        }
+
+        public FrameWriter putLong(long v) {
+            return putInt((int) (v >>> 32)).putInt((int) v);
+        }
+
+        public FrameWriter putVarint(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                buf[size++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[size++] = (byte) v;
+            return this;
+        }
+
+        public FrameWriter putString(String s) {
+            return putBytes(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        // Varint length, then the bytes as they are
+        public FrameWriter putBytes(byte[] bytes) {
+            return putBytes(bytes, 0, bytes.length);
+        }
+
+        public FrameWriter putBytes(byte[] bytes, int offset, int length) {
+            putVarint(length);
+            ensure(length);
+            System.arraycopy(bytes, offset, buf, size, length);
+            size += length;
+            return this;
+        }
+
+        // Write the finished frame: its length, then the payload
+        public void writeTo(OutputStream out) throws IOException {
+            int v = size;
+            while ((v & ~0x7F) != 0) {
+                out.write((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            out.write(v);
+            out.write(buf, 0, size);
+        }
+
+        private void ensure(int more) {
+            if (size + more > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + more));
+            }
+        }
+    }
+
+    // Reads the fields of one payload; running past its end throws
+    // IndexOutOfBoundsException, which callers treat as a malformed frame
+    public static class FrameReader {
+        private final byte[] buf;
+        private int pos = 0;
+
+        public FrameReader(byte[] payload) {
+            this.buf = payload;
+        }
+
+        public int getByte() {
+            if (pos >= buf.length) throw new IndexOutOfBoundsException();
+            return buf[pos++] & 0xFF;
+        }
+
+        public int getInt() {
+            return getByte() << 24 | getByte() << 16 | getByte() << 8 | getByte();
+        }
+
+        public long getLong() {
+            return (long) getInt() << 32 | getInt() & 0xFFFFFFFFL;
+        }
+
+        public int getVarint() {
+            int v = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = getByte();
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) return v;
+            }
+            throw new IndexOutOfBoundsException();
+        }
+
+        public String getString() {
+            int length = getVarint();
+            if (length < 0 || length > buf.length - pos) throw new IndexOutOfBoundsException();
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+
+        public byte[] getBytes() {
+            int length = getVarint();
+            if (length < 0 || length > buf.length - pos) throw new IndexOutOfBoundsException();
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        public boolean atEnd() {
+            return pos == buf.length;
+        }
+    }
+}
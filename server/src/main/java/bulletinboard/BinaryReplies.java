@@ -0,0 +1,70 @@
+package bulletinboard;
+
+import java.io.*;
+import java.util.*;
+
+// ReplyWriter for connections that switched to BinaryCodec frames. The same
+// board calls that stream text lines stream frames through this instead.
+public class BinaryReplies extends ReplyWriter {
+    private final OutputStream out;
+    private final Map<String, Integer> colourIds = new HashMap<>();
+    private final BinaryCodec.FrameWriter frame = new BinaryCodec.FrameWriter();
+
+    public BinaryReplies(OutputStream out, List<String> colours){
+        this.out = out;
+        for (String colour : colours){
+            colourIds.put(colour, colourIds.size());
+        }
+    }
+
+    // Known replies go as their code, anything else (e.g. events) as text
+    @Override
+    protected void writeLine(CharSequence text){
+        String line = text.toString();
+        int code = BinaryCodec.replyCode(line);
+        if (code >= 0){
+            send(frame.start(BinaryCodec.REPLY).putVarint(code));
+        } else {
+            send(frame.start(BinaryCodec.LINE).putString(line));
+        }
+    }
+
+    @Override
+    public void count(int n){
+        send(frame.start(BinaryCodec.COUNT).putVarint(n));
+    }
+
+    @Override
+    public void note(int x, int y, String colour, String message, boolean pinned){
+        send(frame.start(BinaryCodec.NOTE).putInt(x).putInt(y)
+            .putVarint(colourIds.get(colour)).putByte(pinned ? 1 : 0).putString(message));
+    }
+
+    // The message bytes as the board encoded them, not decoded and encoded again
+    @Override
+    public void note(BoardSnapshot snapshot, int i){
+        int start = snapshot.getMessageStart(i);
+        send(frame.start(BinaryCodec.NOTE).putInt(snapshot.getX(i)).putInt(snapshot.getY(i))
+            .putVarint(colourIds.get(snapshot.getColour(i))).putByte(snapshot.isPinned(i) ? 1 : 0)
+            .putBytes(snapshot.getLines(), start, snapshot.getLineStart(i + 1) - start));
+    }
+
+    @Override
+    public void cursor(long after){
+        send(frame.start(BinaryCodec.CURSOR).putLong(after));
+    }
+
+    @Override
+    public void pin(int x, int y){
+        send(frame.start(BinaryCodec.PIN_AT).putInt(x).putInt(y));
+    }
+
+    private void send(BinaryCodec.FrameWriter finished){
+        try {
+            finished.writeTo(out);
+        } catch (IOException e) {
+            // same as the text path's PrintWriter: the read side notices the
+            // broken connection and closes it
+        }
+    }
+}
@@ -0,0 +1,1247 @@
+package bulletinboard;
+
+import java.lang.ref.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.concurrent.locks.*;
+
+public class Board {
+    // Roughly how many tiles the board is split into along each side
+    private static final int TILES_PER_SIDE = 8;
+    // Most shaken notes swept out of the indexes per acquisition of a tile lock
+    private static final int SWEEP_CHUNK = 32;
+    // Sweeps shaken notes out after SHAKE has replied, for every board
+    private static final ExecutorService SWEEPER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "board-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Seconds a note lives for when POST doesn't say; 0, the default, is for ever
+    public static final long NOTE_TTL = Long.getLong("bulletinboard.noteTtl", 0);
+    // Resolution of note expiry; a note goes at most this long after it is due
+    private static final long TICK_MILLIS = 100;
+    // Takes expired notes off every board, one tick at a time
+    private static final ScheduledExecutorService EXPIRER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "board-expiry");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // An index is only worth it if it narrows GET to under 1/SCAN_FRACTION of
+    // the board; past that, walking the shared snapshot is cheaper
+    private static final int SCAN_FRACTION = 4;
+    // streamNotes cursor for the first page; note seqs start at 0
+    public static final long FROM_START = -1;
+
+    private final int boardWidth;
+    private final int boardHeight;
+    private final int noteWidth;
+    private final int noteHeight;
+    // Notes and pins in the order they were added, keyed by sequence number.
+    // Writers in different tiles add to these at the same time.
+    private final ConcurrentSkipListMap<Long, Note> notes = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Long, Pin> pins = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextNoteSeq = new AtomicLong();
+    private final AtomicLong nextPinSeq = new AtomicLong();
+    // Bumped by every change to the board, always under the changed tiles' write locks
+    private final AtomicLong version = new AtomicLong();
+    // Latest snapshot handed to readers, replaced once the board has moved on
+    private final AtomicReference<BoardSnapshot> published;
+    // Told about every change, e.g. the write-ahead log
+    private final List<BoardListener> listeners = new CopyOnWriteArrayList<>();
+    // SUBSCRIBE connections, fed by the same changes
+    private final Subscriptions subscriptions;
+    // Command timings, lock waits and connection counters for STATS
+    private final Metrics metrics;
+    private final List<String> colours;
+    private final Set<String> colourSet;
+    // colour -> its index in colours, the id snapshots store
+    private final Map<String, Integer> colourIds = new HashMap<>();
+    // The board is split into tiles, each with its own lock and indexes.
+    // Tiles are a whole number of notes wide and high, so a point can only be
+    // covered by notes whose corner is in at most 2x2 neighbouring tiles.
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int tileCols;
+    private final Tile[] tiles;
+    // Version of the latest change to a note of each colour, by colour id;
+    // tiles keep the same for their notes. GetCache entries are checked
+    // against these, so a change only makes the results it could be in stale.
+    private final AtomicLongArray colourChangedAt;
+    private final GetCache getCache = new GetCache(this::isCurrent);
+    // Notes with an expiry time, by the tick they are due at; guarded by
+    // itself, and only ever locked after a tile lock, never before one
+    private final TimingWheel<Note> expiries = new TimingWheel<>(System.currentTimeMillis() / TICK_MILLIS);
+    // set once the first expiring note is posted, which starts the ticks
+    private final AtomicBoolean expiring = new AtomicBoolean();
+
+    // One region of the board. A note belongs to the tile holding its top-left
+    // corner and a pin to the tile holding its point.
+    private static class Tile {
+        final ReadWriteLock lock = new ReentrantReadWriteLock(true);
+        // Spatial index: notes bucketed by the grid cell of their top-left corner.
+        // Cells are one note in size, so any point is covered only by notes from
+        // its own cell and the three cells above/left of it.
+        final Map<Long, List<Note>> cells = new HashMap<>();
+        // Notes keyed by exact (x,y) for the COMPLETE_OVERLAP check
+        final Map<Long, Note> origins = new HashMap<>();
+        // Pins keyed by (x,y) for unpin
+        final Map<Long, List<Pin>> pinsAt = new HashMap<>();
+        // refersTo= index over the messages of this tile's notes
+        final TextIndex text = new TextIndex();
+        // colour= index, this tile's notes by colour
+        final Map<String, Set<Note>> byColour = new HashMap<>();
+        // Notes with their corner here and no pins, what SHAKE takes off
+        UnpinnedSet unpinned;
+        // Notes with their corner here still on the board, in all and by
+        // colour id. The maps above keep shaken notes until they are swept;
+        // these are what a GET would find, for the planner's estimates.
+        int live = 0;
+        final int[] liveByColour;
+        // Version of the latest change to a note with its corner here, as a
+        // GET would see it; written under the write lock
+        volatile long changedAt = 0;
+
+        Tile(int colours){
+            this.unpinned = new UnpinnedSet(colours);
+            this.liveByColour = new int[colours];
+        }
+    }
+
+    // A tile's unpinned notes. SHAKE doesn't visit them one by one: it marks
+    // each tile's whole set shaken, which hides those notes at once, and
+    // gives the tile a new empty set. The shaken notes stay in the maps and
+    // indexes, skipped by every lookup, until the sweeper removes them a
+    // chunk at a time, so the SHAKE itself takes the same time however many
+    // notes it removes.
+    static final class UnpinnedSet {
+        // linked, so sweeping from the front never rescans emptied buckets
+        final Set<Note> notes = new LinkedHashSet<>();
+        // how many of them are of each colour id, so SHAKE can take them
+        // off the tile's live counts without visiting them
+        final int[] byColour;
+        boolean shaken = false;
+
+        UnpinnedSet(int colours){
+            this.byColour = new int[colours];
+        }
+    }
+
+    public Board(int boardWidth, int boardHeight, int noteWidth, int noteHeight, Collection<String> colours) {
+        this(boardWidth, boardHeight, noteWidth, noteHeight, colours, new Metrics());
+    }
+
+    // A board recording into metrics shared with the other boards of a server
+    public Board(int boardWidth, int boardHeight, int noteWidth, int noteHeight, Collection<String> colours, Metrics metrics) {
+        this.metrics = metrics;
+        this.boardWidth = boardWidth;
+        this.boardHeight = boardHeight;
+        this.noteWidth = noteWidth;
+        this.noteHeight = noteHeight;
+        this.colours = new ArrayList<>(colours);
+        this.colourSet = new HashSet<>(colours);
+        for(String colour : this.colours){
+            colourIds.put(colour, colourIds.size());
+        }
+        this.colourChangedAt = new AtomicLongArray(this.colours.size());
+        this.published = new AtomicReference<>(BoardSnapshot.empty(0, this.colours));
+        this.subscriptions = new Subscriptions(noteWidth, noteHeight);
+        listeners.add(subscriptions);
+
+        this.tileWidth = tileSize(boardWidth, noteWidth);
+        this.tileHeight = tileSize(boardHeight, noteHeight);
+        this.tileCols = (boardWidth + tileWidth - 1) / tileWidth;
+        int tileRows = (boardHeight + tileHeight - 1) / tileHeight;
+        this.tiles = new Tile[tileCols * tileRows];
+        for(int i = 0; i < tiles.length; i++){
+            tiles[i] = new Tile(this.colours.size());
+        }
+    }
+    //helper access methods
+    public int getBoardWidth() {
+        return boardWidth;
+    }
+    public int getBoardHeight() {
+        return boardHeight;
+    }
+    public int getNoteWidth() {
+        return noteWidth;
+    }
+    public int getNoteHeight() {
+        return noteHeight;
+    }
+    public List<String> getColours() {
+        return Collections.unmodifiableList(colours);
+    }
+    public boolean isValidColour(String colour) {
+        return colourSet.contains(colour);
+    }
+    public Subscriptions getSubscriptions() {
+        return subscriptions;
+    }
+    public Metrics getMetrics() {
+        return metrics;
+    }
+    public void addListener(BoardListener listener) {
+        listeners.add(listener);
+    }
+    public void removeListener(BoardListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Post a note to the board
+    public String postNote(int x, int y, String colour, String message){
+        return postNote(x, y, colour, message, BoardOp.DEFAULT_TTL);
+    }
+
+    // Post a note that expires ttl seconds from now: 0 never, DEFAULT_TTL after NOTE_TTL
+    public String postNote(int x, int y, String colour, String message, int ttl){
+        String error = checkPost(x, y, colour, message);
+        if(error != null){
+            return error;
+        }
+        // only the tile holding the corner is involved
+        Tile tile = tileAt(x, y);
+        String reply;
+        lock(tile, true);
+        try{
+            reply = addNote(x, y, colour, message, ttl);
+        } finally {
+            tile.lock.writeLock().unlock();
+        }
+        committed();
+        return reply;
+    }
+
+    // Pin a note to the board
+    public String pinNote(int x, int y){
+        // validate position
+        if(!onBoard(x, y)){
+            return "ERROR OUT_OF_BOUNDS";
+        }
+        List<Tile> locked = tilesAround(x, y);
+        String reply;
+        lockAll(locked, true);
+        try{
+            reply = addPins(x, y);
+        } finally {
+            unlockAll(locked, true);
+        }
+        committed();
+        return reply;
+    }
+
+    // Unpin a note from the board
+    public String unpinNote(int x, int y){
+        if(!onBoard(x, y)){
+            return "ERROR PIN_NOT_FOUND";
+        }
+        // the pinned notes can have their corners in neighbouring tiles
+        List<Tile> locked = tilesAround(x, y);
+        String reply;
+        lockAll(locked, true);
+        try{
+            reply = removePins(x, y);
+        } finally {
+            unlockAll(locked, true);
+        }
+        committed();
+        return reply;
+    }
+
+    // Shake the board and remove unpinned notes
+    public String shakeBoard(){
+        List<Tile> locked = Arrays.asList(tiles);
+        String reply;
+        lockAll(locked, true);
+        try{
+            reply = shake();
+        } finally {
+            unlockAll(locked, true);
+        }
+        committed();
+        return reply;
+    }
+
+    // Clear the board of all notes and pins
+    public String clearBoard(){
+        List<Tile> locked = Arrays.asList(tiles);
+        String reply;
+        lockAll(locked, true);
+        try{
+            reply = clear();
+        } finally {
+            unlockAll(locked, true);
+        }
+        committed();
+        return reply;
+    }
+
+    // Apply several operations under a single acquisition of the tile locks
+    // they need, returning one reply per operation in order. A bulk import
+    // into one part of the board leaves writers elsewhere alone.
+    public List<String> applyBatch(List<BoardOp> ops){
+        List<String> replies = new ArrayList<>(ops.size());
+        List<Tile> locked = tilesFor(ops);
+        lockAll(locked, true);
+        try{
+            for(BoardOp op : ops){
+                replies.add(apply(op));
+            }
+        } finally {
+            unlockAll(locked, true);
+        }
+        committed();
+        return replies;
+    }
+
+    // Tiles the operations change, in lock order: a POST's corner tile and
+    // the tiles around a PIN or UNPIN's point, or every tile for SHAKE and
+    // CLEAR. A POST off the board is refused without a lock.
+    private List<Tile> tilesFor(List<BoardOp> ops){
+        SortedSet<Integer> found = new TreeSet<>();
+        for(BoardOp op : ops){
+            int x = op.getX();
+            int y = op.getY();
+            switch(op.getKind()){
+                case POST:
+                    if(onBoard(x, y)) found.add(tileIndex(x, y));
+                    break;
+                case PIN:
+                case UNPIN:
+                    addTilesAround(x, y, found);
+                    break;
+                default:
+                    return Arrays.asList(tiles);
+            }
+        }
+        return tilesOf(found);
+    }
+
+    // Replay a change recorded by a BoardListener, keeping its original
+    // sequence numbers (used to recover from the write-ahead log)
+    public void restoreNote(long seq, int x, int y, String colour, String message){
+        restoreNote(seq, x, y, colour, message, 0);
+    }
+
+    // A note that has expired since is skipped, but its seq still used up
+    public void restoreNote(long seq, int x, int y, String colour, String message, long expiresAt){
+        if(!onBoard(x, y) || !isValidColour(colour)){
+            return;
+        }
+        Tile tile = tileAt(x, y);
+        lock(tile, true);
+        try{
+            nextNoteSeq.accumulateAndGet(seq + 1, Math::max);
+            if(expiresAt == 0 || expiresAt > System.currentTimeMillis()){
+                insertNote(new Note(seq, x, y, colour, message, expiresAt));
+            }
+        } finally {
+            tile.lock.writeLock().unlock();
+        }
+    }
+
+    public void restorePin(long seq, int x, int y, long noteSeq){
+        if(!onBoard(x, y)){
+            return;
+        }
+        List<Tile> locked = tilesAround(x, y);
+        lockAll(locked, true);
+        try{
+            Note note = notes.get(noteSeq);
+            if(note != null && !note.isShaken()){
+                nextPinSeq.accumulateAndGet(seq + 1, Math::max);
+                insertPin(new Pin(seq, x, y, note));
+            }
+        } finally {
+            unlockAll(locked, true);
+        }
+    }
+
+    public void restoreUnpin(int x, int y){
+        if(!onBoard(x, y)){
+            return;
+        }
+        List<Tile> locked = tilesAround(x, y);
+        lockAll(locked, true);
+        try{
+            removePins(x, y);
+        } finally {
+            unlockAll(locked, true);
+        }
+    }
+
+    // The notes with these seqs expired, with their pins; ones no longer on
+    // the board are skipped
+    public void restoreExpired(long[] seqs){
+        List<Note> found = new ArrayList<>(seqs.length);
+        for(long seq : seqs){
+            Note note = notes.get(seq);
+            if(note != null) found.add(note);
+        }
+        expireAll(found);
+    }
+
+    // Every tile read-locked: no change can happen while atCut runs, and the
+    // returned snapshot is exactly the state at that moment
+    public BoardSnapshot cut(Runnable atCut){
+        List<Tile> locked = Arrays.asList(tiles);
+        lockAll(locked, false);
+        Note[] noteArray;
+        boolean[] pinned;
+        Pin[] pinArray;
+        long at;
+        try{
+            atCut.run();
+            noteArray = liveNotes();
+            pinned = pinnedFlags(noteArray);
+            pinArray = pins.values().toArray(new Pin[0]);
+            at = version.get();
+        } finally {
+            unlockAll(locked, false);
+        }
+        return columns(at, noteArray, pinned, pinArray);
+    }
+
+    private void committed(){
+        for(BoardListener listener : listeners){
+            listener.committed();
+        }
+    }
+
+    // Caller holds every tile lock the operation needs
+    private String apply(BoardOp op){
+        int x = op.getX();
+        int y = op.getY();
+        switch(op.getKind()){
+            case POST:
+                String error = checkPost(x, y, op.getColour(), op.getMessage());
+                return error != null ? error : addNote(x, y, op.getColour(), op.getMessage(), op.getTtl());
+            case PIN:
+                return onBoard(x, y) ? addPins(x, y) : "ERROR OUT_OF_BOUNDS";
+            case UNPIN:
+                return onBoard(x, y) ? removePins(x, y) : "ERROR PIN_NOT_FOUND";
+            case SHAKE:
+                return shake();
+            default:
+                return clear();
+        }
+    }
+
+    // Validate position and colour for a new note
+    private String checkPost(int x, int y, String colour, String message){
+        if(x < 0 || x + noteWidth > boardWidth || y < 0 || y + noteHeight > boardHeight){
+            return "ERROR OUT_OF_BOUNDS";
+        }
+        if(!isValidColour(colour)){
+            return "ERROR COLOR_NOT_SUPPORTED";
+        }
+        // restoreNote doesn't check, so notes posted under a higher limit still recover
+        if(Limits.isTooLong(message)){
+            return "ERROR MESSAGE_TOO_LONG";
+        }
+        return null;
+    }
+
+    private boolean onBoard(int x, int y){
+        return x >= 0 && x < boardWidth && y >= 0 && y < boardHeight;
+    }
+
+    private String addNote(int x, int y, String colour, String message, int ttl){
+        Tile tile = tileAt(x, y);
+        // Can not overlap with existing notes
+        Note existing = tile.origins.get(pack(x, y));
+        if(existing != null){
+            if(!existing.isShaken()){
+                return "ERROR COMPLETE_OVERLAP";
+            }
+            // shaken off but not swept yet, sweep it now; its shaken set is
+            // left as it is, the sweeper forgetting it again does nothing
+            forget(existing);
+        }
+        long seconds = ttl == BoardOp.DEFAULT_TTL ? NOTE_TTL : ttl;
+        long expiresAt = seconds > 0 ? System.currentTimeMillis() + seconds * 1000 : 0;
+        // add the note
+        insertNote(new Note(nextNoteSeq.getAndIncrement(), x, y, colour, message, expiresAt));
+        return "OK NOTE_POSTED";
+    }
+
+    private void insertNote(Note newNote){
+        int x = newNote.getX();
+        int y = newNote.getY();
+        Tile tile = tileAt(x, y);
+        notes.put(newNote.getSeq(), newNote);
+        tile.origins.put(pack(x, y), newNote);
+        tile.cells.computeIfAbsent(cellKey(x, y), k -> new ArrayList<>()).add(newNote);
+        tile.text.add(newNote);
+        tile.byColour.computeIfAbsent(newNote.getColour(), k -> new HashSet<>()).add(newNote);
+        int colourId = colourIds.get(newNote.getColour());
+        tile.live++;
+        tile.liveByColour[colourId]++;
+        addUnpinned(tile.unpinned, newNote);
+        if(newNote.getExpiresAt() != 0){
+            schedule(newNote);
+        }
+        changed(newNote, version.incrementAndGet());
+        for(BoardListener listener : listeners){
+            listener.notePosted(newNote);
+        }
+    }
+
+    private String addPins(int x, int y){
+        // find the note at the position
+        List<Note> present = notesAt(x, y);
+        if(present.isEmpty()){
+            return "ERROR NOTE_NOT_FOUND";
+        }
+        // pin the note if not already pinned
+        List<Pin> here = tileAt(x, y).pinsAt.computeIfAbsent(pack(x, y), k -> new ArrayList<>());
+        for(Note note : present){
+            if(!noteHasPin(here, note)){
+                insertPin(new Pin(nextPinSeq.getAndIncrement(), x, y, note));
+            }
+        }
+        version.incrementAndGet();
+        return "OK PIN_ADDED"; //is this what I called it in the doc
+    }
+
+    private void insertPin(Pin pin){
+        pins.put(pin.getSeq(), pin);
+        tileAt(pin.getX(), pin.getY()).pinsAt.computeIfAbsent(pack(pin.getX(), pin.getY()), k -> new ArrayList<>()).add(pin);
+        Note note = pin.getNote();
+        boolean first = !note.isPinned();
+        if(first){
+            removeUnpinned(note);
+        }
+        note.addPin(pin);
+        long at = version.incrementAndGet();
+        // a GET only shows whether a note is pinned, not by how many pins
+        if(first){
+            changed(note, at);
+        }
+        for(BoardListener listener : listeners){
+            listener.pinAdded(pin);
+        }
+    }
+
+    private String removePins(int x, int y){
+        List<Pin> here = tileAt(x, y).pinsAt.remove(pack(x, y));
+        if(here == null){
+            return "ERROR PIN_NOT_FOUND";
+        }
+        long at = version.incrementAndGet();
+        for(Pin pin : here){
+            pins.remove(pin.getSeq());
+            Note note = pin.getNote();
+            note.removePin(pin);
+            // the note's tile is one of the caller's, since the note covers (x,y)
+            if(!note.isPinned()){
+                addUnpinned(tileAt(note.getX(), note.getY()).unpinned, note);
+                changed(note, at);
+            }
+        }
+        for(BoardListener listener : listeners){
+            listener.pinsRemoved(x, y, here);
+        }
+        return "OK PIN_REMOVED";
+    }
+
+    // Caller holds every tile's write lock
+    private String shake(){
+        List<Set<Note>> removed = new ArrayList<>();
+        Map<Tile, UnpinnedSet> toSweep = new LinkedHashMap<>();
+        for(Tile tile : tiles){
+            UnpinnedSet shaken = tile.unpinned;
+            if(shaken.notes.isEmpty()) continue;
+            shaken.shaken = true;
+            tile.unpinned = new UnpinnedSet(colours.size());
+            tile.live -= shaken.notes.size();
+            for(int c = 0; c < shaken.byColour.length; c++){
+                tile.liveByColour[c] -= shaken.byColour[c];
+            }
+            removed.add(shaken.notes);
+            toSweep.put(tile, shaken);
+        }
+        // one task, so the sweeper is woken once; it waits for our locks
+        if(!toSweep.isEmpty()){
+            SWEEPER.execute(() -> toSweep.forEach(this::sweep));
+        }
+        long at = version.incrementAndGet();
+        // any colour may have lost notes, but only the tiles that had
+        // unpinned ones changed
+        for(Tile tile : toSweep.keySet()){
+            tile.changedAt = at;
+        }
+        allColoursChanged(at);
+        Collection<Note> view = new AbstractCollection<Note>(){
+            @Override
+            public Iterator<Note> iterator(){
+                return removed.stream().flatMap(Set::stream).iterator();
+            }
+
+            @Override
+            public int size(){
+                return removed.stream().mapToInt(Set::size).sum();
+            }
+        };
+        for(BoardListener listener : listeners){
+            listener.shaken(view);
+        }
+        return "OK SHAKE_COMPLETE";
+    }
+
+    // Take a shaken set's notes out of the maps and indexes, a chunk per
+    // acquisition of the tile lock so writers to the tile get in between.
+    // A shaken set never changes again, so one iterator lasts across the
+    // chunks, and subscribers can read the set after SHAKE has returned.
+    private void sweep(Tile tile, UnpinnedSet shaken){
+        Iterator<Note> iter = shaken.notes.iterator();
+        boolean more = true;
+        while(more){
+            lock(tile, true);
+            try{
+                for(int i = 0; i < SWEEP_CHUNK && iter.hasNext(); i++){
+                    forget(iter.next());
+                }
+                more = iter.hasNext();
+            } finally {
+                tile.lock.writeLock().unlock();
+            }
+        }
+    }
+
+    // Remove a note that is no longer on the board; a note posted at the
+    // same corner since then is left alone
+    private void forget(Note note){
+        unindex(note);
+        notes.remove(note.getSeq(), note);
+        if(note.timer != null){
+            synchronized(expiries){
+                expiries.cancel(note.timer);
+            }
+        }
+    }
+
+    // Caller holds the write lock of the note's tile
+    private void addUnpinned(UnpinnedSet set, Note note){
+        note.unpinned = set;
+        set.notes.add(note);
+        set.byColour[colourIds.get(note.getColour())]++;
+    }
+
+    private void removeUnpinned(Note note){
+        UnpinnedSet set = note.unpinned;
+        set.notes.remove(note);
+        set.byColour[colourIds.get(note.getColour())]--;
+        note.unpinned = null;
+    }
+
+    private String clear(){
+        notes.clear();
+        pins.clear();
+        for(Tile tile : tiles){
+            // sets still being swept only hold notes that are gone anyway
+            tile.unpinned = new UnpinnedSet(colours.size());
+            tile.live = 0;
+            Arrays.fill(tile.liveByColour, 0);
+            tile.cells.clear();
+            tile.origins.clear();
+            tile.pinsAt.clear();
+            tile.text.clear();
+            tile.byColour.clear();
+        }
+        long at = version.incrementAndGet();
+        for(Tile tile : tiles){
+            tile.changedAt = at;
+        }
+        allColoursChanged(at);
+        getCache.clear();
+        synchronized(expiries){
+            expiries.clear();
+        }
+        for(BoardListener listener : listeners){
+            listener.cleared();
+        }
+        return "OK BOARD_CLEARED";
+    }
+
+    // Caller holds the write lock of the note's tile
+    private void schedule(Note note){
+        // due on the first tick at or after expiresAt, never before it
+        long due = (note.getExpiresAt() + TICK_MILLIS - 1) / TICK_MILLIS;
+        synchronized(expiries){
+            note.timer = expiries.schedule(note, due);
+        }
+        if(!expiring.get() && expiring.compareAndSet(false, true)){
+            startExpiring(this);
+        }
+    }
+
+    // Tick for this board until it is no longer used. The task only holds
+    // the board weakly, so a board the registry has dropped can still go.
+    private static void startExpiring(Board board){
+        Reference<Board> ref = new WeakReference<>(board);
+        AtomicReference<Future<?>> task = new AtomicReference<>();
+        task.set(EXPIRER.scheduleWithFixedDelay(() -> {
+            Board live = ref.get();
+            if(live == null){
+                Future<?> self = task.get();
+                if(self != null) self.cancel(false);
+                return;
+            }
+            try{
+                live.expireDue();
+            } catch (RuntimeException e){
+                // the task must keep running for the notes still to expire
+                System.out.println("ERROR SERVER_ERROR note expiry failed: " + e);
+            }
+        }, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS));
+    }
+
+    private void expireDue(){
+        List<Note> due = new ArrayList<>();
+        synchronized(expiries){
+            expiries.advance(System.currentTimeMillis() / TICK_MILLIS, due::add);
+        }
+        expireAll(due);
+    }
+
+    // Take the notes off a chunk at a time, grouped by tile so each chunk
+    // only write-locks the few tiles its notes and their pins are in
+    private void expireAll(List<Note> due){
+        if(due.isEmpty()){
+            return;
+        }
+        due.sort(Comparator.comparingInt((Note note) -> tileIndex(note.getX(), note.getY())).thenComparingLong(Note::getSeq));
+        for(int i = 0; i < due.size(); i += SWEEP_CHUNK){
+            List<Note> chunk = due.subList(i, Math.min(due.size(), i + SWEEP_CHUNK));
+            List<Tile> locked = tilesCovering(chunk);
+            lockAll(locked, true);
+            try{
+                expire(chunk);
+            } finally {
+                unlockAll(locked, true);
+            }
+            committed();
+        }
+    }
+
+    // Caller holds the write locks of every tile the notes and their pins are in
+    private void expire(List<Note> chunk){
+        List<Note> removed = new ArrayList<>(chunk.size());
+        long at = 0;
+        for(Note note : chunk){
+            // shaken, cleared or already expired while waiting for the locks
+            if(notes.get(note.getSeq()) != note || note.isShaken()) continue;
+            if(at == 0) at = version.incrementAndGet();
+            for(Pin pin : note.getPins()){
+                pins.remove(pin.getSeq());
+                Map<Long, List<Pin>> pinsAt = tileAt(pin.getX(), pin.getY()).pinsAt;
+                long point = pack(pin.getX(), pin.getY());
+                List<Pin> here = pinsAt.get(point);
+                here.remove(pin);
+                if(here.isEmpty()){
+                    pinsAt.remove(point);
+                }
+            }
+            if(note.unpinned != null){
+                removeUnpinned(note);
+            }
+            Tile tile = tileAt(note.getX(), note.getY());
+            tile.live--;
+            tile.liveByColour[colourIds.get(note.getColour())]--;
+            forget(note);
+            changed(note, at);
+            removed.add(note);
+        }
+        if(removed.isEmpty()){
+            return;
+        }
+        for(BoardListener listener : listeners){
+            listener.expired(removed);
+        }
+    }
+
+    // Tiles holding any point of these notes, in lock order
+    private List<Tile> tilesCovering(List<Note> chunk){
+        SortedSet<Integer> found = new TreeSet<>();
+        for(Note note : chunk){
+            int right = Math.min(boardWidth, note.getX() + noteWidth) - 1;
+            int bottom = Math.min(boardHeight, note.getY() + noteHeight) - 1;
+            for(int ty = note.getY() / tileHeight; ty <= bottom / tileHeight; ty++){
+                for(int tx = note.getX() / tileWidth; tx <= right / tileWidth; tx++){
+                    found.add(ty * tileCols + tx);
+                }
+            }
+        }
+        return tilesOf(found);
+    }
+
+    private List<Tile> tilesOf(SortedSet<Integer> indexes){
+        List<Tile> found = new ArrayList<>(indexes.size());
+        for(int index : indexes){
+            found.add(tiles[index]);
+        }
+        return found;
+    }
+
+    public List<String> getPins(){
+        List<String> output = new ArrayList<>();
+        streamPins(ReplyWriter.into(output));
+        // drop the OK n header
+        return output.subList(1, output.size());
+    }
+
+    public List<String> getNotes(String colour, int[] contains, String referenceTo){
+        List<String> output = new ArrayList<>();
+        streamNotes(colour, contains, referenceTo, ReplyWriter.into(output));
+        // drop the OK n header
+        return output.subList(1, output.size());
+    }
+
+    // Hand every pin to the sink, after its count
+    public void streamPins(NoteSink sink){
+        BoardSnapshot current = snapshot();
+        sink.count(current.pinCount());
+        for(int j = 0; j < current.pinCount(); j++){
+            sink.pin(current.getPinX(j), current.getPinY(j));
+        }
+    }
+
+    // Hand every matching note to the sink in posting order, after their count.
+    // Filtered replies walk the snapshot twice, once to count and once to send,
+    // so memory stays the same however many notes match.
+    // A repeated filter is answered from the GetCache instead.
+    public void streamNotes(String colour, int[] contains, String referenceTo, NoteSink sink){
+        streamNotes(colour, contains, referenceTo, FROM_START, Integer.MAX_VALUE, sink);
+    }
+
+    // One page of the same: at most limit of the matching notes posted after
+    // the note with seq after (FROM_START for the first page), then, if more
+    // match, a cursor to pass as after for the next page. Seqs only grow, so
+    // a cursor stays valid whatever is posted or shaken off in between; a
+    // page just never holds notes posted before it.
+    public void streamNotes(String colour, int[] contains, String referenceTo, long after, int limit, NoteSink sink){
+        String ref = referenceTo != null ? referenceTo.toLowerCase() : null;
+        // what the snapshots' lowercased message bytes are searched for
+        byte[] refBytes = ref != null ? ref.getBytes(StandardCharsets.UTF_8) : null;
+        // a colour the board doesn't have matches nothing
+        int colourId = colour == null ? -1 : colourIds.getOrDefault(colour, Integer.MAX_VALUE);
+        // no filters is the shared snapshot anyway, and an unknown colour is no work
+        GetCache.Key key = null;
+        if((colour != null || contains != null || ref != null) && colourId != Integer.MAX_VALUE && GetCache.MAX_ENTRIES > 0){
+            key = new GetCache.Key(colourId, contains, ref);
+            BoardSnapshot cached = getCache.get(key);
+            metrics.getCacheLookup(cached != null);
+            if(cached != null){
+                sink.page(new NotePage(cached, -1, null, after, limit));
+                return;
+            }
+        }
+        BoardSnapshot snapshot = candidates(colour, contains, ref);
+        if(key != null){
+            BoardSnapshot result = matching(snapshot, colourId, refBytes);
+            if(result != null){
+                getCache.put(key, result);
+                sink.page(new NotePage(result, -1, null, after, limit));
+                return;
+            }
+        }
+        sink.page(new NotePage(snapshot, colourId, refBytes, after, limit));
+    }
+
+    // The notes of snapshot that match, as a snapshot of their own at the
+    // same version, or null if there are too many to be worth caching
+    private BoardSnapshot matching(BoardSnapshot snapshot, int colourId, byte[] lowerRef){
+        int[] found = new int[Math.min(snapshot.size(), 16)];
+        int n = 0;
+        for(int i = 0; i < snapshot.size(); i++){
+            if(!snapshot.matches(i, colourId, lowerRef)) continue;
+            if(!GetCache.fits(n + 1)) return null;
+            if(n == found.length) found = Arrays.copyOf(found, n * 2);
+            found[n++] = i;
+        }
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(snapshot.getVersion(), colours, n, 0);
+        for(int k = 0; k < n; k++){
+            builder.note(snapshot, found[k], snapshot.isPinned(found[k]));
+        }
+        return builder.build();
+    }
+
+    // Whether a cached GET result made at its snapshot's version still
+    // answers key. It does unless a note the filters could match changed
+    // since: one of the filtered colour, or one in a tile a note covering the
+    // filtered point could be in. A change has to pass every filter to count,
+    // so either one unchanged is enough. A text filter alone isn't tracked,
+    // and goes stale with any change to the board.
+    private boolean isCurrent(GetCache.Key key, BoardSnapshot result){
+        long at = result.getVersion();
+        if(key.colourId < 0 && !key.hasPoint){
+            return version.get() == at;
+        }
+        if(key.colourId >= 0 && colourChangedAt.get(key.colourId) <= at){
+            return true;
+        }
+        if(key.hasPoint){
+            for(Tile tile : tilesAround(key.x, key.y)){
+                if(tile.changedAt > at) return false;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    // Record that a note changed as GET sees it, at version at; caller
+    // holds the write lock of the note's tile
+    private void changed(Note note, long at){
+        tileAt(note.getX(), note.getY()).changedAt = at;
+        colourChangedAt.accumulateAndGet(colourIds.get(note.getColour()), at, Math::max);
+    }
+
+    private void allColoursChanged(long at){
+        for(int i = 0; i < colourChangedAt.length(); i++){
+            colourChangedAt.accumulateAndGet(i, at, Math::max);
+        }
+    }
+
+    // Query planner: the notes GET has to check, from whichever index narrows
+    // them most. A point filter always wins, since no two notes share a corner
+    // and so only a note's area worth of them can cover a point. Otherwise the
+    // colour and text indexes report how many notes they would return and the
+    // smaller is used, unless even that is a large part of the board.
+    // The other filters are still applied to whatever this returns.
+    BoardSnapshot candidates(String colour, int[] contains, String lowerRef){
+        if(contains != null){
+            return snapshotAt(contains[0], contains[1]);
+        }
+        boolean textUsable = lowerRef != null && TextIndex.canSearch(lowerRef);
+        BoardSnapshot indexed = null;
+        if(colour != null || textUsable){
+            indexed = fromIndexes(colour, lowerRef, textUsable);
+        }
+        return indexed != null ? indexed : snapshot();
+    }
+
+    // Notes from the colour or text index, or null if scanning the snapshot
+    // would do. A current snapshot is always scanned, which takes no lock.
+    // Otherwise the tiles are read-locked one at a time, first for the
+    // estimates and then to copy the notes out, so a GET only waits for a
+    // writer to the tile it is on. The result is given the version from
+    // before the first lock, so a GetCache entry made from it goes stale
+    // with any change it might have missed.
+    private BoardSnapshot fromIndexes(String colour, String lowerRef, boolean textUsable){
+        long at = version.get();
+        if(published.get().getVersion() == at){
+            return null;
+        }
+        // a colour the board doesn't have is in no index
+        int colourId = colour != null ? colourIds.getOrDefault(colour, -1) : -1;
+        long total = 0;
+        long colourCount = 0;
+        long textCount = 0;
+        for(Tile tile : tiles){
+            lock(tile, false);
+            try{
+                total += tile.live;
+                if(colourId >= 0){
+                    colourCount += tile.liveByColour[colourId];
+                }
+                if(textUsable){
+                    textCount += tile.text.estimate(lowerRef);
+                }
+            } finally {
+                tile.lock.readLock().unlock();
+            }
+        }
+        boolean byText = textUsable && (colour == null || textCount <= colourCount);
+        long best = byText ? textCount : colourCount;
+        if(best * SCAN_FRACTION > total){
+            return null;
+        }
+        List<Note> found = new ArrayList<>();
+        // notes pinned when their tile was read
+        Set<Note> pinned = new HashSet<>();
+        List<Note> inTile = new ArrayList<>();
+        for(Tile tile : tiles){
+            inTile.clear();
+            lock(tile, false);
+            try{
+                if(byText){
+                    tile.text.find(lowerRef, inTile);
+                } else if(colourId >= 0){
+                    inTile.addAll(tile.byColour.getOrDefault(colour, Collections.emptySet()));
+                }
+                for(Note note : inTile){
+                    if(note.isShaken()) continue;
+                    found.add(note);
+                    if(note.isPinned()) pinned.add(note);
+                }
+            } finally {
+                tile.lock.readLock().unlock();
+            }
+        }
+        found.sort(Comparator.comparingLong(Note::getSeq));
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(at, colours, found.size(), 0);
+        for(Note note : found){
+            builder.note(note, colourIds.get(note.getColour()), pinned.contains(note));
+        }
+        return builder.build();
+    }
+
+    // How many notes each index holds, for the planner and for monitoring
+    public Map<String, Long> indexStats(){
+        Map<String, Long> stats = new LinkedHashMap<>();
+        List<Tile> locked = Arrays.asList(tiles);
+        lockAll(locked, false);
+        try{
+            long notesTotal = 0;
+            long cellsTotal = 0;
+            long trigramsTotal = 0;
+            for(Tile tile : tiles){
+                notesTotal += tile.origins.size();
+                cellsTotal += tile.cells.size();
+                trigramsTotal += tile.text.size();
+            }
+            stats.put("notes", notesTotal);
+            stats.put("cells", cellsTotal);
+            stats.put("trigrams", trigramsTotal);
+            for(String colour : colours){
+                long count = 0;
+                for(Tile tile : tiles){
+                    count += tile.byColour.getOrDefault(colour, Collections.emptySet()).size();
+                }
+                stats.put("colour." + colour, count);
+            }
+            return stats;
+        } finally {
+            unlockAll(locked, false);
+        }
+    }
+
+    // The few notes covering one point. A point filter only needs the notes
+    // near that point, and only their tiles locked long enough to copy them out.
+    private BoardSnapshot snapshotAt(int x, int y){
+        List<Tile> locked = tilesAround(x, y);
+        lockAll(locked, false);
+        try{
+            return copyOf(notesAt(x, y));
+        } finally {
+            unlockAll(locked, false);
+        }
+    }
+
+    // Snapshot of just these notes; caller holds their tiles' locks
+    private BoardSnapshot copyOf(List<Note> found){
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(version.get(), colours, found.size(), 0);
+        for(Note note : found){
+            builder.note(note, colourIds.get(note.getColour()), note.isPinned());
+        }
+        return builder.build();
+    }
+
+    // Current state of the board. Readers share one snapshot until a write
+    // makes it stale; only then are the tiles read-locked, and only long
+    // enough to copy note references and pinned flags. The columns are
+    // filled in after the locks are released.
+    public BoardSnapshot snapshot(){
+        BoardSnapshot current = published.get();
+        if(current.getVersion() == version.get()){
+            return current;
+        }
+        List<Tile> locked = Arrays.asList(tiles);
+        lockAll(locked, false);
+        Note[] noteArray;
+        boolean[] pinned;
+        Pin[] pinArray;
+        long at;
+        try{
+            noteArray = liveNotes();
+            pinned = pinnedFlags(noteArray);
+            pinArray = pins.values().toArray(new Pin[0]);
+            at = version.get();
+        } finally {
+            unlockAll(locked, false);
+        }
+        BoardSnapshot fresh = columns(at, noteArray, pinned, pinArray);
+        // another reader may have published a newer one meanwhile
+        return published.accumulateAndGet(fresh,
+            (old, next) -> next.getVersion() > old.getVersion() ? next : old);
+    }
+
+    // The notes on the board, without shaken ones still waiting to be swept
+    private Note[] liveNotes(){
+        List<Note> live = new ArrayList<>(notes.size());
+        for(Note note : notes.values()){
+            if(!note.isShaken()) live.add(note);
+        }
+        return live.toArray(new Note[0]);
+    }
+
+    private static boolean[] pinnedFlags(Note[] noteArray){
+        boolean[] pinned = new boolean[noteArray.length];
+        for(int i = 0; i < noteArray.length; i++){
+            pinned[i] = noteArray[i].isPinned();
+        }
+        return pinned;
+    }
+
+    // Columnar copy of the notes and pins. Each note's reply line was
+    // encoded when it was posted, so this only copies bytes.
+    private BoardSnapshot columns(long at, Note[] noteArray, boolean[] pinned, Pin[] pinArray){
+        BoardSnapshot.Builder builder = new BoardSnapshot.Builder(at, colours, noteArray.length, pinArray.length);
+        for(int i = 0; i < noteArray.length; i++){
+            Note note = noteArray[i];
+            builder.note(note, colourIds.get(note.getColour()), pinned[i]);
+        }
+        for(Pin pin : pinArray){
+            builder.pin(pin.getSeq(), pin.getX(), pin.getY(), pin.getNote().getSeq());
+        }
+        return builder.build();
+    }
+
+    // Tile side: about 1/TILES_PER_SIDE of the board, rounded up to whole notes
+    private static int tileSize(int boardSize, int noteSize){
+        int span = (boardSize + TILES_PER_SIDE - 1) / TILES_PER_SIDE;
+        return Math.max(1, (span + noteSize - 1) / noteSize) * noteSize;
+    }
+
+    private Tile tileAt(int x, int y){
+        return tiles[tileIndex(x, y)];
+    }
+
+    private int tileIndex(int x, int y){
+        return (y / tileHeight) * tileCols + x / tileWidth;
+    }
+
+    // Tiles that can hold a note covering (x,y), in lock order (by index)
+    private List<Tile> tilesAround(int x, int y){
+        List<Tile> found = new ArrayList<>(4);
+        if(!onBoard(x, y)){
+            return found;
+        }
+        int minX = Math.max(0, x - noteWidth + 1);
+        int minY = Math.max(0, y - noteHeight + 1);
+        for(int ty = minY / tileHeight; ty <= y / tileHeight; ty++){
+            for(int tx = minX / tileWidth; tx <= x / tileWidth; tx++){
+                found.add(tiles[ty * tileCols + tx]);
+            }
+        }
+        return found;
+    }
+
+    // The indexes of the same tiles, added to found
+    private void addTilesAround(int x, int y, Set<Integer> found){
+        if(!onBoard(x, y)){
+            return;
+        }
+        int minX = Math.max(0, x - noteWidth + 1);
+        int minY = Math.max(0, y - noteHeight + 1);
+        for(int ty = minY / tileHeight; ty <= y / tileHeight; ty++){
+            for(int tx = minX / tileWidth; tx <= x / tileWidth; tx++){
+                found.add(ty * tileCols + tx);
+            }
+        }
+    }
+
+    // Locks are always taken in tile order so writers never deadlock
+    private void lockAll(List<Tile> tiles, boolean write){
+        for(Tile tile : tiles){
+            lock(tile, write);
+        }
+    }
+
+    // Take a tile lock, timing the wait only if it isn't free. A zero timeout
+    // tryLock, unlike tryLock(), keeps the lock fair to threads already queued.
+    private void lock(Tile tile, boolean write){
+        Lock lock = write ? tile.lock.writeLock() : tile.lock.readLock();
+        boolean free;
+        try{
+            free = lock.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            free = false;
+        }
+        if(free){
+            metrics.lockTaken(write, 0);
+            return;
+        }
+        long start = System.nanoTime();
+        lock.lock();
+        metrics.lockTaken(write, Math.max(1, System.nanoTime() - start));
+    }
+
+    private static void unlockAll(List<Tile> tiles, boolean write){
+        for(int i = tiles.size() - 1; i >= 0; i--){
+            Tile tile = tiles.get(i);
+            (write ? tile.lock.writeLock() : tile.lock.readLock()).unlock();
+        }
+    }
+
+    // Notes covering (x,y) in posting order, found through the grid instead of a full scan.
+    // Caller holds the locks from tilesAround(x, y).
+    private List<Note> notesAt(int x, int y){
+        List<Note> found = new ArrayList<>();
+        if(!onBoard(x, y)){
+            return found;
+        }
+        int cx = x / noteWidth;
+        int cy = y / noteHeight;
+        // only cells holding corners within a note of the point, which are
+        // in tilesAround; the cell before that may be in a tile not locked
+        for(int i = Math.max(0, x - noteWidth + 1) / noteWidth; i <= cx; i++){
+            for(int j = Math.max(0, y - noteHeight + 1) / noteHeight; j <= cy; j++){
+                // a cell never straddles two tiles
+                List<Note> cell = tileAt(i * noteWidth, j * noteHeight).cells.get(pack(i, j));
+                if(cell == null) continue;
+                for(Note note : cell){
+                    if(covers(note, x, y) && !note.isShaken()){
+                        found.add(note);
+                    }
+                }
+            }
+        }
+        found.sort(Comparator.comparingLong(Note::getSeq));
+        return found;
+    }
+
+    // Every note is noteWidth x noteHeight, so the size isn't kept per note
+    private boolean covers(Note note, int x, int y){
+        return x >= note.getX() && x < note.getX() + noteWidth && y >= note.getY() && y < note.getY() + noteHeight;
+    }
+
+    private void unindex(Note note){
+        Tile tile = tileAt(note.getX(), note.getY());
+        tile.origins.remove(pack(note.getX(), note.getY()), note);
+        tile.text.remove(note);
+        Set<Note> sameColour = tile.byColour.get(note.getColour());
+        if(sameColour != null){
+            sameColour.remove(note);
+        }
+        long cell = cellKey(note.getX(), note.getY());
+        List<Note> bucket = tile.cells.get(cell);
+        if(bucket != null){
+            bucket.remove(note);
+            if(bucket.isEmpty()){
+                tile.cells.remove(cell);
+            }
+        }
+    }
+
+    private long cellKey(int x, int y){
+        return pack(x / noteWidth, y / noteHeight);
+    }
+
+    private static long pack(int a, int b){
+        return ((long) a << 32) | (b & 0xffffffffL);
+    }
+
+    private boolean noteHasPin(List<Pin> here, Note note){
+        for(Pin pin : here){
+            if(pin.getNote() == note){
+                return true;
+            }
+        }
+        return false;
+    }
+}
\ No newline at end of file
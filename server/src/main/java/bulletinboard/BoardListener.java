@@ -0,0 +1,30 @@
+package bulletinboard;
+
+import java.util.*;
+
+// Told about every change to a Board. The change methods run while the Board
+// still holds the locks of the tiles involved, so they see changes in the
+// order they were applied and must be quick (append to a buffer, no I/O).
+public interface BoardListener {
+    void notePosted(Note note);
+
+    void pinAdded(Pin pin);
+
+    // All pins at (x,y) were removed
+    void pinsRemoved(int x, int y, List<Pin> removed);
+
+    // The notes SHAKE took off. A view of the board's own sets, which no
+    // longer change, so it may be kept and read after the call; there can
+    // be very many, so this call itself shouldn't visit them.
+    void shaken(Collection<Note> removed);
+
+    // Notes whose time ran out, taken off with every pin through them
+    void expired(List<Note> removed);
+
+    void cleared();
+
+    // Called after the operation's locks are released, on the thread that made
+    // the change, before its reply is sent. A durable log can wait here.
+    default void committed() {
+    }
+}
@@ -0,0 +1,79 @@
+package bulletinboard;
+
+// One mutation of the board, so several can be handed over and applied together
+public class BoardOp {
+    public enum Kind { POST, PIN, UNPIN, SHAKE, CLEAR }
+
+    // POST ttl meaning "whatever the server's default is" (Board.NOTE_TTL)
+    public static final int DEFAULT_TTL = -1;
+
+    private final Kind kind;
+    private final int x;
+    private final int y;
+    private final String colour;
+    private final String message;
+    private final int ttl;
+
+    private BoardOp(Kind kind, int x, int y, String colour, String message, int ttl) {
+        this.kind = kind;
+        this.x = x;
+        this.y = y;
+        this.colour = colour;
+        this.message = message;
+        this.ttl = ttl;
+    }
+
+    private BoardOp(Kind kind, int x, int y, String colour, String message) {
+        this(kind, x, y, colour, message, DEFAULT_TTL);
+    }
+
+    public static BoardOp post(int x, int y, String colour, String message) {
+        return new BoardOp(Kind.POST, x, y, colour, message);
+    }
+
+    // A note that expires ttl seconds after it is posted, 0 for never
+    public static BoardOp post(int x, int y, String colour, String message, int ttl) {
+        return new BoardOp(Kind.POST, x, y, colour, message, ttl);
+    }
+
+    public static BoardOp pin(int x, int y) {
+        return new BoardOp(Kind.PIN, x, y, null, null);
+    }
+
+    public static BoardOp unpin(int x, int y) {
+        return new BoardOp(Kind.UNPIN, x, y, null, null);
+    }
+
+    public static BoardOp shake() {
+        return new BoardOp(Kind.SHAKE, 0, 0, null, null);
+    }
+
+    public static BoardOp clear() {
+        return new BoardOp(Kind.CLEAR, 0, 0, null, null);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public String getColour() {
+        return colour;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    // Seconds a POSTed note lives for, 0 for ever, or DEFAULT_TTL
+    public int getTtl() {
+        return ttl;
+    }
+}
@@ -0,0 +1,305 @@
+package bulletinboard;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// The named boards one server hosts. Each is a Board of its own, with its
+// own size, colours, tile locks and indexes, so a busy board never slows the
+// clients of another; only the server's Metrics are shared. Clients start on
+// DEFAULT and move with USE <name>.
+//
+// With a data directory every board keeps its own BoardStore: DEFAULT in
+// the directory itself, as a single board server always did, the others in
+// a subdirectory named after the board. A board is loaded (recovered) the
+// first time a client picks it, and one no client has used for a while can
+// be evicted: checkpointed, closed and dropped until it is picked again.
+//
+// A primary keeps a ReplicationLog of every loaded board for replicas to
+// follow; a replica follows every board it hosts, each with a Replica, and
+// keeps them all loaded.
+public class BoardRegistry implements Closeable {
+    public static final String DEFAULT = "default";
+
+    private final Metrics metrics;
+    // null keeps boards in memory only; they are then never evicted
+    private final Path dataDir;
+    private final WriteAheadLog.Durability durability;
+    private final long snapshotEvery;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private ScheduledExecutorService evictor;
+    // records each board's ReplicationLog keeps; 0 when not a primary
+    private volatile int replicationBacklog = 0;
+
+    // One named board, loaded or not. Loading, eviction and the count of
+    // clients on it are guarded by the entry itself, so picking one board
+    // never waits for another to load.
+    private static final class Entry {
+        final String name;
+        final int boardWidth;
+        final int boardHeight;
+        final int noteWidth;
+        final int noteHeight;
+        final List<String> colours;
+        Board board;
+        BoardStore store;
+        ReplicationLog replication;
+        Replica replica;
+        int users = 0;
+        long idleSince = System.nanoTime();
+
+        Entry(String name, int boardWidth, int boardHeight, int noteWidth, int noteHeight, Collection<String> colours) {
+            this.name = name;
+            this.boardWidth = boardWidth;
+            this.boardHeight = boardHeight;
+            this.noteWidth = noteWidth;
+            this.noteHeight = noteHeight;
+            this.colours = new ArrayList<>(colours);
+        }
+    }
+
+    public BoardRegistry(Metrics metrics, Path dataDir, WriteAheadLog.Durability durability, long snapshotEvery) {
+        this.metrics = metrics;
+        this.dataDir = dataDir;
+        this.durability = durability;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    // A registry holding just this board as DEFAULT, in memory
+    public static BoardRegistry of(Board board) {
+        BoardRegistry registry = new BoardRegistry(board.getMetrics(), null, WriteAheadLog.Durability.NONE, 0);
+        Entry entry = new Entry(DEFAULT, board.getBoardWidth(), board.getBoardHeight(),
+            board.getNoteWidth(), board.getNoteHeight(), board.getColours());
+        entry.board = board;
+        registry.entries.put(DEFAULT, entry);
+        return registry;
+    }
+
+    // Board names are also directory names, so keep them to plain characters
+    public static boolean isValidName(String name) {
+        return name.matches("[A-Za-z0-9_-]{1,64}");
+    }
+
+    // Add a board to host. It is created (or recovered) when first used.
+    public void define(String name, int boardWidth, int boardHeight, int noteWidth, int noteHeight, Collection<String> colours) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("invalid board name " + name);
+        }
+        if (entries.putIfAbsent(name, new Entry(name, boardWidth, boardHeight, noteWidth, noteHeight, colours)) != null) {
+            throw new IllegalArgumentException("board " + name + " defined twice");
+        }
+    }
+
+    // Read board definitions, one per line in the order of the command line
+    // arguments: name boardWidth boardHeight noteWidth noteHeight colour...
+    // Blank lines and lines starting with # are skipped.
+    public void defineAll(Path file) throws IOException {
+        int number = 0;
+        for (String line : Files.readAllLines(file)) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] parts = line.split("\\s+");
+            try {
+                if (parts.length < 6) {
+                    throw new IllegalArgumentException("expected name, four sizes and colours");
+                }
+                int boardWidth = Integer.parseInt(parts[1]);
+                int boardHeight = Integer.parseInt(parts[2]);
+                int noteWidth = Integer.parseInt(parts[3]);
+                int noteHeight = Integer.parseInt(parts[4]);
+                if (boardWidth <= 0 || boardHeight <= 0 || noteWidth <= 0 || noteHeight <= 0) {
+                    throw new IllegalArgumentException("sizes must be positive");
+                }
+                Set<String> colours = new LinkedHashSet<>(Arrays.asList(parts).subList(5, parts.length));
+                define(parts[0], boardWidth, boardHeight, noteWidth, noteHeight, colours);
+            } catch (IllegalArgumentException e) {
+                // NumberFormatException included
+                throw new IllegalArgumentException(file + " line " + number + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    // Every hosted board, loaded or not, in name order
+    public List<String> getNames() {
+        List<String> names = new ArrayList<>(entries.keySet());
+        Collections.sort(names);
+        return names;
+    }
+
+    // The named board, loading it first if needed, or null if there is no
+    // such board. The caller counts as a user until it calls release, and a
+    // board with users is never evicted. Loading runs on the caller's
+    // thread, so with the nio engine a large recovery holds up every
+    // connection; keep evictAfter well above how often boards come back.
+    public Board acquire(String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            if (entry.board == null) {
+                load(entry);
+            }
+            entry.users++;
+            return entry.board;
+        }
+    }
+
+    public void release(String name) {
+        Entry entry = entries.get(name);
+        synchronized (entry) {
+            if (--entry.users == 0) {
+                entry.idleSince = System.nanoTime();
+            }
+        }
+    }
+
+    private void load(Entry entry) throws IOException {
+        Board board = new Board(entry.boardWidth, entry.boardHeight, entry.noteWidth, entry.noteHeight, entry.colours, metrics);
+        if (dataDir != null) {
+            Path dir = entry.name.equals(DEFAULT) ? dataDir : dataDir.resolve(entry.name);
+            entry.store = BoardStore.open(board, dir, durability, snapshotEvery);
+        }
+        if (replicationBacklog > 0) {
+            // after recovery, which replicas are sent as a snapshot
+            entry.replication = new ReplicationLog(replicationBacklog);
+            board.addListener(entry.replication);
+        }
+        entry.board = board;
+    }
+
+    // Keep a ReplicationLog of this many records for every board loaded from
+    // now on, so a ReplicationServer can serve them to replicas
+    public void enableReplication(int backlog) {
+        replicationBacklog = backlog;
+    }
+
+    // Load every board and keep it in step with the same board on the
+    // primary whose ReplicationServer is at host:port
+    public void follow(String host, int port) throws IOException {
+        for (String name : getNames()) {
+            Board board = acquire(name);
+            Entry entry = entries.get(name);
+            synchronized (entry) {
+                if (entry.replica == null) {
+                    entry.replica = new Replica(name, board, host, port);
+                    entry.replica.start();
+                } else {
+                    release(name);
+                }
+            }
+        }
+    }
+
+    // The named board's log for replicas, or null if it isn't loaded or this isn't a primary
+    ReplicationLog getReplicationLog(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.replication;
+        }
+    }
+
+    // What keeps the named board in step with the primary, or null if this isn't a replica
+    Replica getReplica(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            return entry.replica;
+        }
+    }
+
+    // The STAT REPLICATION line of the named board, or null if it isn't replicated
+    String getReplicationStats(String name) {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        synchronized (entry) {
+            if (entry.replica != null) {
+                return "STAT REPLICATION board=" + name + " " + entry.replica.getStats();
+            }
+            if (entry.replication != null) {
+                return "STAT REPLICATION board=" + name + " role=primary replicas=" + entry.replication.followers.get()
+                    + " last=" + entry.replication.last();
+            }
+            return null;
+        }
+    }
+
+    // Evict boards that have had no users for idleMillis, checking every
+    // so often in the background. Does nothing without a data directory.
+    public synchronized void startEvicting(long idleMillis) {
+        if (dataDir == null || evictor != null) {
+            return;
+        }
+        evictor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "board-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(100, idleMillis / 4);
+        evictor.scheduleWithFixedDelay(() -> evictIdle(idleMillis), period, period, TimeUnit.MILLISECONDS);
+    }
+
+    private void evictIdle(long idleMillis) {
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.board == null || entry.store == null || entry.users > 0
+                        || System.nanoTime() - entry.idleSince < TimeUnit.MILLISECONDS.toNanos(idleMillis)) {
+                    continue;
+                }
+                try {
+                    // the snapshot makes the next load a single file read
+                    entry.store.checkpoint();
+                    entry.store.close();
+                    entry.store = null;
+                    entry.board = null;
+                    entry.replication = null;
+                } catch (IOException e) {
+                    // still loaded, and still logging; try again next round
+                    System.out.println("ERROR SERVER_ERROR could not evict board " + entry.name);
+                }
+            }
+        }
+    }
+
+    // Close the stores of every loaded board
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (evictor != null) {
+                evictor.shutdown();
+            }
+        }
+        IOException failure = null;
+        for (Entry entry : entries.values()) {
+            synchronized (entry) {
+                if (entry.store == null) {
+                    continue;
+                }
+                try {
+                    entry.store.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+                entry.store = null;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
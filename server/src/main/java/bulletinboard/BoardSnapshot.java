@@ -0,0 +1,362 @@
+package bulletinboard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Immutable copy of the board's notes and pins at one version.
+// GET replies are built from a snapshot so they never wait on writers and
+// every line of one reply describes the same board state.
+// Stored by column rather than as Note and Pin objects: coordinates, colour
+// ids and pinned bits sit in primitive arrays and the notes' reply lines, as
+// their Notes encoded them, in one UTF-8 byte array, so a scan is a loop over
+// a few arrays, a large board costs a handful of objects instead of a few
+// per note, and a text GET copies each line out as it is.
+public class BoardSnapshot {
+    private static final int[] NO_INTS = new int[0];
+    private static final long[] NO_LONGS = new long[0];
+
+    private final long version;
+    // colour id -> colour, shared with the board
+    private final List<String> colours;
+    private final int size;
+    private final long[] seqs;
+    private final int[] xs;
+    private final int[] ys;
+    // index into colours, read unsigned
+    private final short[] colourIds;
+    private final long[] pinnedBits;
+    // reply line i, "NOTE x y colour message", is lines[lineStart[i] ..
+    // lineStart[i + 1]), and its message starts at messageStart[i]
+    private final int[] lineStart;
+    private final int[] messageStart;
+    private final byte[] lines;
+    // message i lowercased, for refersTo=, is lowers[lowerStart[i] ..
+    // lowerStart[i + 1]); an empty range means lowercasing left the message
+    // as it was, which saves most notes a second copy
+    private final int[] lowerStart;
+    private final byte[] lowers;
+    // null while no note expires, which is the usual case
+    private final long[] expiresAt;
+    private final int pinCount;
+    private final long[] pinSeqs;
+    private final int[] pinXs;
+    private final int[] pinYs;
+    private final long[] pinNoteSeqs;
+
+    private BoardSnapshot(Builder b) {
+        this.version = b.version;
+        this.colours = b.colours;
+        this.size = b.size;
+        this.seqs = b.seqs;
+        this.xs = b.xs;
+        this.ys = b.ys;
+        this.colourIds = b.colourIds;
+        this.pinnedBits = b.pinnedBits;
+        this.lineStart = b.lineStart;
+        this.messageStart = b.messageStart;
+        this.lines = b.lines;
+        this.lowerStart = b.lowerStart;
+        this.lowers = b.lowers;
+        this.expiresAt = b.expiresAt;
+        this.pinCount = b.pinCount;
+        this.pinSeqs = b.pinSeqs;
+        this.pinXs = b.pinXs;
+        this.pinYs = b.pinYs;
+        this.pinNoteSeqs = b.pinNoteSeqs;
+    }
+
+    // A snapshot with no notes or pins
+    public static BoardSnapshot empty(long version, List<String> colours) {
+        return new Builder(version, colours, 0, 0).build();
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    // Number of notes, in posting order
+    public int size() {
+        return size;
+    }
+
+    public long getSeq(int i) {
+        return seqs[i];
+    }
+
+    // Index of the first note posted after the one with this seq, which
+    // needn't be on the board any more; size() if there is none
+    public int indexAfter(long seq) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (seqs[mid] <= seq) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public int getX(int i) {
+        return xs[i];
+    }
+
+    public int getY(int i) {
+        return ys[i];
+    }
+
+    public int getColourId(int i) {
+        return colourIds[i] & 0xFFFF;
+    }
+
+    public String getColour(int i) {
+        return colours.get(colourIds[i] & 0xFFFF);
+    }
+
+    // Decoded on every call; scans that only filter never need it
+    public String getMessage(int i) {
+        return new String(lines, messageStart[i], lineStart[i + 1] - messageStart[i], StandardCharsets.UTF_8);
+    }
+
+    // Reply line i without its PINNED= flag is getLines()[getLineStart(i) ..
+    // getLineStart(i + 1)), its message from getMessageStart(i). Shared, not
+    // copied: never write to it.
+    byte[] getLines() {
+        return lines;
+    }
+
+    int getLineStart(int i) {
+        return lineStart[i];
+    }
+
+    int getMessageStart(int i) {
+        return messageStart[i];
+    }
+
+    // Pinned status of note i as of this snapshot
+    public boolean isPinned(int i) {
+        return (pinnedBits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    // Wall clock millis note i expires at, 0 if it never does
+    public long getExpiresAt(int i) {
+        return expiresAt != null ? expiresAt[i] : 0;
+    }
+
+    // Colour id -1 and a null lowerRef match anything. lowerRef is the
+    // lowercased text filter as UTF-8, searched for in the lowercased message
+    // bytes as they are: a UTF-8 string contains another exactly when its
+    // bytes do, so nothing is decoded.
+    public boolean matches(int i, int colourId, byte[] lowerRef) {
+        if (colourId >= 0 && (colourIds[i] & 0xFFFF) != colourId) return false;
+        if (lowerRef == null) return true;
+        int start = lowerStart[i];
+        int end = lowerStart[i + 1];
+        if (start == end) {
+            return contains(lines, messageStart[i], lineStart[i + 1], lowerRef);
+        }
+        return contains(lowers, start, end, lowerRef);
+    }
+
+    // True if bytes[from .. to) contains part
+    static boolean contains(byte[] bytes, int from, int to, byte[] part) {
+        if (part.length == 0) return true;
+        byte first = part[0];
+        for (int i = from, last = to - part.length; i <= last; i++) {
+            if (bytes[i] != first) continue;
+            int j = 1;
+            while (j < part.length && bytes[i + j] == part[j]) j++;
+            if (j == part.length) return true;
+        }
+        return false;
+    }
+
+    // Pins, in the order they were added
+    public int pinCount() {
+        return pinCount;
+    }
+
+    public long getPinSeq(int j) {
+        return pinSeqs[j];
+    }
+
+    public int getPinX(int j) {
+        return pinXs[j];
+    }
+
+    public int getPinY(int j) {
+        return pinYs[j];
+    }
+
+    // Seq of the note pin j goes through
+    public long getPinNoteSeq(int j) {
+        return pinNoteSeqs[j];
+    }
+
+    // Fills the columns row by row. Notes must be added in posting order.
+    public static class Builder {
+        private final long version;
+        private final List<String> colours;
+        private int size = 0;
+        private long[] seqs;
+        private int[] xs;
+        private int[] ys;
+        private short[] colourIds;
+        private long[] pinnedBits;
+        private int[] lineStart;
+        private int[] messageStart;
+        private byte[] lines;
+        private int[] lowerStart;
+        private byte[] lowers;
+        private long[] expiresAt;
+        private int pinCount = 0;
+        private long[] pinSeqs;
+        private int[] pinXs;
+        private int[] pinYs;
+        private long[] pinNoteSeqs;
+
+        public Builder(long version, List<String> colours, int notes, int pins) {
+            this.version = version;
+            this.colours = colours;
+            this.seqs = notes == 0 ? NO_LONGS : new long[notes];
+            this.xs = notes == 0 ? NO_INTS : new int[notes];
+            this.ys = notes == 0 ? NO_INTS : new int[notes];
+            this.colourIds = new short[notes];
+            this.pinnedBits = new long[(notes + 63) >>> 6];
+            this.lineStart = new int[notes + 1];
+            this.messageStart = notes == 0 ? NO_INTS : new int[notes];
+            this.lines = new byte[Math.max(16, notes * 48)];
+            this.lowerStart = new int[notes + 1];
+            this.lowers = new byte[16];
+            this.pinSeqs = pins == 0 ? NO_LONGS : new long[pins];
+            this.pinXs = pins == 0 ? NO_INTS : new int[pins];
+            this.pinYs = pins == 0 ? NO_INTS : new int[pins];
+            this.pinNoteSeqs = pins == 0 ? NO_LONGS : new long[pins];
+        }
+
+        public Builder note(long seq, int x, int y, int colourId, boolean pinned, String message) {
+            return note(seq, x, y, colourId, pinned, message, 0);
+        }
+
+        public Builder note(long seq, int x, int y, int colourId, boolean pinned, String message, long expiresAt) {
+            byte[] prefix = Note.linePrefix(x, y, colours.get(colourId));
+            byte[] text = message.getBytes(StandardCharsets.UTF_8);
+            byte[] line = Arrays.copyOf(prefix, prefix.length + text.length);
+            System.arraycopy(text, 0, line, prefix.length, text.length);
+            row(seq, x, y, colourId, pinned, line, 0, line.length, prefix.length, expiresAt);
+            String lower = message.toLowerCase();
+            if (!lower.equals(message)) {
+                byte[] bytes = lower.getBytes(StandardCharsets.UTF_8);
+                lower(bytes, 0, bytes.length);
+            }
+            return this;
+        }
+
+        // A note on the board, with the line it encoded when posted copied as is
+        public Builder note(Note note, int colourId, boolean pinned) {
+            byte[] line = note.getLine();
+            row(note.getSeq(), note.getX(), note.getY(), colourId, pinned,
+                line, 0, line.length, note.getMessageOffset(), note.getExpiresAt());
+            byte[] lower = note.getLowerUtf8();
+            if (lower != null) {
+                lower(lower, 0, lower.length);
+            }
+            return this;
+        }
+
+        // Row i of an older snapshot, with its encoded line copied as is
+        public Builder note(BoardSnapshot from, int i, boolean pinned) {
+            int start = from.lineStart[i];
+            row(from.seqs[i], from.xs[i], from.ys[i], from.colourIds[i], pinned,
+                from.lines, start, from.lineStart[i + 1] - start, from.messageStart[i] - start, from.getExpiresAt(i));
+            int lowerFrom = from.lowerStart[i];
+            if (lowerFrom != from.lowerStart[i + 1]) {
+                lower(from.lowers, lowerFrom, from.lowerStart[i + 1] - lowerFrom);
+            }
+            return this;
+        }
+
+        public Builder pin(long seq, int x, int y, long noteSeq) {
+            if (pinCount == pinSeqs.length) {
+                int grown = Math.max(4, pinCount * 2);
+                pinSeqs = Arrays.copyOf(pinSeqs, grown);
+                pinXs = Arrays.copyOf(pinXs, grown);
+                pinYs = Arrays.copyOf(pinYs, grown);
+                pinNoteSeqs = Arrays.copyOf(pinNoteSeqs, grown);
+            }
+            pinSeqs[pinCount] = seq;
+            pinXs[pinCount] = x;
+            pinYs[pinCount] = y;
+            pinNoteSeqs[pinCount] = noteSeq;
+            pinCount++;
+            return this;
+        }
+
+        public BoardSnapshot build() {
+            // a snapshot is kept around, so don't keep the slack with it
+            if (lines.length > lineStart[size]) {
+                lines = Arrays.copyOf(lines, lineStart[size]);
+            }
+            if (lowers.length > lowerStart[size]) {
+                lowers = Arrays.copyOf(lowers, lowerStart[size]);
+            }
+            return new BoardSnapshot(this);
+        }
+
+        // The line is src[offset .. offset + length), its message from offset + messageOffset
+        private Builder row(long seq, int x, int y, int colourId, boolean pinned, byte[] src, int offset, int length,
+                int messageOffset, long expires) {
+            if (size == seqs.length) {
+                int grown = Math.max(4, size * 2);
+                seqs = Arrays.copyOf(seqs, grown);
+                xs = Arrays.copyOf(xs, grown);
+                ys = Arrays.copyOf(ys, grown);
+                colourIds = Arrays.copyOf(colourIds, grown);
+                pinnedBits = Arrays.copyOf(pinnedBits, (grown + 63) >>> 6);
+                lineStart = Arrays.copyOf(lineStart, grown + 1);
+                lowerStart = Arrays.copyOf(lowerStart, grown + 1);
+                messageStart = Arrays.copyOf(messageStart, grown);
+                if (expiresAt != null) {
+                    expiresAt = Arrays.copyOf(expiresAt, grown);
+                }
+            }
+            int end = lineStart[size];
+            if (end + length > lines.length) {
+                lines = Arrays.copyOf(lines, Math.max(lines.length * 2, end + length));
+            }
+            System.arraycopy(src, offset, lines, end, length);
+            seqs[size] = seq;
+            xs[size] = x;
+            ys[size] = y;
+            colourIds[size] = (short) colourId;
+            if (pinned) {
+                pinnedBits[size >>> 6] |= 1L << size;
+            }
+            if (expires != 0) {
+                if (expiresAt == null) {
+                    expiresAt = new long[seqs.length];
+                }
+                expiresAt[size] = expires;
+            }
+            messageStart[size] = end + messageOffset;
+            lineStart[size + 1] = end + length;
+            // no lowercased copy unless lower() adds one
+            lowerStart[size + 1] = lowerStart[size];
+            size++;
+            return this;
+        }
+
+        // The lowercased message of the row just added, where it differs
+        // from the message
+        private void lower(byte[] src, int offset, int length) {
+            int end = lowerStart[size - 1];
+            if (end + length > lowers.length) {
+                lowers = Arrays.copyOf(lowers, Math.max(lowers.length * 2, end + length));
+            }
+            System.arraycopy(src, offset, lowers, end, length);
+            lowerStart[size] = end + length;
+        }
+    }
+}
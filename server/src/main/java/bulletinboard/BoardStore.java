@@ -0,0 +1,426 @@
+package bulletinboard;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.zip.*;
+
+// Keeps a Board on disk. Every change is appended to a write-ahead log
+// (wal-<gen>.log) and every so often the whole board is written out as a
+// snapshot (snapshot-<gen>.dat) holding the state at the start of wal-<gen>,
+// after which older files are deleted. Recovery loads the newest complete
+// snapshot and replays the logs from its generation on. Notes that expire
+// keep their expiry time in both, so one that ran out while the server was
+// down isn't brought back.
+public class BoardStore implements BoardListener, Closeable {
+    private static final byte POST = 1;
+    private static final byte PIN = 2;
+    private static final byte UNPIN = 3;
+    private static final byte SHAKE = 4;
+    private static final byte CLEAR = 5;
+    // a POST with the time its note expires at
+    private static final byte POST_EXPIRING = 6;
+    private static final byte EXPIRE = 7;
+    private static final int SNAPSHOT_MAGIC = 0x42425332; // "BBS2"
+    // the same without expiry times, still read
+    private static final int SNAPSHOT_MAGIC_V1 = 0x42425331; // "BBS1"
+    private static final long FLUSH_MILLIS = 50;
+
+    private final Board board;
+    private final Path dir;
+    private final WriteAheadLog.Durability durability;
+    private final long snapshotEvery;
+    // only replaced inside board.cut(), while no change can be in progress
+    private volatile WriteAheadLog log;
+    private long generation;
+    private final AtomicLong sinceSnapshot = new AtomicLong();
+    // log position of the last record this thread appended, synced in committed()
+    private final ThreadLocal<Pending> pending = ThreadLocal.withInitial(Pending::new);
+    private final ScheduledExecutorService background;
+
+    private static class Pending {
+        WriteAheadLog log;
+        long position;
+    }
+
+    private BoardStore(Board board, Path dir, WriteAheadLog.Durability durability, long snapshotEvery, long generation) throws IOException {
+        this.board = board;
+        this.dir = dir;
+        this.durability = durability;
+        this.snapshotEvery = snapshotEvery;
+        this.generation = generation;
+        this.log = new WriteAheadLog(walFile(generation), durability != WriteAheadLog.Durability.NONE);
+        this.background = Executors.newScheduledThreadPool(2, task -> {
+            Thread thread = new Thread(task, "board-store");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // Load whatever is stored in dir into the (empty) board, then log every
+    // change made to it from now on
+    public static BoardStore open(Board board, Path dir, WriteAheadLog.Durability durability, long snapshotEvery) throws IOException {
+        Files.createDirectories(dir);
+        long last = recover(board, dir);
+        BoardStore store = new BoardStore(board, dir, durability, snapshotEvery, last + 1);
+        board.addListener(store);
+        store.background.scheduleWithFixedDelay(store::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        store.background.scheduleWithFixedDelay(store::checkpointIfDue, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+        return store;
+    }
+
+    // Replay the newest complete snapshot and the logs after it, returning the
+    // highest generation found. New records always go to a new log file, so a
+    // torn tail left in an old one is never appended to.
+    private static long recover(Board board, Path dir) throws IOException {
+        TreeMap<Long, Path> snapshots = list(dir, "snapshot-", ".dat");
+        TreeMap<Long, Path> logs = list(dir, "wal-", ".log");
+        long from = -1;
+        for (Map.Entry<Long, Path> entry : snapshots.descendingMap().entrySet()) {
+            if (readSnapshot(board, entry.getValue())) {
+                from = entry.getKey();
+                break;
+            }
+            board.clearBoard();
+        }
+        long last = Math.max(from, 0);
+        for (Map.Entry<Long, Path> entry : logs.tailMap(from, true).entrySet()) {
+            WriteAheadLog.read(entry.getValue(), payload -> redo(board, payload));
+            last = Math.max(last, entry.getKey());
+        }
+        if (!logs.isEmpty()) {
+            last = Math.max(last, logs.lastKey());
+        }
+        return last;
+    }
+
+    private static TreeMap<Long, Path> list(Path dir, String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> found = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, prefix + "*" + suffix)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    found.put(Long.parseLong(name.substring(prefix.length(), name.length() - suffix.length())), file);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+        return found;
+    }
+
+    // Apply one record to board; also how replicas apply the primary's changes
+    static void redo(Board board, byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        switch (in.readByte()) {
+            case POST:
+                board.restoreNote(in.readLong(), in.readInt(), in.readInt(), readString(in), readString(in));
+                break;
+            case POST_EXPIRING:
+                board.restoreNote(in.readLong(), in.readInt(), in.readInt(), readString(in), readString(in), in.readLong());
+                break;
+            case PIN:
+                board.restorePin(in.readLong(), in.readInt(), in.readInt(), in.readLong());
+                break;
+            case UNPIN:
+                board.restoreUnpin(in.readInt(), in.readInt());
+                break;
+            case SHAKE:
+                board.shakeBoard();
+                break;
+            case CLEAR:
+                board.clearBoard();
+                break;
+            case EXPIRE: {
+                long[] seqs = new long[in.readInt()];
+                for (int i = 0; i < seqs.length; i++) {
+                    seqs[i] = in.readLong();
+                }
+                board.restoreExpired(seqs);
+                break;
+            }
+            default:
+                throw new IOException("unknown log record");
+        }
+    }
+
+    // BoardListener: called under the board's locks, so just buffer the record
+
+    @Override
+    public void notePosted(Note note) {
+        append(postRecord(note));
+    }
+
+    @Override
+    public void pinAdded(Pin pin) {
+        append(pinRecord(pin));
+    }
+
+    @Override
+    public void pinsRemoved(int x, int y, List<Pin> removed) {
+        append(unpinRecord(x, y));
+    }
+
+    @Override
+    public void shaken(Collection<Note> removed) {
+        append(shakeRecord());
+    }
+
+    @Override
+    public void expired(List<Note> removed) {
+        append(expireRecord(removed));
+    }
+
+    @Override
+    public void cleared() {
+        append(clearRecord());
+    }
+
+    // The records redo() reads back, one per change a BoardListener is told of
+
+    static byte[] postRecord(Note note) {
+        String message = note.getMessage();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(40 + message.length());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(note.getExpiresAt() != 0 ? POST_EXPIRING : POST);
+            out.writeLong(note.getSeq());
+            out.writeInt(note.getX());
+            out.writeInt(note.getY());
+            writeString(out, note.getColour());
+            writeString(out, message);
+            if (note.getExpiresAt() != 0) {
+                out.writeLong(note.getExpiresAt());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] pinRecord(Pin pin) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(25);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(PIN);
+            out.writeLong(pin.getSeq());
+            out.writeInt(pin.getX());
+            out.writeInt(pin.getY());
+            out.writeLong(pin.getNote().getSeq());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] unpinRecord(int x, int y) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(9);
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(UNPIN);
+            out.writeInt(x);
+            out.writeInt(y);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static byte[] shakeRecord() {
+        return new byte[]{SHAKE};
+    }
+
+    static byte[] clearRecord() {
+        return new byte[]{CLEAR};
+    }
+
+    // The seqs of the notes; their pins are implied
+    static byte[] expireRecord(List<Note> removed) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(5 + 8 * removed.size());
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeByte(EXPIRE);
+            out.writeInt(removed.size());
+            for (Note note : removed) {
+                out.writeLong(note.getSeq());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // With FSYNC the reply waits here until the records are on disk; writers
+    // arriving together share one fsync. The change is already on the board,
+    // and other clients may have read it, so a failed sync can't undo it: it
+    // is thrown for the command to be answered ERROR SERVER_ERROR.
+    @Override
+    public void committed() {
+        Pending mine = pending.get();
+        if (mine.log == null) return;
+        WriteAheadLog written = mine.log;
+        mine.log = null;
+        if (durability == WriteAheadLog.Durability.FSYNC) {
+            try {
+                written.sync(mine.position);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private void append(byte[] record) {
+        Pending mine = pending.get();
+        mine.log = log;
+        mine.position = mine.log.append(record);
+        sinceSnapshot.incrementAndGet();
+    }
+
+    private void flush() {
+        try {
+            WriteAheadLog current = log;
+            current.sync(current.appended());
+        } catch (IOException e) {
+            System.out.println("ERROR SERVER_ERROR log flush failed: " + e.getMessage());
+        }
+    }
+
+    private void checkpointIfDue() {
+        if (sinceSnapshot.get() < snapshotEvery) return;
+        try {
+            checkpoint();
+        } catch (IOException e) {
+            System.out.println("ERROR SERVER_ERROR snapshot failed: " + e.getMessage());
+        }
+    }
+
+    // Switch to a new log at a point where no change is in progress, write the
+    // board as it was at that point, then drop the files it replaces
+    public synchronized void checkpoint() throws IOException {
+        WriteAheadLog old = log;
+        long next = generation + 1;
+        WriteAheadLog fresh = new WriteAheadLog(walFile(next), durability != WriteAheadLog.Durability.NONE);
+        BoardSnapshot state = board.cut(() -> {
+            log = fresh;
+            sinceSnapshot.set(0);
+        });
+        generation = next;
+        // the snapshot only replaces the old log once that log is complete
+        old.close();
+        writeSnapshot(state, dir.resolve("snapshot-" + next + ".dat"));
+        for (Path file : list(dir, "snapshot-", ".dat").headMap(next).values()) {
+            Files.deleteIfExists(file);
+        }
+        for (Path file : list(dir, "wal-", ".log").headMap(next).values()) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    // Notes (with their expiry times) then pins, followed by a CRC32 of everything before it. Written to
+    // a temporary file and renamed into place so a crash leaves either the
+    // old snapshot or the new one.
+    private static void writeSnapshot(BoardSnapshot state, Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            writeState(state, out);
+            out.flush();
+            // the checksum goes after the data it covers
+            new DataOutputStream(Channels.newOutputStream(channel)).writeLong(checked.getChecksum().getValue());
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // False if the file is incomplete or corrupt; the board may then hold part
+    // of it and must be cleared
+    private static boolean readSnapshot(Board board, Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Channels.newInputStream(channel), 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (!readState(board, in)) return false;
+            long expected = checked.getChecksum().getValue();
+            return new DataInputStream(in).readLong() == expected;
+        } catch (EOFException e) {
+            return false;
+        }
+    }
+
+    // The body of a snapshot, also what a new replica is sent first
+    static void writeState(BoardSnapshot state, DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(state.size());
+        for (int i = 0; i < state.size(); i++) {
+            out.writeLong(state.getSeq(i));
+            out.writeInt(state.getX(i));
+            out.writeInt(state.getY(i));
+            writeString(out, state.getColour(i));
+            writeString(out, state.getMessage(i));
+            out.writeLong(state.getExpiresAt(i));
+        }
+        out.writeInt(state.pinCount());
+        for (int j = 0; j < state.pinCount(); j++) {
+            out.writeLong(state.getPinSeq(j));
+            out.writeInt(state.getPinX(j));
+            out.writeInt(state.getPinY(j));
+            out.writeLong(state.getPinNoteSeq(j));
+        }
+    }
+
+    // Restore what writeState wrote into an empty board; false if it isn't a snapshot
+    static boolean readState(Board board, DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != SNAPSHOT_MAGIC && magic != SNAPSHOT_MAGIC_V1) return false;
+        int noteCount = in.readInt();
+        for (int i = 0; i < noteCount; i++) {
+            long seq = in.readLong();
+            int x = in.readInt();
+            int y = in.readInt();
+            String colour = readString(in);
+            String message = readString(in);
+            board.restoreNote(seq, x, y, colour, message, magic == SNAPSHOT_MAGIC ? in.readLong() : 0);
+        }
+        int pinCount = in.readInt();
+        for (int i = 0; i < pinCount; i++) {
+            board.restorePin(in.readLong(), in.readInt(), in.readInt(), in.readLong());
+        }
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) throw new EOFException();
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private Path walFile(long gen) {
+        return dir.resolve("wal-" + gen + ".log");
+    }
+
+    @Override
+    public void close() throws IOException {
+        background.shutdown();
+        try {
+            background.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        board.removeListener(this);
+        log.close();
+    }
+}
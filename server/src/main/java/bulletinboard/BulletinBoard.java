@@ -0,0 +1,204 @@
+package bulletinboard;
+
+import java.net.*;
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class BulletinBoard {
+    // The board named on the command line, which every client starts on
+    public static Board BOARD;
+    public static BoardRegistry BOARDS;
+    // Server engine, chosen with -Dbulletinboard.engine=thread|virtual|nio
+    public static final String ENGINE = System.getProperty("bulletinboard.engine", "thread");
+    // Directory to keep the board in across restarts; unset keeps it in memory only
+    public static final String DATA_DIR = System.getProperty("bulletinboard.data");
+    // none|async|fsync, see WriteAheadLog.Durability
+    public static final String DURABILITY = System.getProperty("bulletinboard.durability", "async");
+    // Log records between snapshots
+    public static final long SNAPSHOT_EVERY = Long.getLong("bulletinboard.snapshotEvery", 100000);
+    // File of more boards to host, one per line: name boardWidth boardHeight noteWidth noteHeight colour...
+    public static final String BOARDS_FILE = System.getProperty("bulletinboard.boards");
+    // Seconds a stored board may go unused before it is evicted from memory; 0 keeps them all loaded
+    public static final long EVICT_AFTER = Long.getLong("bulletinboard.evictAfter", 0);
+    // Record every connection's commands and replies to this file, for bench.Replay
+    public static final String CAPTURE = System.getProperty("bulletinboard.capture");
+    // Also publish the STATS metrics as a JMX MBean
+    public static final boolean JMX = Boolean.getBoolean("bulletinboard.jmx");
+    // Port to serve replicas on, making this server a primary; 0 for none
+    public static final int REPLICATION_PORT = Integer.getInteger("bulletinboard.replicationPort", 0);
+    // host:port of a primary's replication port, making this server a read-only replica of it
+    public static final String REPLICA_OF = System.getProperty("bulletinboard.replicaOf");
+
+    public static void main(String[] args) {
+        if (args.length < 6) {
+            System.out.println("Usage: java BulletinBoard <port> <boardWidth> <boardHeight> <noteWidth> <noteHeight> <colour1> <colour2> ...");
+            return;
+        }
+
+        int port = Integer.parseInt(args[0]);
+        int boardWidth = Integer.parseInt(args[1]);
+        int boardHeight = Integer.parseInt(args[2]);
+        int noteWidth = Integer.parseInt(args[3]);
+        int noteHeight = Integer.parseInt(args[4]);
+
+        // invalid arguments check
+        if (port <= 0 || boardWidth <= 0 || boardHeight <= 0 || noteWidth <= 0 || noteHeight <= 0) {
+            System.out.println("ERROR INVALID_ARGUMENTS");
+            return;
+        }
+
+        // Use Linked Hash Set to maintain insertion order and avoid duplicates for the colours
+        Set<String> colours = new LinkedHashSet<>();
+        for (int i = 5; i < args.length; i++) {
+            String colour = args[i].trim();
+            if (!colour.isEmpty()) {
+                colours.add(colour);
+            }
+        }
+
+        WriteAheadLog.Durability durability;
+        try {
+            durability = WriteAheadLog.Durability.valueOf(DURABILITY.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.out.println("ERROR INVALID_ARGUMENTS unknown durability " + DURABILITY);
+            return;
+        }
+        BoardRegistry boards = new BoardRegistry(new Metrics(), DATA_DIR != null ? Paths.get(DATA_DIR) : null, durability, SNAPSHOT_EVERY);
+        boards.define(BoardRegistry.DEFAULT, boardWidth, boardHeight, noteWidth, noteHeight, colours);
+        if (BOARDS_FILE != null) {
+            try {
+                boards.defineAll(Paths.get(BOARDS_FILE));
+            } catch (IllegalArgumentException e) {
+                System.out.println("ERROR INVALID_ARGUMENTS " + e.getMessage());
+                return;
+            } catch (IOException e) {
+                System.out.println("ERROR SERVER_ERROR could not read " + BOARDS_FILE);
+                return;
+            }
+        }
+        if (REPLICATION_PORT > 0) {
+            // before any board is loaded, so each keeps its log from the start
+            boards.enableReplication(ReplicationLog.BACKLOG);
+        }
+        try {
+            // held for the life of the server, so the default board stays loaded
+            BOARD = boards.acquire(BoardRegistry.DEFAULT);
+        } catch (IOException e) {
+            System.out.println("ERROR SERVER_ERROR could not open " + DATA_DIR);
+            return;
+        }
+        BOARDS = boards;
+        if (DATA_DIR != null) {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    boards.close();
+                } catch (IOException e) {
+                    System.out.println("ERROR SERVER_ERROR");
+                }
+            }));
+            if (EVICT_AFTER > 0) {
+                boards.startEvicting(TimeUnit.SECONDS.toMillis(EVICT_AFTER));
+            }
+            System.out.println("Boards stored in " + DATA_DIR + " with " + durability + " durability, " + BOARD.snapshot().size() + " notes recovered on the default board");
+        }
+
+        if (JMX) {
+            try {
+                boards.getMetrics().register("bulletinboard:type=Metrics");
+            } catch (javax.management.JMException e) {
+                System.out.println("ERROR SERVER_ERROR could not register metrics over JMX");
+            }
+        }
+
+        if (REPLICATION_PORT > 0) {
+            try {
+                new ReplicationServer(REPLICATION_PORT, port, boards).start();
+            } catch (IOException e) {
+                System.out.println("ERROR SERVER_ERROR could not listen for replicas on port " + REPLICATION_PORT);
+                return;
+            }
+            System.out.println("Serving replicas on port " + REPLICATION_PORT);
+        }
+        if (REPLICA_OF != null) {
+            int colon = REPLICA_OF.lastIndexOf(':');
+            try {
+                boards.follow(REPLICA_OF.substring(0, colon), Integer.parseInt(REPLICA_OF.substring(colon + 1)));
+            } catch (IndexOutOfBoundsException | NumberFormatException e) {
+                System.out.println("ERROR INVALID_ARGUMENTS replicaOf must be host:port");
+                return;
+            } catch (IOException e) {
+                System.out.println("ERROR SERVER_ERROR could not open the boards to replicate");
+                return;
+            }
+            System.out.println("Read-only replica of " + REPLICA_OF);
+        }
+
+        Capture capture = null;
+        if (CAPTURE != null) {
+            try {
+                capture = Capture.open(Paths.get(CAPTURE));
+            } catch (IOException e) {
+                System.out.println("ERROR SERVER_ERROR could not open " + CAPTURE);
+                return;
+            }
+            Capture closing = capture;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    closing.close();
+                } catch (IOException e) {
+                    System.out.println("ERROR SERVER_ERROR");
+                }
+            }));
+            System.out.println("Capturing connections to " + CAPTURE);
+        }
+
+        System.out.println("Bulletin Board Server is running on port " + port + " using the " + ENGINE + " engine");
+        System.out.println("Board dimensions: " + boardWidth + "x" + boardHeight + "|| Note dimensions: " + noteWidth + "x" + noteHeight + "|| Supported colours: " + colours);
+        System.out.println("Boards hosted: " + boards.getNames());
+        try {
+            switch (ENGINE) {
+                case "thread":
+                    serveBlocking(port, boards, capture, task -> new Thread(task).start());
+                    break;
+                case "virtual":
+                    serveBlocking(port, boards, capture, virtualThreadExecutor());
+                    break;
+                case "nio":
+                    new NioServer(port, boards, capture).serve();
+                    break;
+                default:
+                    System.out.println("ERROR INVALID_ARGUMENTS unknown engine " + ENGINE);
+            }
+        } catch (IOException e) {
+            System.out.println("ERROR SERVER_ERROR");
+            //e.printStackTrace() can be used for more detailed debugging
+        }
+    }
+
+    // Accept loop for the blocking engines, one ClientManager task per socket
+    private static void serveBlocking(int port, BoardRegistry boards, Capture capture, Executor executor) throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(port)) {
+            while (true) {
+                Socket clientSocket = serverSocket.accept();
+                if (!Limits.admits(boards.getMetrics().getActiveConnections())) {
+                    ClientManager.reject(clientSocket, boards.getMetrics());
+                    continue;
+                }
+                executor.execute(new ClientManager(clientSocket, boards, capture, executor));
+            }
+        }
+    }
+
+    // Virtual threads are only in Java 21+, so look the factory up at runtime
+    // and fall back to a cached pool of platform threads on older JVMs
+    private static Executor virtualThreadExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.out.println("Virtual threads not available on this JVM, using a cached thread pool");
+            return Executors.newCachedThreadPool();
+        }
+    }
+}   
\ No newline at end of file
@@ -0,0 +1,214 @@
+package bulletinboard;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// Records what every connection sends and what it is answered, for
+// bench.Replay to play back against another build. Turned on with
+// -Dbulletinboard.capture=<file>.
+//
+// The file is a sequence of BinaryCodec frames, one per record:
+//   kind connection micros [text | bytes]
+// where connection numbers the connections in the order they opened and
+// micros is the time since the previous record in the file. LINE is one
+// text line as received, FRAME one binary request payload, REPLY one line
+// of an answer (binary answers are recorded in their text form, as
+// ClientConnection decodes them). Events pushed to subscribers aren't
+// recorded; they depend on timing, not on what the client sent.
+//
+// Every record goes through one lock and buffer, so capturing costs a busy
+// server some throughput; it is meant for taking samples, not to stay on.
+public class Capture implements Closeable {
+    public static final byte OPEN = 1;
+    public static final byte LINE = 2;
+    public static final byte FRAME = 3;
+    public static final byte REPLY = 4;
+    public static final byte CLOSE = 5;
+
+    private static final long FLUSH_MILLIS = 200;
+
+    private final OutputStream out;
+    private final BinaryCodec.FrameWriter frame = new BinaryCodec.FrameWriter();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final ScheduledExecutorService flusher;
+    private long last = System.nanoTime();
+    private boolean closed = false;
+
+    // One record read back
+    public static final class Record {
+        public final byte kind;
+        public final int connection;
+        // since the first record of the file
+        public final long micros;
+        public final String text;
+        public final byte[] bytes;
+
+        Record(byte kind, int connection, long micros, String text, byte[] bytes) {
+            this.kind = kind;
+            this.connection = connection;
+            this.micros = micros;
+            this.text = text;
+            this.bytes = bytes;
+        }
+    }
+
+    private Capture(OutputStream out) {
+        this.out = out;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "capture-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flush, FLUSH_MILLIS, FLUSH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Start a new capture in file, replacing whatever was there
+    public static Capture open(Path file) throws IOException {
+        return new Capture(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    }
+
+    // A connection has opened; returns its number for the other records
+    public int opened() {
+        int connection = connections.getAndIncrement();
+        record(OPEN, connection, null, null);
+        return connection;
+    }
+
+    public void closed(int connection) {
+        record(CLOSE, connection, null, null);
+    }
+
+    public void line(int connection, String line) {
+        record(LINE, connection, line, null);
+    }
+
+    public void frame(int connection, byte[] payload) {
+        record(FRAME, connection, null, payload);
+    }
+
+    // A ReplyWriter that records every reply line for connection, then
+    // passes it on to out unchanged
+    public ReplyWriter replies(int connection, ReplyWriter out) {
+        return new ReplyWriter() {
+            // the base class formats notes and counts into text for this
+            @Override
+            protected void writeLine(CharSequence text) {
+                record(REPLY, connection, text, null);
+            }
+
+            @Override
+            public void println(String text) {
+                super.println(text);
+                out.println(text);
+            }
+
+            @Override
+            public void count(int n) {
+                super.count(n);
+                out.count(n);
+            }
+
+            @Override
+            public void note(int x, int y, String colour, String message, boolean pinned) {
+                super.note(x, y, colour, message, pinned);
+                out.note(x, y, colour, message, pinned);
+            }
+
+            @Override
+            public void note(BoardSnapshot snapshot, int i) {
+                super.note(snapshot, i);
+                out.note(snapshot, i);
+            }
+
+            @Override
+            public void cursor(long after) {
+                super.cursor(after);
+                out.cursor(after);
+            }
+
+            @Override
+            public void pin(int x, int y) {
+                super.pin(x, y);
+                out.pin(x, y);
+            }
+        };
+    }
+
+    private synchronized void record(byte kind, int connection, CharSequence text, byte[] bytes) {
+        if (closed) {
+            return;
+        }
+        long now = System.nanoTime();
+        long micros = TimeUnit.NANOSECONDS.toMicros(now - last);
+        last = now;
+        frame.start(kind).putVarint(connection).putVarint((int) Math.min(micros, Integer.MAX_VALUE));
+        if (text != null) frame.putString(text.toString());
+        if (bytes != null) frame.putBytes(bytes);
+        try {
+            frame.writeTo(out);
+        } catch (IOException e) {
+            // a capture is best effort, it never takes a connection down
+            closed = true;
+            System.out.println("ERROR SERVER_ERROR capture stopped: " + e.getMessage());
+        }
+    }
+
+    private synchronized void flush() {
+        if (closed) {
+            return;
+        }
+        try {
+            out.flush();
+        } catch (IOException e) {
+            closed = true;
+            System.out.println("ERROR SERVER_ERROR capture stopped: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flusher.shutdown();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            out.close();
+        }
+    }
+
+    // Every record of a capture file, in order. A record cut short at the
+    // end (the server was killed mid-write) ends the list.
+    public static List<Record> read(Path file) throws IOException {
+        List<Record> records = new ArrayList<>();
+        long micros = 0;
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+            byte[] payload;
+            while ((payload = readRecord(in)) != null) {
+                BinaryCodec.FrameReader reader = new BinaryCodec.FrameReader(payload);
+                try {
+                    byte kind = (byte) reader.getByte();
+                    int connection = reader.getVarint();
+                    micros += reader.getVarint();
+                    String text = kind == LINE || kind == REPLY ? reader.getString() : null;
+                    byte[] bytes = kind == FRAME ? reader.getBytes() : null;
+                    records.add(new Record(kind, connection, micros, text, bytes));
+                } catch (IndexOutOfBoundsException e) {
+                    throw new IOException("corrupt capture record " + records.size());
+                }
+            }
+        }
+        return records;
+    }
+
+    private static byte[] readRecord(InputStream in) throws IOException {
+        try {
+            return BinaryCodec.readFrame(in);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+}
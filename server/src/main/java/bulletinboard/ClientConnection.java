@@ -0,0 +1,414 @@
+package bulletinboard;
+
+import java.util.*;
+import java.util.function.*;
+import java.io.*;
+import java.net.*;
+
+public class ClientConnection{
+    private Socket socket;
+    private InputStream rawInput;
+    private OutputStream rawOutput;
+    private BufferedReader input;
+    private PrintWriter output;
+    private final ArrayList<String> handshakeResponse = new ArrayList<>();
+    // board colours from the handshake, binary colour ids index into it
+    private final List<String> colours = new ArrayList<>();
+    // true after enableBinary(): commands and replies are BinaryCodec frames
+    private boolean binary = false;
+    private final BinaryCodec.FrameWriter frame = new BinaryCodec.FrameWriter();
+    // EVENT lines that arrived while waiting for a reply, oldest first
+    private final ArrayDeque<String> events = new ArrayDeque<>();
+
+    public ClientConnection(String host, int port)
+            throws IOException {
+                socket = new Socket(host, port);
+                rawInput = new BufferedInputStream(socket.getInputStream());
+                rawOutput = new BufferedOutputStream(socket.getOutputStream());
+                input = new BufferedReader(new InputStreamReader(rawInput, "UTF-8"));
+                output = new PrintWriter(new BufferedWriter(new OutputStreamWriter(rawOutput, "UTF-8")));
+
+
+                //initial handshake
+                for (int i = 0; i < 3; i++) {
+                    String response = input.readLine();
+                    if (response == null){
+                        throw new IOException("ERROR SERVER_ERROR during connection. not client side error");
+                    }
+                    if (response.startsWith("ERROR")){
+                        // turned away, e.g. ERROR SERVER_BUSY
+                        socket.close();
+                        throw new IOException(response);
+                    }
+                    handshakeResponse.add(response);
+                }
+                readColours();
+            }
+
+    // colours from the COLORS line of the handshake
+    private void readColours(){
+        colours.clear();
+        String[] colourLine = handshakeResponse.get(2).split("\\s+");
+        for (int i = 1; i < colourLine.length; i++) {
+            colours.add(colourLine[i]);
+        }
+    }
+
+    public boolean validateConnection(){
+        boolean result = socket != null && socket.isConnected() && !socket.isClosed();
+        return result;
+    }
+
+    public ArrayList<String> getHandshakeResponse(){
+        return new ArrayList<>(handshakeResponse);
+    }
+
+    // Switch this connection to the binary protocol. Every method keeps
+    // working and returns replies in the same text form; only the bytes on
+    // the wire change. Returns the server's answer, OK BINARY if it switched.
+    public String enableBinary() throws IOException{
+        if (binary) return "OK BINARY";
+        // nothing else may be sent until the answer is back
+        String reply = sendCommand("BINARY").get(0);
+        binary = reply.equals("OK BINARY");
+        return reply;
+    }
+
+    public boolean isBinary(){
+        return binary;
+    }
+
+    // send command and return response
+    public ArrayList<String> sendCommand(String command) throws IOException{
+        send(command);
+        flush();
+        return readReply(command);
+    }
+
+    // The board commands, sent as frames in binary mode and as text otherwise
+    public ArrayList<String> post(int x, int y, String colour, String message) throws IOException{
+        if (!binary) return sendCommand("POST " + x + " " + y + " " + colour + " " + message);
+        int colourId = colours.indexOf(colour);
+        if (colourId < 0) return sendCommand("POST " + x + " " + y + " " + colour + " " + message);
+        return sendFrame(frame.start(BinaryCodec.POST).putInt(x).putInt(y).putVarint(colourId).putString(message));
+    }
+
+    // A note the server takes off ttl seconds after it is posted (0: never)
+    public ArrayList<String> post(int x, int y, String colour, String message, int ttl) throws IOException{
+        int colourId = colours.indexOf(colour);
+        if (!binary || colourId < 0) return sendCommand("POST " + x + " " + y + " ttl=" + ttl + " " + colour + " " + message);
+        return sendFrame(frame.start(BinaryCodec.POST).putInt(x).putInt(y).putVarint(colourId).putString(message).putVarint(ttl));
+    }
+
+    public ArrayList<String> pin(int x, int y) throws IOException{
+        if (!binary) return sendCommand("PIN " + x + " " + y);
+        return sendFrame(frame.start(BinaryCodec.PIN).putInt(x).putInt(y));
+    }
+
+    public ArrayList<String> unpin(int x, int y) throws IOException{
+        if (!binary) return sendCommand("UNPIN " + x + " " + y);
+        return sendFrame(frame.start(BinaryCodec.UNPIN).putInt(x).putInt(y));
+    }
+
+    // GET with any of the filters; null leaves a filter out
+    public ArrayList<String> get(String colour, int[] contains, String referenceTo) throws IOException{
+        return get(colour, contains, referenceTo, Integer.MAX_VALUE, Board.FROM_START);
+    }
+
+    // One page of a GET: at most limit notes, those after the cursor from
+    // the CURSOR line of the page before (Board.FROM_START for the first).
+    // The reply ends with a CURSOR line if there are more.
+    public ArrayList<String> get(String colour, int[] contains, String referenceTo, int limit, long after) throws IOException{
+        boolean all = limit == Integer.MAX_VALUE;
+        boolean first = after == Board.FROM_START;
+        if (!binary || (colour != null && !colours.contains(colour))){
+            StringBuilder command = new StringBuilder("GET");
+            if (colour != null) command.append(" colour=").append(colour);
+            if (contains != null) command.append(" contains=").append(contains[0]).append(' ').append(contains[1]);
+            if (!all) command.append(" limit=").append(limit);
+            if (!first) command.append(" after=").append(after);
+            if (referenceTo != null) command.append(" refersTo=").append(referenceTo);
+            return sendCommand(command.toString());
+        }
+        int flags = (colour != null ? BinaryCodec.HAS_COLOUR : 0)
+            | (contains != null ? BinaryCodec.HAS_CONTAINS : 0)
+            | (referenceTo != null ? BinaryCodec.HAS_REFERENCE : 0)
+            | (!all ? BinaryCodec.HAS_LIMIT : 0)
+            | (!first ? BinaryCodec.HAS_AFTER : 0);
+        frame.start(BinaryCodec.GET).putByte(flags);
+        if (colour != null) frame.putVarint(colours.indexOf(colour));
+        if (contains != null) frame.putInt(contains[0]).putInt(contains[1]);
+        if (referenceTo != null) frame.putString(referenceTo);
+        if (!all) frame.putVarint(limit);
+        if (!first) frame.putLong(after);
+        return sendFrame(frame);
+    }
+
+    public ArrayList<String> getPins() throws IOException{
+        if (!binary) return sendCommand("GET PINS");
+        return sendFrame(frame.start(BinaryCodec.GET_PINS));
+    }
+
+    public ArrayList<String> shake() throws IOException{
+        if (!binary) return sendCommand("SHAKE");
+        return sendFrame(frame.start(BinaryCodec.SHAKE));
+    }
+
+    public ArrayList<String> clear() throws IOException{
+        if (!binary) return sendCommand("CLEAR");
+        return sendFrame(frame.start(BinaryCodec.CLEAR));
+    }
+
+    // Move to another board of the server. On OK 3 the three lines that
+    // follow replace the handshake response, and post/get use the new
+    // board's colours. Only possible before enableBinary().
+    public ArrayList<String> use(String board) throws IOException{
+        ArrayList<String> reply = sendCommand("USE " + board);
+        if (reply.get(0).equals("OK 3")){
+            handshakeResponse.clear();
+            handshakeResponse.addAll(reply.subList(1, reply.size()));
+            readColours();
+        }
+        return reply;
+    }
+
+    // OK n followed by a NAME line per board the server hosts
+    public ArrayList<String> boards() throws IOException{
+        return sendCommand("BOARDS");
+    }
+
+    // OK n followed by the server's STAT lines
+    public ArrayList<String> stats() throws IOException{
+        return sendCommand("STATS");
+    }
+
+    private ArrayList<String> sendFrame(BinaryCodec.FrameWriter request) throws IOException{
+        request.writeTo(rawOutput);
+        return readFrameReply();
+    }
+
+    // Send a request payload built elsewhere, e.g. read back from a
+    // Capture. Only after enableBinary().
+    public ArrayList<String> sendFrame(byte[] payload) throws IOException{
+        BinaryCodec.writeFrame(rawOutput, payload);
+        return readFrameReply();
+    }
+
+    // Flush the frame just written and read its reply
+    private ArrayList<String> readFrameReply() throws IOException{
+        rawOutput.flush();
+        ArrayList<String> result = new ArrayList<>();
+        result.add(null);
+        result.set(0, readBinaryReply(result::add));
+        return result;
+    }
+
+    // send every command before reading any reply, then return the replies in order.
+    // Saves a round trip per command; a BATCH belongs in sendBatch instead.
+    // Replies wait in the socket buffers until we read them, so keep groups to a few thousand.
+    public List<ArrayList<String>> sendPipelined(List<String> commands) throws IOException{
+        for (String command : commands){
+            send(command);
+        }
+        flush();
+        List<ArrayList<String>> results = new ArrayList<>();
+        for (String command : commands){
+            results.add(readReply(command));
+        }
+        return results;
+    }
+
+    // send POST/PIN commands as one BATCH, applied by the server under a single lock.
+    // Returns the OK n header followed by one reply per command. At most
+    // CommandProcessor.MAX_BATCH commands, the most the server takes.
+    public ArrayList<String> sendBatch(List<String> commands) throws IOException{
+        checkBatch(commands);
+        send("BATCH " + commands.size());
+        for (String command : commands){
+            send(command);
+        }
+        flush();
+        return readReply("BATCH");
+    }
+
+    static void checkBatch(List<String> commands){
+        if (commands.isEmpty() || commands.size() > CommandProcessor.MAX_BATCH){
+            throw new IllegalArgumentException("batch of " + commands.size() + " commands, must be 1 to "
+                + CommandProcessor.MAX_BATCH);
+        }
+    }
+
+    // send command and hand each line after the first to the consumer as it
+    // arrives, so a large GET never has to be held in memory. Returns the first line.
+    public String sendCommand(String command, Consumer<String> lines) throws IOException{
+        send(command);
+        flush();
+        return readReply(command, lines);
+    }
+
+    // A text command, as a line or, in binary mode, inside a TEXT frame
+    private void send(String command) throws IOException{
+        if (binary){
+            frame.start(BinaryCodec.TEXT).putString(command).writeTo(rawOutput);
+        } else {
+            output.println(command);
+        }
+    }
+
+    private void flush() throws IOException{
+        // the PrintWriter flushes the raw stream under it too
+        output.flush();
+    }
+
+    // SUBSCRIBE with GET style filters, e.g. "colour=red"; "" for everything.
+    // Events then arrive between replies and are read with nextEvent().
+    public String subscribe(String filters) throws IOException{
+        return sendCommand(filters.isEmpty() ? "SUBSCRIBE" : "SUBSCRIBE " + filters).get(0);
+    }
+
+    public String unsubscribe() throws IOException{
+        return sendCommand("UNSUBSCRIBE").get(0);
+    }
+
+    // The next EVENT line, waiting for one if none has arrived yet
+    public String nextEvent() throws IOException{
+        if (!events.isEmpty()){
+            return events.poll();
+        }
+        String line = binary ? readFrameLine() : input.readLine();
+        if (line == null) throw new IOException("ERROR SERVER_ERROR");
+        return line;
+    }
+
+    // EVENT lines already received and not yet taken
+    public List<String> pendingEvents(){
+        List<String> pending = new ArrayList<>(events);
+        events.clear();
+        return pending;
+    }
+
+    // read one reply; GET and BATCH answer with OK n followed by n lines
+    private ArrayList<String> readReply(String command) throws IOException{
+        ArrayList<String> result = new ArrayList<>();
+        // first line goes in front of the ones collected while reading
+        result.add(null);
+        result.set(0, readReply(command, result::add));
+        return result;
+    }
+
+    private String readReply(String command, Consumer<String> lines) throws IOException{
+        if (binary) return readBinaryReply(lines);
+        String response = readReplyLine();
+        if (response == null) throw new IOException("ERROR SERVER_ERROR");
+
+        if (isMultiLine(command) && response.startsWith("OK ")){
+            int n = parseLineCount(response);
+            for (int i = 0; i < n; i++){
+                String line = input.readLine();
+                if (line == null)
+                    throw new IOException("ERROR INVALID_RESPONSE");
+                lines.accept(line);
+            }
+        }
+
+        return response;
+    }
+
+    // Events only come between replies, so the first line of a reply may
+    // follow some of them; they are kept for nextEvent()
+    private String readReplyLine() throws IOException{
+        String line = input.readLine();
+        while (line != null && line.startsWith("EVENT ")){
+            events.add(line);
+            line = input.readLine();
+        }
+        return line;
+    }
+
+    // One reply in binary mode. Frames say themselves whether more follow,
+    // so unlike text the command doesn't matter.
+    private String readBinaryReply(Consumer<String> lines) throws IOException{
+        byte[] payload = BinaryCodec.readFrame(rawInput);
+        while (payload != null && payload.length > 0 && payload[0] == BinaryCodec.LINE){
+            String line = decode(payload);
+            if (!line.startsWith("EVENT ")) return line;
+            events.add(line);
+            payload = BinaryCodec.readFrame(rawInput);
+        }
+        if (payload == null) throw new IOException("ERROR SERVER_ERROR");
+        String response = decode(payload);
+        if (payload.length > 0 && payload[0] == BinaryCodec.COUNT){
+            BinaryCodec.FrameReader count = new BinaryCodec.FrameReader(payload);
+            count.getByte();
+            int n = count.getVarint();
+            for (int i = 0; i < n; i++){
+                String line = readFrameLine();
+                lines.accept(line);
+            }
+        }
+        return response;
+    }
+
+    private String readFrameLine() throws IOException{
+        byte[] payload = BinaryCodec.readFrame(rawInput);
+        if (payload == null) throw new IOException("ERROR INVALID_RESPONSE");
+        return decode(payload);
+    }
+
+    // A reply frame as the text line the server would have sent
+    private String decode(byte[] payload) throws IOException{
+        BinaryCodec.FrameReader in = new BinaryCodec.FrameReader(payload);
+        try{
+            switch (in.getByte()){
+                case BinaryCodec.REPLY:
+                    return BinaryCodec.REPLIES.get(in.getVarint());
+                case BinaryCodec.LINE:
+                    return in.getString();
+                case BinaryCodec.COUNT:
+                    return "OK " + in.getVarint();
+                case BinaryCodec.NOTE: {
+                    int x = in.getInt();
+                    int y = in.getInt();
+                    String colour = colours.get(in.getVarint());
+                    boolean pinned = in.getByte() != 0;
+                    return "NOTE " + x + " " + y + " " + colour + " " + in.getString() + " PINNED=" + pinned;
+                }
+                case BinaryCodec.PIN_AT:
+                    return "PIN " + in.getInt() + " " + in.getInt();
+                case BinaryCodec.CURSOR:
+                    return "CURSOR " + in.getLong();
+                default:
+                    throw new IOException("ERROR INVALID_RESPONSE");
+            }
+        } catch (IndexOutOfBoundsException e){
+            throw new IOException("ERROR INVALID_RESPONSE");
+        }
+    }
+
+    // True for commands whose OK reply is OK n followed by n more lines
+    static boolean isMultiLine(String command){
+        return command.equals("GET") || command.startsWith("GET ") || command.startsWith("BATCH") || command.equals("STATS")
+            || command.startsWith("USE ") || command.equals("BOARDS");
+    }
+
+    static int parseLineCount(String response){
+        String[] parts = response.split("\\s+");
+        if (parts.length < 2){
+            return 0;
+        }
+        try{
+            int n = Integer.parseInt(parts[1]);
+            return n;
+        }
+        catch (NumberFormatException e){
+            return 0;
+        }
+    }
+
+    public void disconnect() throws IOException{
+        //if connection is open, close it
+        if (validateConnection()){
+            socket.close();
+        }
+    }
+}
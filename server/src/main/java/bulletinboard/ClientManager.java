@@ -0,0 +1,248 @@
+package bulletinboard;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.io.*;
+import java.net.*;
+
+// Blocking handler for one client socket, run on its own (platform or virtual) thread
+public class ClientManager implements Runnable {
+    // Every running handler, for the watchdog that closes slow consumers
+    private static final Set<ClientManager> RUNNING = ConcurrentHashMap.newKeySet();
+
+    static {
+        if (Limits.WRITE_TIMEOUT > 0) startWatchdog();
+    }
+
+    private final Socket clientSocket;
+    private final CommandProcessor processor;
+    private final Metrics metrics;
+    // the engine's executor, which the connection itself runs on; subscription
+    // pushers run on it too, so on the virtual engine they are virtual threads
+    private final Executor executor;
+    // current reply encoding, text until the client asks for BINARY
+    private volatile ReplyWriter replies;
+    private Subscription pushing = null;
+    // when the write to the socket now in progress started, 0 if none is.
+    // A client that doesn't read fills the socket buffers and then holds
+    // the writing thread here.
+    private volatile long writingSince = 0;
+
+    // Called on the accepting thread, so the connection counts towards
+    // Limits.MAX_CONNECTIONS before the next accept
+    public ClientManager(Socket clientSocket, BoardRegistry boards, Capture capture, Executor executor){
+        this.clientSocket = clientSocket;
+        this.executor = executor;
+        this.processor = new CommandProcessor(boards, capture);
+        this.metrics = boards.getMetrics();
+        metrics.connectionOpened();
+    }
+
+    @Override
+    public void run() {
+        RUNNING.add(this);
+        try (
+            InputStream socketIn = metrics.countIn(clientSocket.getInputStream());
+            Reader reader = new InputStreamReader(socketIn, "UTF-8");
+            OutputStream out = new BufferedOutputStream(timed(metrics.countOut(clientSocket.getOutputStream())))
+        ) {
+            replies = new WriterReplies(out);
+            //Main handshake
+            processor.handshake(replies);
+            out.flush();
+
+            LineReader in = new LineReader(reader, Limits.MAX_LINE);
+            CharSequence inputLine;
+
+            while((inputLine = in.readLine()) != null){
+                // events are written by the pusher thread, never in the middle of a reply
+                synchronized (out) {
+                    if(in.isTooLong()){
+                        processor.lineTooLong(replies);
+                    } else {
+                        processor.handle(inputLine, replies);
+                    }
+                    // handle disconnect and close connection
+                    if(processor.isDisconnected()){
+                        out.flush();
+                        break;
+                    }
+                    // a pipelining client may already have sent more lines, so answer
+                    // everything that is buffered and flush once for the whole batch
+                    if(!in.ready()){
+                        out.flush();
+                    }
+                }
+                checkSubscription(out);
+                if(processor.isBinary()){
+                    // the client sends nothing more until it has OK BINARY, so
+                    // the reader holds no frame bytes yet
+                    out.flush();
+                    serveBinary(new BufferedInputStream(socketIn), out);
+                    break;
+                }
+            }
+
+        }catch (IOException e){
+            // Close connection when client disconnects
+            metrics.connectionError();
+        } finally {
+            RUNNING.remove(this);
+            processor.close();
+            metrics.connectionClosed();
+            try{
+                clientSocket.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+    }
+
+    // Turn a connection away before any thread or state is set up for it
+    public static void reject(Socket socket, Metrics metrics){
+        metrics.connectionRejected();
+        try{
+            // a fresh socket's send buffer has room, so this doesn't block
+            socket.getOutputStream().write(Limits.SERVER_BUSY);
+        } catch (IOException e){
+            // it is closed either way
+        }
+        try{
+            socket.close();
+        } catch (IOException e){
+            e.printStackTrace();
+        }
+    }
+
+    // The socket's output stream, noting when each write starts and ends
+    private OutputStream timed(OutputStream out){
+        return new FilterOutputStream(out){
+            @Override
+            public void write(int b) throws IOException {
+                writingSince = System.nanoTime();
+                try{
+                    out.write(b);
+                } finally {
+                    writingSince = 0;
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                writingSince = System.nanoTime();
+                try{
+                    out.write(b, off, len);
+                } finally {
+                    writingSince = 0;
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                writingSince = System.nanoTime();
+                try{
+                    out.flush();
+                } finally {
+                    writingSince = 0;
+                }
+            }
+        };
+    }
+
+    // Close the sockets of handlers stuck in one write for longer than
+    // Limits.WRITE_TIMEOUT. The blocked write then fails and the handler
+    // ends as it does for any broken connection.
+    private static void startWatchdog(){
+        ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "slow-consumer-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long timeout = TimeUnit.SECONDS.toNanos(Limits.WRITE_TIMEOUT);
+        long period = Math.max(100, TimeUnit.NANOSECONDS.toMillis(timeout) / 4);
+        watchdog.scheduleWithFixedDelay(() -> {
+            long now = System.nanoTime();
+            for (ClientManager manager : RUNNING){
+                long since = manager.writingSince;
+                if (since != 0 && now - since > timeout){
+                    manager.metrics.slowConsumer();
+                    try{
+                        manager.clientSocket.close();
+                    } catch (IOException e){
+                        // closed already
+                    }
+                }
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    // Same loop as for text lines, over BinaryCodec frames
+    private void serveBinary(InputStream in, OutputStream out) throws IOException {
+        replies = new BinaryReplies(out, processor.getBoard().getColours());
+        byte[] frame;
+        while((frame = BinaryCodec.readFrame(in)) != null){
+            synchronized (out) {
+                processor.handleFrame(frame, replies);
+                if(processor.isDisconnected()){
+                    out.flush();
+                    return;
+                }
+                if(in.available() == 0){
+                    out.flush();
+                }
+            }
+            checkSubscription(out);
+        }
+    }
+
+    // Start pushing events after a SUBSCRIBE
+    private void checkSubscription(OutputStream out){
+        Subscription current = processor.getSubscription();
+        if(current != null && current != pushing){
+            startPusher(current, out);
+        }
+        pushing = current;
+    }
+
+    // Send a subscription's events as they come in, until it is closed. A
+    // client that stops reading only blocks this thread; the board's writers
+    // keep queueing until the subscription overflows.
+    private void startPusher(Subscription subscription, OutputStream out){
+        executor.execute(() -> {
+            try{
+                while(true){
+                    subscription.await();
+                    synchronized (out) {
+                        if(!subscription.drainTo(replies)){
+                            return;
+                        }
+                        out.flush();
+                    }
+                }
+            } catch (InterruptedException e){
+                // connection is closing
+            } catch (IOException e){
+                // connection is broken; the reading thread notices and closes it
+            }
+        });
+    }
+
+    // Reply lines go straight into the socket's buffered stream
+    private static class WriterReplies extends Utf8Replies {
+        private final OutputStream out;
+
+        WriterReplies(OutputStream out){
+            this.out = out;
+        }
+
+        @Override
+        protected void write(byte[] bytes, int offset, int length){
+            try{
+                out.write(bytes, offset, length);
+            } catch (IOException e){
+                // the read side notices the broken connection and closes it
+            }
+        }
+    }
+}
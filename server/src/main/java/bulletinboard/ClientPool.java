@@ -0,0 +1,105 @@
+package bulletinboard;
+
+import java.io.*;
+import java.util.*;
+import java.util.function.*;
+import java.util.concurrent.*;
+
+// A fixed number of AsyncClientConnections to one server, shared by any
+// number of threads. Each command goes to the connection with the fewest
+// replies outstanding, so one slow reply (a big GET) doesn't hold up the
+// commands queued behind it on the other connections. Connections are
+// opened on first use and reopened if they fail.
+//
+// Commands on different connections can be applied in any order; send
+// commands that must happen in order through one AsyncClientConnection.
+public class ClientPool implements Closeable {
+    private final String host;
+    private final int port;
+    private final int maxInFlight;
+    private final AsyncClientConnection[] connections;
+    private boolean closed = false;
+
+    public ClientPool(String host, int port, int size){
+        this(host, port, size, AsyncClientConnection.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    public ClientPool(String host, int port, int size, int maxInFlight){
+        if (size < 1) throw new IllegalArgumentException("pool size " + size);
+        this.host = host;
+        this.port = port;
+        this.maxInFlight = maxInFlight;
+        this.connections = new AsyncClientConnection[size];
+    }
+
+    public CompletableFuture<List<String>> send(String command){
+        return call(connection -> connection.send(command));
+    }
+
+    public CompletableFuture<List<String>> sendBatch(List<String> commands){
+        return call(connection -> connection.sendBatch(commands));
+    }
+
+    public CompletableFuture<List<String>> post(int x, int y, String colour, String message){
+        return call(connection -> connection.post(x, y, colour, message));
+    }
+
+    public CompletableFuture<List<String>> pin(int x, int y){
+        return call(connection -> connection.pin(x, y));
+    }
+
+    public CompletableFuture<List<String>> unpin(int x, int y){
+        return call(connection -> connection.unpin(x, y));
+    }
+
+    public CompletableFuture<List<String>> get(String colour, int[] contains, String referenceTo){
+        return call(connection -> connection.get(colour, contains, referenceTo));
+    }
+
+    // Pages may come from different connections; a cursor is valid on any
+    public CompletableFuture<List<String>> get(String colour, int[] contains, String referenceTo, int limit, long after){
+        return call(connection -> connection.get(colour, contains, referenceTo, limit, after));
+    }
+
+    public int size(){
+        return connections.length;
+    }
+
+    private CompletableFuture<List<String>> call(Function<AsyncClientConnection, CompletableFuture<List<String>>> command){
+        AsyncClientConnection connection;
+        try{
+            connection = pick();
+        } catch (IOException e){
+            return CompletableFuture.failedFuture(e);
+        }
+        return command.apply(connection);
+    }
+
+    // The least busy connection, opening or replacing one if needed. The
+    // pending counts are read without locking, so under load this is a good
+    // guess rather than exact.
+    private synchronized AsyncClientConnection pick() throws IOException{
+        if (closed) throw new IOException("pool closed");
+        AsyncClientConnection best = null;
+        for (int i = 0; i < connections.length; i++){
+            if (connections[i] == null || connections[i].isClosed()){
+                connections[i] = new AsyncClientConnection(host, port, maxInFlight);
+            }
+            if (best == null || connections[i].pendingReplies() < best.pendingReplies()){
+                best = connections[i];
+            }
+        }
+        return best;
+    }
+
+    @Override
+    public synchronized void close(){
+        closed = true;
+        for (int i = 0; i < connections.length; i++){
+            if (connections[i] != null){
+                connections[i].close();
+                connections[i] = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package bulletinboard;
+
+import java.util.*;
+
+// Tokenizer for one protocol line. It walks the characters in place and
+// parses numbers straight from them, so a command costs no regex, no split
+// arrays and no Strings except the ones the board keeps (messages, queries).
+// One instance is reused for every line of a connection.
+public class CommandParser {
+    private CharSequence line;
+    private int pos;
+    private int end;
+    // bounds of the current token
+    private int start;
+    private int stop;
+
+    // Start parsing a new line, ignoring leading and trailing whitespace
+    public void reset(CharSequence line){
+        this.line = line;
+        this.pos = 0;
+        this.end = line.length();
+        while (end > 0 && isSpace(line.charAt(end - 1))) end--;
+        this.start = 0;
+        this.stop = 0;
+    }
+
+    // Advance to the next whitespace separated token, false if there is none
+    public boolean next(){
+        while (pos < end && isSpace(line.charAt(pos))) pos++;
+        if (pos >= end){
+            start = stop = end;
+            return false;
+        }
+        start = pos;
+        while (pos < end && !isSpace(line.charAt(pos))) pos++;
+        stop = pos;
+        return true;
+    }
+
+    // True if no tokens are left after the current one
+    public boolean atEnd(){
+        int i = pos;
+        while (i < end && isSpace(line.charAt(i))) i++;
+        return i >= end;
+    }
+
+    public boolean is(String word){
+        return stop - start == word.length() && startsWith(word);
+    }
+
+    public boolean startsWith(String prefix){
+        int n = prefix.length();
+        if (stop - start < n) return false;
+        for (int i = 0; i < n; i++){
+            if (line.charAt(start + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Length of the current token
+    public int length(){
+        return stop - start;
+    }
+
+    // Move the start of the current token past a prefix such as "colour="
+    public void skip(int n){
+        start = Math.min(stop, start + n);
+    }
+
+    // Step back so the next call to next() reads the current token again
+    public void unread(){
+        pos = start;
+    }
+
+    // The current token as an int, same rules as Integer.parseInt
+    public int intValue(){
+        int i = start;
+        if (i >= stop) throw new NumberFormatException();
+        boolean negative = false;
+        char first = line.charAt(i);
+        if (first == '-' || first == '+'){
+            negative = first == '-';
+            if (++i >= stop) throw new NumberFormatException();
+        }
+        // accumulate negatively so Integer.MIN_VALUE fits
+        long limit = negative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+        long result = 0;
+        for (; i < stop; i++){
+            int digit = Character.digit(line.charAt(i), 10);
+            if (digit < 0) throw new NumberFormatException();
+            result = result * 10 - digit;
+            if (result < limit) throw new NumberFormatException();
+        }
+        return (int) (negative ? result : -result);
+    }
+
+    public String token(){
+        return line.subSequence(start, stop).toString();
+    }
+
+    // The current token and everything after it, with runs of whitespace
+    // collapsed to single spaces. Consumes the rest of the line.
+    public String rest(){
+        if (isCollapsed(start, end)){
+            pos = end;
+            return line.subSequence(start, end).toString();
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        boolean space = false;
+        for (int i = start; i < end; i++){
+            char c = line.charAt(i);
+            if (isSpace(c)){
+                space = true;
+                continue;
+            }
+            if (space) sb.append(' ');
+            space = false;
+            sb.append(c);
+        }
+        pos = end;
+        return sb.toString();
+    }
+
+    // Whatever String from the given options equals the current token, so the
+    // token never has to be copied out; null if none does
+    public String match(List<String> options){
+        for (int i = 0; i < options.size(); i++){
+            if (is(options.get(i))) return options.get(i);
+        }
+        return null;
+    }
+
+    // True if [from, to) has no whitespace other than single spaces
+    private boolean isCollapsed(int from, int to){
+        for (int i = from; i < to; i++){
+            char c = line.charAt(i);
+            if (isSpace(c) && (c != ' ' || line.charAt(i + 1) == ' ')) return false;
+        }
+        return true;
+    }
+
+    // The whitespace characters of \s, which is what the protocol separates on
+    private static boolean isSpace(char c){
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+}
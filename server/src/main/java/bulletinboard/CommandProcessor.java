@@ -0,0 +1,818 @@
+package bulletinboard;
+
+import java.io.*;
+import java.util.*;
+
+// Line protocol for one client connection, independent of how the bytes get
+// there so every server engine gives the same handshake and replies.
+public class CommandProcessor {
+    // Most operations one BATCH may carry
+    public static final int MAX_BATCH = 10000;
+
+    private final BoardRegistry registry;
+    // the board this client is on, held in the registry until close
+    private String boardName = BoardRegistry.DEFAULT;
+    private Board board;
+    // set on a replica server: the board only changes from the primary
+    private Replica replica;
+    private boolean released = false;
+    private final Metrics metrics;
+    private boolean disconnected = false;
+    // BATCH n collects the next n lines before applying them together.
+    // A null entry marks a line that did not parse.
+    private int batchRemaining = 0;
+    private final List<BoardOp> batchOps = new ArrayList<>();
+    // set while reading the lines of a BATCH that was refused; they are
+    // dropped, and this one line answers the whole batch after the last
+    private String batchRefused;
+    private final CommandParser parser = new CommandParser();
+    private List<String> colours;
+    // filters read by parseFilters for GET and SUBSCRIBE
+    private String filterColour;
+    private int[] filterContains;
+    private String filterReference;
+    // page read with them for GET: notes after the pageAfter cursor, at most
+    // pageLimit of them
+    private int pageLimit;
+    private long pageAfter;
+    // set while the client is subscribed to board events
+    private Subscription subscription;
+    // true once the client has switched to BinaryCodec frames
+    private boolean binary = false;
+    // set when the server records connections; the engine's current
+    // ReplyWriter and the recording one wrapped around it
+    private final Capture capture;
+    private final int captureId;
+    private ReplyWriter recordedOut;
+    private ReplyWriter recorder;
+    // Limits.RATE for this client, null when commands aren't limited
+    private final TokenBucket rate;
+
+    public CommandProcessor(Board board){
+        this(BoardRegistry.of(board));
+    }
+
+    // A client of a multi-board server, starting on the default board
+    public CommandProcessor(BoardRegistry registry){
+        this(registry, null);
+    }
+
+    // Same, with everything the client sends and is answered recorded to
+    // capture if it isn't null
+    public CommandProcessor(BoardRegistry registry, Capture capture){
+        this(registry, capture, Limits.newRateLimiter());
+    }
+
+    // Same, with commands limited by rate instead of Limits.RATE
+    CommandProcessor(BoardRegistry registry, Capture capture, TokenBucket rate){
+        this.registry = registry;
+        this.rate = rate;
+        this.capture = capture;
+        this.captureId = capture != null ? capture.opened() : -1;
+        this.metrics = registry.getMetrics();
+        try{
+            this.board = registry.acquire(BoardRegistry.DEFAULT);
+        } catch (IOException e){
+            throw new UncheckedIOException(e);
+        }
+        this.colours = board.getColours();
+        this.replica = registry.getReplica(BoardRegistry.DEFAULT);
+    }
+
+    // The board this client is on now; it changes with USE
+    public Board getBoard(){
+        return board;
+    }
+
+    // Lines sent to a client as soon as it connects
+    public void handshake(ReplyWriter out){
+        out = recording(out);
+        out.println("BOARD " + board.getBoardWidth() + " " + board.getBoardHeight());
+        out.println("NOTE_SIZE " + board.getNoteWidth() + " " + board.getNoteHeight());
+        out.println("COLORS " + String.join(" ", board.getColours()));
+    }
+
+    // True once the client has sent DISCONNECT and the connection should close
+    public boolean isDisconnected(){
+        return disconnected;
+    }
+
+    // True once BINARY has been answered; from then on the engine reads
+    // frames for handleFrame and writes replies with a BinaryReplies
+    public boolean isBinary(){
+        return binary;
+    }
+
+    // Events for this client, or null if it hasn't subscribed. Replaced by
+    // every SUBSCRIBE, so the caller should check after each line.
+    public Subscription getSubscription(){
+        return subscription;
+    }
+
+    // The connection is gone, stop collecting events for it
+    public void close(){
+        unsubscribe();
+        if (!released){
+            released = true;
+            registry.release(boardName);
+            if (capture != null) capture.closed(captureId);
+        }
+    }
+
+    // out, wrapped to record the replies when capturing
+    private ReplyWriter recording(ReplyWriter out){
+        // USE calls handshake with the recorder itself
+        if (capture == null || out == recorder) return out;
+        if (out != recordedOut){
+            recordedOut = out;
+            recorder = capture.replies(captureId, out);
+        }
+        return recorder;
+    }
+
+    // Handle one raw input line, writing its reply lines to out
+    public void handle(CharSequence inputLine, ReplyWriter out){
+        if (capture != null){
+            handleRecorded(inputLine, out);
+            return;
+        }
+        handleLine(inputLine, out);
+    }
+
+    // The engine's line buffer is reused for the next line, so the capture
+    // and the parser both get one copy of it
+    private void handleRecorded(CharSequence inputLine, ReplyWriter out){
+        String line = inputLine.toString();
+        capture.line(captureId, line);
+        handleLine(line, recording(out));
+    }
+
+    private void handleLine(CharSequence inputLine, ReplyWriter out){
+        parser.reset(inputLine);
+
+        if(batchRemaining > 0){
+            if(batchRefused != null){
+                skipBatchLine(out);
+                return;
+            }
+            // already let in with its BATCH line, but still paid for
+            if (rate != null) rate.take();
+            batchOps.add(parseBatchOp());
+            if(--batchRemaining == 0){
+                finishBatch(out);
+            }
+            return;
+        }
+
+        //for empty input, give error
+        if(!parser.next()){
+            out.println("ERROR INVALID_FORMAT");
+            return;
+        }
+        // handle disconnect and close connection
+        if(parser.is("DISCONNECT") && parser.atEnd()){
+            disconnected = true;
+            unsubscribe();
+            out.println("OK DISCONNECTED");
+            return;
+        }
+        if(isRateLimited()){
+            // a BATCH is refused with its lines, which would otherwise be
+            // let in one by one
+            int n = parser.is("BATCH") ? batchCount() : 0;
+            if(n > 0){
+                refuseBatch(n, "ERROR RATE_LIMITED");
+                return;
+            }
+            out.println("ERROR RATE_LIMITED");
+            return;
+        }
+        long start = System.nanoTime();
+        Metrics.Command command = commandOf();
+        String error = process(out);
+        if(command != null){
+            metrics.command(command, System.nanoTime() - start, error);
+        }
+        if(error != null){
+            out.println(error);
+        }
+    }
+
+    // A line over Limits.MAX_LINE came in. The engine has thrown it away
+    // and it isn't captured; it is answered, or counted in a BATCH, as one
+    // that didn't parse.
+    public void lineTooLong(ReplyWriter out){
+        metrics.lineTooLong();
+        if(batchRemaining > 0 && batchRefused != null){
+            skipBatchLine(recording(out));
+            return;
+        }
+        if(batchRemaining > 0){
+            batchOps.add(null);
+            if(--batchRemaining == 0){
+                finishBatch(recording(out));
+            }
+            return;
+        }
+        out.println("ERROR LINE_TOO_LONG");
+    }
+
+    // True if the client is over Limits.RATE and this command is refused.
+    // DISCONNECT always goes through.
+    private boolean isRateLimited(){
+        if (rate == null || rate.tryTake()) return false;
+        metrics.rateLimited();
+        return true;
+    }
+
+    // Which STATS line the command the parser is on counts towards. BATCH
+    // is counted when its operations are applied, not when it starts.
+    private Metrics.Command commandOf(){
+        if(parser.is("POST")) return Metrics.Command.POST;
+        if(parser.is("PIN")) return Metrics.Command.PIN;
+        if(parser.is("UNPIN")) return Metrics.Command.UNPIN;
+        if(parser.startsWith("GET")) return Metrics.Command.GET;
+        if(parser.is("BATCH")) return null;
+        if(parser.is("SHAKE")) return Metrics.Command.SHAKE;
+        if(parser.is("CLEAR")) return Metrics.Command.CLEAR;
+        if(parser.is("SUBSCRIBE")) return Metrics.Command.SUBSCRIBE;
+        return Metrics.Command.OTHER;
+    }
+
+    // Deal with the client input and send call to board.
+    // The parser is positioned on the command word. Returns a single reply
+    // line for out, or null if the reply has already been written.
+    private String process(ReplyWriter out){
+        try{
+            if(replica != null){
+                // a BATCH is refused after its lines, like any refused batch
+                if(parser.is("BATCH")) return refuseBatch(batchCount(), replica.readOnlyError());
+                String refused = refuseOnReplica();
+                if(refused != null) return refused;
+            }
+            if(parser.is("POST")) return processPost();
+            if(parser.is("PIN")) return processPin();
+            if(parser.is("UNPIN")) return processUnpin();
+            if(parser.startsWith("GET")) return processGet(out);
+            if(parser.is("BATCH")) return startBatch();
+            if(parser.is("SUBSCRIBE")) return processSubscribe();
+            if(parser.is("BINARY") && parser.atEnd()) return processBinary();
+            if(parser.is("STATS") && parser.atEnd()) return processStats(out);
+            if(parser.is("USE")) return processUse(out);
+            if(parser.is("BOARDS") && parser.atEnd()) return processBoards(out);
+            if(parser.is("UNSUBSCRIBE") && parser.atEnd()){
+                unsubscribe();
+                return "OK UNSUBSCRIBED";
+            }
+
+            if(parser.is("SHAKE") && parser.atEnd()) return board.shakeBoard();
+            if(parser.is("CLEAR") && parser.atEnd()) return board.clearBoard();
+
+            return "ERROR INVALID_FORMAT";
+        } catch (UncheckedIOException e){
+            // the store couldn't make the change durable (see BoardStore.committed);
+            // it is on the board all the same
+            return "ERROR SERVER_ERROR";
+        } catch (Exception e){
+            // Catch any unexpected exceptions to prevent server crash
+            return "ERROR INVALID_FORMAT";
+        }
+    }
+
+    // A replica sends writes to the primary, and doesn't answer GET from a
+    // board that has fallen too far behind it
+    private String refuseOnReplica(){
+        if(parser.is("POST") || parser.is("PIN") || parser.is("UNPIN")
+                || parser.is("SHAKE") || parser.is("CLEAR")){
+            return replica.readOnlyError();
+        }
+        if(parser.startsWith("GET") && replica.isLagging()) return "ERROR REPLICA_LAGGING";
+        return null;
+    }
+
+    private String processPost(){
+        BoardOp op = parsePost();
+        if (op == null){
+            return "ERROR INVALID_FORMAT";
+        }
+        return board.postNote(op.getX(), op.getY(), op.getColour(), op.getMessage(), op.getTtl());
+    }
+
+    private String processPin(){
+        BoardOp op = parsePin();
+        if (op == null){
+            return "ERROR INVALID_FORMAT";
+        }
+        return board.pinNote(op.getX(), op.getY());
+    }
+
+    private String processUnpin(){
+        // UNPIN x y
+        try{
+            if (!parser.next()) return "ERROR INVALID_FORMAT";
+            int x = parser.intValue();
+            if (!parser.next()) return "ERROR INVALID_FORMAT";
+            int y = parser.intValue();
+            // correct number of arguments not provided
+            if (!parser.atEnd()) return "ERROR INVALID_FORMAT";
+
+            return board.unpinNote(x, y);
+        } catch (NumberFormatException e){
+            //given x or y is not integer
+            return "ERROR INVALID_FORMAT";
+        }
+    }
+
+    // POST x y [ttl=<seconds>] colour message, or null if the line is malformed
+    private BoardOp parsePost(){
+        try{
+            // Parse x and y as int
+            if (!parser.next()) return null;
+            int x = parser.intValue();
+            if (!parser.next()) return null;
+            int y = parser.intValue();
+            if (!parser.next()) return null;
+            int ttl = BoardOp.DEFAULT_TTL;
+            if (parser.startsWith("ttl=")){
+                parser.skip(4);
+                ttl = parser.intValue();
+                if (ttl < 0 || !parser.next()) return null;
+            }
+            // a known colour is the board's own String, an unknown one is
+            // copied out so the board can reject it
+            String colour = parser.match(colours);
+            if (colour == null) colour = parser.token();
+            // message keeps its words, with spaces between them collapsed
+            if (!parser.next()){
+                // Message is empty or spaces only
+                return null;
+            }
+            String message = parser.rest();
+
+            return BoardOp.post(x, y, colour, message, ttl);
+        } catch (NumberFormatException e){
+            // x or y given is not integer
+            return null;
+        }
+    }
+
+    // PIN x y, or null if the line is malformed
+    private BoardOp parsePin(){
+        try{
+            if (!parser.next()) return null;
+            int x = parser.intValue();
+            if (!parser.next()) return null;
+            int y = parser.intValue();
+            if (!parser.atEnd()) return null;
+
+            return BoardOp.pin(x, y);
+        } catch (NumberFormatException e){
+            return null;
+        }
+    }
+
+    // BATCH n, followed by n POST or PIN lines
+    private String startBatch(){
+        int n = batchCount();
+        if (n == 0) return "ERROR INVALID_FORMAT";
+        // the client sends its n lines whatever the answer, so a batch too
+        // long or with more after n is refused once they have all come
+        if (!parser.atEnd() || n > MAX_BATCH) return refuseBatch(n, "ERROR INVALID_FORMAT");
+        batchRemaining = n;
+        batchOps.clear();
+        return null;
+    }
+
+    // The n of BATCH n, with the parser on BATCH; 0 if there is none, and
+    // then no lines are taken as the batch's
+    private int batchCount(){
+        try{
+            if (!parser.next()) return 0;
+            return Math.max(parser.intValue(), 0);
+        } catch (NumberFormatException e){
+            return 0;
+        }
+    }
+
+    // Drop the next n lines as a refused batch's and answer them with error.
+    // Returns null, as the reply comes after them, or error if n is 0.
+    private String refuseBatch(int n, String error){
+        if(n == 0) return error;
+        batchRemaining = n;
+        batchRefused = error;
+        batchOps.clear();
+        return null;
+    }
+
+    private void skipBatchLine(ReplyWriter out){
+        if(--batchRemaining == 0){
+            out.println(batchRefused);
+            batchRefused = null;
+        }
+    }
+
+    private BoardOp parseBatchOp(){
+        if (!parser.next()) return null;
+        if (parser.is("POST")) return parsePost();
+        if (parser.is("PIN")) return parsePin();
+        return null;
+    }
+
+    // Apply the collected batch in one go and reply like GET: OK n, then one line per operation
+    private void finishBatch(ReplyWriter out){
+        long start = System.nanoTime();
+        List<BoardOp> valid = new ArrayList<>();
+        for (BoardOp op : batchOps){
+            if (op != null) valid.add(op);
+        }
+        Iterator<String> applied;
+        try{
+            applied = board.applyBatch(valid).iterator();
+        } catch (UncheckedIOException e){
+            // applied but not durable, as in process(); the per-operation
+            // replies are lost with the exception, so the batch gets one line
+            batchOps.clear();
+            metrics.command(Metrics.Command.BATCH, System.nanoTime() - start, "ERROR SERVER_ERROR");
+            out.println("ERROR SERVER_ERROR");
+            return;
+        }
+        out.count(batchOps.size());
+        for (BoardOp op : batchOps){
+            out.println(op != null ? applied.next() : "ERROR INVALID_FORMAT");
+        }
+        batchOps.clear();
+        metrics.command(Metrics.Command.BATCH, System.nanoTime() - start, null);
+    }
+
+    // STATS: OK n, then n STAT lines of counters and latencies
+    private String processStats(ReplyWriter out){
+        List<String> lines = metrics.getStats();
+        String replication = registry.getReplicationStats(boardName);
+        if (replication != null){
+            lines.add(replication);
+        }
+        out.count(lines.size());
+        for (String line : lines){
+            out.println(line);
+        }
+        return null;
+    }
+
+    // USE <board>: move this client to another board of the server. The
+    // reply is OK 3 and the board's handshake lines, everything a client
+    // needs to work on it. A subscription was to the old board's events, so
+    // it ends. Not allowed in binary mode, whose colour ids were fixed by
+    // the board the client switched on.
+    private String processUse(ReplyWriter out){
+        if (!parser.next()) return "ERROR INVALID_FORMAT";
+        String name = parser.token();
+        if (!parser.atEnd() || binary) return "ERROR INVALID_FORMAT";
+        if (!name.equals(boardName)){
+            Board next;
+            try{
+                next = registry.acquire(name);
+            } catch (IOException e){
+                return "ERROR SERVER_ERROR";
+            }
+            if (next == null) return "ERROR BOARD_NOT_FOUND";
+            unsubscribe();
+            registry.release(boardName);
+            boardName = name;
+            board = next;
+            colours = board.getColours();
+            replica = registry.getReplica(name);
+        }
+        out.count(3);
+        handshake(out);
+        return null;
+    }
+
+    // BOARDS: OK n, then a NAME line for each board USE can pick
+    private String processBoards(ReplyWriter out){
+        List<String> names = registry.getNames();
+        out.count(names.size());
+        for (String name : names){
+            out.println("NAME " + name);
+        }
+        return null;
+    }
+
+    // Streams the reply to out and returns null, or returns an error line
+    private String processGet(ReplyWriter out){
+        // anything glued to GET counts as the first filter, so step past the
+        // command word only
+        parser.skip("GET".length());
+        parser.unread();
+        // GET PINS
+        if (parser.length() == 0 && parser.next() && parser.is("PINS") && parser.atEnd()){
+            board.streamPins(out);
+            return null;
+        }
+        // GET [colour=<colour>] [contains=<x> <y>] [limit=<n>] [after=<cursor>] [refersTo=<string>]
+        parser.unread();
+        String error = parseFilters(true);
+        if (error != null){
+            return error;
+        }
+        board.streamNotes(filterColour, filterContains, filterReference, pageAfter, pageLimit, out);
+        return null;
+    }
+
+    // SUBSCRIBE [colour=<colour>] [contains=<x> <y>] [refersTo=<string>]
+    // Board events passing the filters are pushed to the client from now on
+    // as EVENT lines, between replies. Subscribing again replaces the filters.
+    private String processSubscribe(){
+        String error = parseFilters(false);
+        if (error != null){
+            return error;
+        }
+        return subscribe();
+    }
+
+    // Subscribe with the filter fields
+    private String subscribe(){
+        unsubscribe();
+        subscription = board.getSubscriptions().subscribe(filterColour, filterContains, filterReference);
+        return "OK SUBSCRIBED";
+    }
+
+    private void unsubscribe(){
+        if (subscription != null){
+            board.getSubscriptions().unsubscribe(subscription);
+            subscription = null;
+        }
+    }
+
+    // BINARY: the client waits for this reply before sending frames, so the
+    // engine never has to hand back input it read ahead as text. Not allowed
+    // while subscribed, as an event could already be on its way as text.
+    private String processBinary(){
+        if (binary || subscription != null){
+            return "ERROR INVALID_FORMAT";
+        }
+        binary = true;
+        return "OK BINARY";
+    }
+
+    // Handle one BinaryCodec request frame; same board calls as the text
+    // commands, only the encoding differs
+    public void handleFrame(byte[] payload, ReplyWriter out){
+        if (capture != null){
+            capture.frame(captureId, payload);
+            out = recording(out);
+        }
+        // a TEXT frame is limited like a line, by handleLine
+        if (payload.length > 0 && payload[0] != BinaryCodec.TEXT && payload[0] != BinaryCodec.DISCONNECT
+                && isRateLimited()){
+            out.println("ERROR RATE_LIMITED");
+            return;
+        }
+        BinaryCodec.FrameReader in = new BinaryCodec.FrameReader(payload);
+        long start = System.nanoTime();
+        String reply;
+        try{
+            reply = processFrame(in, out);
+        } catch (IndexOutOfBoundsException e){
+            // frame ended early
+            reply = "ERROR INVALID_FORMAT";
+        } catch (UncheckedIOException e){
+            // applied but not durable, as in process()
+            reply = "ERROR SERVER_ERROR";
+        }
+        // a TEXT frame's line has been counted by handleLine
+        Metrics.Command command = payload.length > 0 ? commandOf(payload[0]) : Metrics.Command.OTHER;
+        if (command != null){
+            metrics.command(command, System.nanoTime() - start, reply);
+        }
+        if (reply != null){
+            out.println(reply);
+        }
+    }
+
+    private String processFrame(BinaryCodec.FrameReader in, ReplyWriter out){
+        int kind = in.getByte();
+        if (kind == BinaryCodec.TEXT){
+            String line = in.getString();
+            if (!in.atEnd()) return "ERROR INVALID_FORMAT";
+            handleLine(line, out);
+            return null;
+        }
+        // frames carrying a BATCH line's operations go through TEXT
+        if (batchRemaining > 0){
+            return "ERROR INVALID_FORMAT";
+        }
+        if (replica != null){
+            String refused = refuseOnReplica(kind);
+            if (refused != null) return refused;
+        }
+        switch (kind){
+            case BinaryCodec.POST: {
+                int x = in.getInt();
+                int y = in.getInt();
+                String colour = colourOf(in.getVarint());
+                // same whitespace rules as a text message, which also keeps
+                // line breaks out of text replies
+                parser.reset(in.getString());
+                // an expiring note has its ttl after the message
+                int ttl = in.atEnd() ? BoardOp.DEFAULT_TTL : in.getVarint();
+                if (!in.atEnd() || ttl < BoardOp.DEFAULT_TTL || !parser.next()) return "ERROR INVALID_FORMAT";
+                return board.postNote(x, y, colour != null ? colour : "", parser.rest(), ttl);
+            }
+            case BinaryCodec.PIN:
+            case BinaryCodec.UNPIN: {
+                int x = in.getInt();
+                int y = in.getInt();
+                if (!in.atEnd()) return "ERROR INVALID_FORMAT";
+                return kind == BinaryCodec.PIN ? board.pinNote(x, y) : board.unpinNote(x, y);
+            }
+            case BinaryCodec.GET:
+            case BinaryCodec.SUBSCRIBE: {
+                String error = readFilters(in, kind == BinaryCodec.GET);
+                if (error != null) return error;
+                if (kind == BinaryCodec.SUBSCRIBE) return subscribe();
+                board.streamNotes(filterColour, filterContains, filterReference, pageAfter, pageLimit, out);
+                return null;
+            }
+        }
+        if (!in.atEnd()) return "ERROR INVALID_FORMAT";
+        switch (kind){
+            case BinaryCodec.GET_PINS:
+                board.streamPins(out);
+                return null;
+            case BinaryCodec.SHAKE:
+                return board.shakeBoard();
+            case BinaryCodec.CLEAR:
+                return board.clearBoard();
+            case BinaryCodec.UNSUBSCRIBE:
+                unsubscribe();
+                return "OK UNSUBSCRIBED";
+            case BinaryCodec.DISCONNECT:
+                disconnected = true;
+                unsubscribe();
+                return "OK DISCONNECTED";
+            default:
+                return "ERROR INVALID_FORMAT";
+        }
+    }
+
+    // refuseOnReplica for a frame kind
+    private String refuseOnReplica(int kind){
+        switch (kind){
+            case BinaryCodec.POST:
+            case BinaryCodec.PIN:
+            case BinaryCodec.UNPIN:
+            case BinaryCodec.SHAKE:
+            case BinaryCodec.CLEAR:
+                return replica.readOnlyError();
+            case BinaryCodec.GET:
+            case BinaryCodec.GET_PINS:
+                return replica.isLagging() ? "ERROR REPLICA_LAGGING" : null;
+            default:
+                return null;
+        }
+    }
+
+    private static Metrics.Command commandOf(byte kind){
+        switch (kind){
+            case BinaryCodec.POST: return Metrics.Command.POST;
+            case BinaryCodec.PIN: return Metrics.Command.PIN;
+            case BinaryCodec.UNPIN: return Metrics.Command.UNPIN;
+            case BinaryCodec.GET:
+            case BinaryCodec.GET_PINS: return Metrics.Command.GET;
+            case BinaryCodec.SHAKE: return Metrics.Command.SHAKE;
+            case BinaryCodec.CLEAR: return Metrics.Command.CLEAR;
+            case BinaryCodec.SUBSCRIBE: return Metrics.Command.SUBSCRIBE;
+            case BinaryCodec.TEXT: return null;
+            default: return Metrics.Command.OTHER;
+        }
+    }
+
+    // Binary GET and SUBSCRIBE filters into the filter fields, with the same
+    // checks as parseFilters
+    private String readFilters(BinaryCodec.FrameReader in, boolean paging){
+        int flags = in.getByte();
+        String colour = null;
+        int[] contains = null;
+        String referenceTo = null;
+        int limit = Integer.MAX_VALUE;
+        long after = Board.FROM_START;
+        boolean badColour = false;
+        if ((flags & BinaryCodec.HAS_COLOUR) != 0){
+            colour = colourOf(in.getVarint());
+            badColour = colour == null;
+        }
+        if ((flags & BinaryCodec.HAS_CONTAINS) != 0){
+            contains = new int[]{in.getInt(), in.getInt()};
+        }
+        if ((flags & BinaryCodec.HAS_REFERENCE) != 0){
+            parser.reset(in.getString());
+            if (!parser.next()) return "ERROR INVALID_FORMAT";
+            referenceTo = parser.rest();
+        }
+        if ((flags & (BinaryCodec.HAS_LIMIT | BinaryCodec.HAS_AFTER)) != 0 && !paging){
+            return "ERROR INVALID_FORMAT";
+        }
+        if ((flags & BinaryCodec.HAS_LIMIT) != 0){
+            limit = in.getVarint();
+            if (limit < 1) return "ERROR INVALID_FORMAT";
+        }
+        if ((flags & BinaryCodec.HAS_AFTER) != 0){
+            after = in.getLong();
+            if (after < 0) return "ERROR INVALID_FORMAT";
+        }
+        if (!in.atEnd()) return "ERROR INVALID_FORMAT";
+        if (badColour) return "ERROR COLOUR_NOT_SUPPORTED";
+        filterColour = colour;
+        filterContains = contains;
+        filterReference = referenceTo;
+        pageLimit = limit;
+        pageAfter = after;
+        return null;
+    }
+
+    // Colour for a binary colour id, or null if there is no such colour
+    private String colourOf(int id){
+        return id >= 0 && id < colours.size() ? colours.get(id) : null;
+    }
+
+    // Read the GET style filters after the command word into the filter
+    // fields, and with paging limit= and after= into the page fields.
+    // Returns an error line, or null if they are all valid.
+    private String parseFilters(boolean paging){
+        String colour = null;
+        int[] contains = null;
+        String referenceTo = null;
+        int limit = Integer.MAX_VALUE;
+        long after = Board.FROM_START;
+        while (parser.next()){
+            if (parser.startsWith("colour=")){
+                parser.skip("colour=".length());
+                if (parser.length() == 0){
+                    return "ERROR INVALID_FORMAT";
+                }
+                colour = parser.match(colours);
+                if (colour == null) colour = parser.token();
+                continue;
+            }
+            if (parser.startsWith("contains=")){
+                parser.skip("contains=".length());
+                if (parser.length() == 0 && !parser.next()){
+                    return "ERROR INVALID_FORMAT";
+                }
+                try{
+                    int x = parser.intValue();
+                    if (!parser.next()){
+                        return "ERROR INVALID_FORMAT";
+                    }
+                    contains = new int[]{x, parser.intValue()};
+                } catch (NumberFormatException e){
+                    return "ERROR INVALID_FORMAT";
+                }
+                continue;
+            }
+            if (paging && parser.startsWith("limit=")){
+                parser.skip("limit=".length());
+                try{
+                    limit = parser.intValue();
+                } catch (NumberFormatException e){
+                    return "ERROR INVALID_FORMAT";
+                }
+                if (limit < 1){
+                    return "ERROR INVALID_FORMAT";
+                }
+                continue;
+            }
+            if (paging && parser.startsWith("after=")){
+                parser.skip("after=".length());
+                try{
+                    after = Long.parseLong(parser.token());
+                } catch (NumberFormatException e){
+                    return "ERROR INVALID_FORMAT";
+                }
+                if (after < 0){
+                    return "ERROR INVALID_FORMAT";
+                }
+                continue;
+            }
+            if (parser.startsWith("refersTo=")){
+                parser.skip("refersTo=".length());
+                referenceTo = parser.rest();
+                if (referenceTo.trim().isEmpty()){
+                    return "ERROR INVALID_FORMAT";
+                }
+                break;
+            }
+            return "ERROR INVALID_FORMAT";
+        }
+        // colour check
+        if (colour != null && !board.isValidColour(colour)){
+            return "ERROR COLOUR_NOT_SUPPORTED";
+        }
+        filterColour = colour;
+        filterContains = contains;
+        filterReference = referenceTo;
+        pageLimit = limit;
+        pageAfter = after;
+        return null;
+    }
+}
@@ -0,0 +1,117 @@
+package bulletinboard;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.function.*;
+
+// Recent filtered GET results of one board, each a snapshot of just the
+// matching notes, so a filter clients keep repeating is answered without
+// going back through the indexes and matching every candidate again.
+//
+// Entries aren't dropped when the board changes; the board checks on every
+// hit whether anything the entry could contain changed after the version it
+// was made at (see Board.isCurrent). Size-limited by entries and by notes
+// held: when full, stale entries go first, then whichever come up first.
+class GetCache {
+    // Filtered GET results kept per board; 0 turns the cache off
+    static final int MAX_ENTRIES = Integer.getInteger("bulletinboard.getCache", 1024);
+    // Notes held across all entries of one board. A result over a quarter of
+    // that isn't kept, and is streamed straight from the board as before.
+    static final int MAX_NOTES = 1 << 18;
+
+    // GET filters, normalised: colour as its id, text lowercased
+    static final class Key {
+        final int colourId;
+        final boolean hasPoint;
+        final int x;
+        final int y;
+        final String lowerRef;
+
+        Key(int colourId, int[] contains, String lowerRef) {
+            this.colourId = colourId;
+            this.hasPoint = contains != null;
+            this.x = hasPoint ? contains[0] : 0;
+            this.y = hasPoint ? contains[1] : 0;
+            this.lowerRef = lowerRef;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return colourId == other.colourId && hasPoint == other.hasPoint && x == other.x && y == other.y
+                && Objects.equals(lowerRef, other.lowerRef);
+        }
+
+        @Override
+        public int hashCode() {
+            return ((colourId * 31 + (hasPoint ? 1 : 0)) * 31 + x) * 31 + y + Objects.hashCode(lowerRef) * 17;
+        }
+    }
+
+    private final ConcurrentHashMap<Key, BoardSnapshot> entries = new ConcurrentHashMap<>();
+    private final AtomicLong notes = new AtomicLong();
+    // whether an entry still answers its key, from the board
+    private final BiPredicate<Key, BoardSnapshot> current;
+
+    GetCache(BiPredicate<Key, BoardSnapshot> current) {
+        this.current = current;
+    }
+
+    // Whether a result of this many notes would be kept
+    static boolean fits(int size) {
+        return MAX_ENTRIES > 0 && size <= MAX_NOTES / 4;
+    }
+
+    // The stored result for key, or null if there is none or it is stale
+    BoardSnapshot get(Key key) {
+        BoardSnapshot result = entries.get(key);
+        if (result == null) {
+            return null;
+        }
+        if (!current.test(key, result)) {
+            remove(key, result);
+            return null;
+        }
+        return result;
+    }
+
+    void put(Key key, BoardSnapshot result) {
+        if (!fits(result.size())) {
+            return;
+        }
+        BoardSnapshot old = entries.put(key, result);
+        notes.addAndGet(result.size() - (old != null ? old.size() : 0));
+        if (entries.size() > MAX_ENTRIES || notes.get() > MAX_NOTES) {
+            evict();
+        }
+    }
+
+    // Everything goes, e.g. after CLEAR, where no entry can still be current
+    void clear() {
+        for (Map.Entry<Key, BoardSnapshot> entry : entries.entrySet()) {
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void evict() {
+        for (Map.Entry<Key, BoardSnapshot> entry : entries.entrySet()) {
+            if (!current.test(entry.getKey(), entry.getValue())) {
+                remove(entry.getKey(), entry.getValue());
+            }
+        }
+        Iterator<Map.Entry<Key, BoardSnapshot>> iter = entries.entrySet().iterator();
+        while ((entries.size() > MAX_ENTRIES || notes.get() > MAX_NOTES) && iter.hasNext()) {
+            Map.Entry<Key, BoardSnapshot> entry = iter.next();
+            remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    // Counted only by the thread that actually took it out
+    private void remove(Key key, BoardSnapshot result) {
+        if (entries.remove(key, result)) {
+            notes.addAndGet(-result.size());
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package bulletinboard;
+
+import java.util.concurrent.atomic.*;
+
+// Lock-free histogram of durations in nanoseconds. Buckets are log-linear
+// like HdrHistogram's: every power of two is split into SUB_BUCKETS equal
+// parts, so a recorded value is off by at most 1/SUB_BUCKETS. Each bucket is
+// a LongAdder, so threads recording at the same time don't fight over one
+// cache line; reading it is slower, which is fine for STATS.
+public class LatencyHistogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    // Longest duration told apart from longer ones, about 18 minutes
+    private static final int MAX_EXPONENT = 40;
+
+    private final LongAdder[] buckets = new LongAdder[bucketOf(Long.MAX_VALUE) + 1];
+    private final LongAdder total = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram(){
+        for (int i = 0; i < buckets.length; i++){
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos){
+        if (nanos < 0) nanos = 0;
+        buckets[bucketOf(nanos)].increment();
+        total.add(nanos);
+        max.accumulate(nanos);
+    }
+
+    // Values below SUB_BUCKETS have a bucket each; above that the bucket is
+    // the power of two and the next SUB_BITS bits under the top one
+    private static int bucketOf(long nanos){
+        if (nanos < SUB_BUCKETS) return (int) nanos;
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(nanos), MAX_EXPONENT);
+        if (exponent == MAX_EXPONENT) nanos = Math.min(nanos, (2L << MAX_EXPONENT) - 1);
+        int sub = (int) (nanos >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    // Largest value that falls in a bucket
+    private static long highestIn(int bucket){
+        if (bucket < SUB_BUCKETS) return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    // The counts as they are now; the count is the buckets' sum. Recording
+    // doesn't stop meanwhile, so total and max may include a few values the
+    // buckets don't yet, never more.
+    public Snapshot snapshot(){
+        long[] counts = new long[buckets.length];
+        long inBuckets = 0;
+        for (int i = 0; i < counts.length; i++){
+            counts[i] = buckets[i].sum();
+            inBuckets += counts[i];
+        }
+        return new Snapshot(counts, inBuckets, total.sum(), max.get());
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long total;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long total, long max){
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        public long getCount(){
+            return count;
+        }
+
+        public long getTotalNanos(){
+            return total;
+        }
+
+        public long getMaxNanos(){
+            return max;
+        }
+
+        public double getMeanNanos(){
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        // The value at or under which this fraction of the recorded values
+        // fall, rounded up to the end of its bucket; 0 if nothing was recorded
+        public long percentile(double fraction){
+            long target = Math.max(1, (long) Math.ceil(fraction * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++){
+                seen += counts[i];
+                if (seen >= target) return Math.min(highestIn(i), max);
+            }
+            return 0;
+        }
+    }
+}
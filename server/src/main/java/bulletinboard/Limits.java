@@ -0,0 +1,66 @@
+package bulletinboard;
+
+import java.nio.charset.StandardCharsets;
+
+// What one client may cost the server, so that a huge line, a client that
+// never reads its replies or a flood of connections is turned away with an
+// error instead of taking the heap or every thread with it. Each limit is a
+// system property; 0 turns it off.
+//
+// Lines and messages are measured when they arrive; output is measured per
+// engine: the blocking engines hold at most their socket buffers per client
+// and notice a slow one by a write that doesn't finish, the nio engine
+// counts the reply bytes it has queued.
+public final class Limits {
+    // Longest request line, in chars (bytes on the nio engine); the rest of
+    // a longer line is read and thrown away, and it is answered ERROR LINE_TOO_LONG
+    public static final int MAX_LINE = Integer.getInteger("bulletinboard.maxLine", 64 * 1024);
+    // Longest note message, in bytes (UTF-8); POST answers ERROR MESSAGE_TOO_LONG
+    public static final int MAX_MESSAGE = Integer.getInteger("bulletinboard.maxMessage", 4096);
+    // Reply bytes the nio engine queues for one connection before closing
+    // it as a slow consumer. A GET reply is queued a chunk at a time as the
+    // socket takes it, so this only bounds what the other commands of one
+    // read and the events after them can queue.
+    public static final long MAX_OUTPUT = Long.getLong("bulletinboard.maxOutput", 64L << 20);
+    // Seconds a connection may leave its replies unread, with more to send,
+    // before it is closed as a slow consumer
+    public static final long WRITE_TIMEOUT = Long.getLong("bulletinboard.writeTimeout", 30);
+    // Commands per second per connection, and how many may come at once;
+    // more are answered ERROR RATE_LIMITED. Off by default.
+    public static final double RATE = Double.parseDouble(System.getProperty("bulletinboard.rateLimit", "0"));
+    public static final double BURST = Double.parseDouble(System.getProperty("bulletinboard.rateBurst", String.valueOf(Math.max(RATE, 1))));
+    // Open connections; any more are sent ERROR SERVER_BUSY and closed
+    // before a thread or processor is set up for them
+    public static final int MAX_CONNECTIONS = Integer.getInteger("bulletinboard.maxConnections", 10000);
+
+    // Sent to a connection turned away by MAX_CONNECTIONS
+    static final byte[] SERVER_BUSY = ("ERROR SERVER_BUSY" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+    private Limits(){
+    }
+
+    // A token bucket for one connection, or null if commands aren't limited
+    static TokenBucket newRateLimiter(){
+        return RATE > 0 ? new TokenBucket(RATE, BURST) : null;
+    }
+
+    // Whether another connection may be let in next to active ones
+    static boolean admits(long active){
+        return MAX_CONNECTIONS <= 0 || active < MAX_CONNECTIONS;
+    }
+
+    // Whether message is over MAX_MESSAGE once encoded as UTF-8
+    static boolean isTooLong(String message){
+        if (MAX_MESSAGE <= 0) return false;
+        int n = message.length();
+        // every char is 1 to 3 bytes, so most messages are decided here
+        if (n * 3L <= MAX_MESSAGE) return false;
+        if (n > MAX_MESSAGE) return true;
+        long bytes = 0;
+        for (int i = 0; i < n; i++){
+            char c = message.charAt(i);
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes > MAX_MESSAGE;
+    }
+}
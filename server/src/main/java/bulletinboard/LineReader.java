@@ -0,0 +1,81 @@
+package bulletinboard;
+
+import java.io.*;
+
+// Reads lines into one reusable StringBuilder instead of a new String per
+// line. Line endings are the same as BufferedReader.readLine: \n, \r or \r\n.
+public class LineReader {
+    private final Reader in;
+    private final char[] buf = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    private boolean skipLF = false;
+    private final StringBuilder line = new StringBuilder();
+    // chars kept per line, 0 for no limit
+    private final int maxLength;
+    private boolean tooLong = false;
+
+    public LineReader(Reader in){
+        this(in, 0);
+    }
+
+    // Lines longer than maxLength are read to their end but not kept
+    public LineReader(Reader in, int maxLength){
+        this.in = in;
+        this.maxLength = maxLength;
+    }
+
+    // True if the line last read was over maxLength; what readLine
+    // returned is then only its start
+    public boolean isTooLong(){
+        return tooLong;
+    }
+
+    // The next line without its terminator, or null at end of stream.
+    // The returned builder is overwritten by the next call.
+    public CharSequence readLine() throws IOException {
+        line.setLength(0);
+        tooLong = false;
+        boolean any = false;
+        while (true) {
+            if (pos >= limit) {
+                limit = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (limit <= 0) {
+                    limit = 0;
+                    return any ? line : null;
+                }
+            }
+            char c = buf[pos++];
+            if (skipLF) {
+                skipLF = false;
+                if (c == '\n') continue;
+            }
+            any = true;
+            if (c == '\n') return line;
+            if (c == '\r') {
+                skipLF = true;
+                return line;
+            }
+            if (maxLength > 0 && line.length() >= maxLength) {
+                tooLong = true;
+            } else {
+                line.append(c);
+            }
+        }
+    }
+
+    // True if more input can be read without blocking
+    public boolean ready() throws IOException {
+        if (pos >= limit && in.ready()) {
+            limit = Math.max(0, in.read(buf, 0, buf.length));
+            pos = 0;
+        }
+        // the \n of a \r\n already answered is not more input
+        if (skipLF && pos < limit && buf[pos] == '\n') {
+            skipLF = false;
+            pos++;
+        }
+        return pos < limit;
+    }
+}
@@ -0,0 +1,248 @@
+package bulletinboard;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+import javax.management.*;
+
+// Counters and latency histograms for one server: per command, for waits on
+// the board's tile locks, and for connections and bytes. Everything records
+// into LongAdders, so the hot path never takes a lock or contends on a
+// shared counter; STATS pays for adding them up.
+public class Metrics implements MetricsMXBean {
+    // Commands timed separately. BATCH is timed once, when it is applied;
+    // OTHER is every remaining line, including the invalid ones.
+    public enum Command { POST, PIN, UNPIN, GET, SHAKE, CLEAR, BATCH, SUBSCRIBE, OTHER }
+
+    private static final Command[] COMMANDS = Command.values();
+
+    private final LatencyHistogram[] latency = new LatencyHistogram[COMMANDS.length];
+    private final LongAdder[] errors = new LongAdder[COMMANDS.length];
+    // Lock acquisitions, and the time spent waiting by those that had to wait
+    private final LongAdder readLocks = new LongAdder();
+    private final LongAdder writeLocks = new LongAdder();
+    private final LatencyHistogram readLockWait = new LatencyHistogram();
+    private final LatencyHistogram writeLockWait = new LatencyHistogram();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder connectionErrors = new LongAdder();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    // Filtered GETs answered from a board's GetCache, and those that weren't
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder cacheMisses = new LongAdder();
+    // Clients held to the Limits: connections turned away, connections
+    // closed for not reading their replies, commands refused by the rate
+    // limit and lines thrown away for their length
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder slowConsumers = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder linesTooLong = new LongAdder();
+
+    public Metrics(){
+        for (int i = 0; i < COMMANDS.length; i++){
+            latency[i] = new LatencyHistogram();
+            errors[i] = new LongAdder();
+        }
+    }
+
+    // A command took this long and answered with reply (null for GET and
+    // other multi-line replies, which count as successful)
+    public void command(Command command, long nanos, String reply){
+        latency[command.ordinal()].record(nanos);
+        if (reply != null && reply.startsWith("ERROR")){
+            errors[command.ordinal()].increment();
+        }
+    }
+
+    // A tile lock was taken, after waiting this long (0 if it was free)
+    public void lockTaken(boolean write, long waitedNanos){
+        (write ? writeLocks : readLocks).increment();
+        if (waitedNanos > 0){
+            (write ? writeLockWait : readLockWait).record(waitedNanos);
+        }
+    }
+
+    public void connectionOpened(){
+        opened.increment();
+    }
+
+    public void connectionClosed(){
+        closed.increment();
+    }
+
+    // A connection ended with an I/O error rather than DISCONNECT or end of input
+    public void connectionError(){
+        connectionErrors.increment();
+    }
+
+    public void bytesIn(long n){
+        bytesIn.add(n);
+    }
+
+    public void bytesOut(long n){
+        bytesOut.add(n);
+    }
+
+    public void getCacheLookup(boolean hit){
+        (hit ? cacheHits : cacheMisses).increment();
+    }
+
+    public void connectionRejected(){
+        rejectedConnections.increment();
+    }
+
+    public void slowConsumer(){
+        slowConsumers.increment();
+    }
+
+    public void rateLimited(){
+        rateLimited.increment();
+    }
+
+    public void lineTooLong(){
+        linesTooLong.increment();
+    }
+
+    // Socket streams that count what goes through them. Put them under any
+    // buffering, so they are called once per read or write of the socket.
+    public InputStream countIn(InputStream in){
+        return new FilterInputStream(in){
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) bytesIn.increment();
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int n = super.read(b, off, len);
+                if (n > 0) bytesIn.add(n);
+                return n;
+            }
+        };
+    }
+
+    public OutputStream countOut(OutputStream out){
+        return new FilterOutputStream(out){
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                bytesOut.increment();
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                bytesOut.add(len);
+            }
+        };
+    }
+
+    @Override
+    public long getActiveConnections(){
+        // closed is read first so a connection opened meanwhile can't make this negative
+        long gone = closed.sum();
+        return opened.sum() - gone;
+    }
+
+    @Override
+    public long getOpenedConnections(){
+        return opened.sum();
+    }
+
+    @Override
+    public long getConnectionErrors(){
+        return connectionErrors.sum();
+    }
+
+    @Override
+    public long getBytesIn(){
+        return bytesIn.sum();
+    }
+
+    @Override
+    public long getBytesOut(){
+        return bytesOut.sum();
+    }
+
+    @Override
+    public long getGetCacheHits(){
+        return cacheHits.sum();
+    }
+
+    @Override
+    public long getGetCacheMisses(){
+        return cacheMisses.sum();
+    }
+
+    @Override
+    public long getRejectedConnections(){
+        return rejectedConnections.sum();
+    }
+
+    @Override
+    public long getSlowConsumers(){
+        return slowConsumers.sum();
+    }
+
+    @Override
+    public long getRateLimited(){
+        return rateLimited.sum();
+    }
+
+    @Override
+    public long getLinesTooLong(){
+        return linesTooLong.sum();
+    }
+
+    public LatencyHistogram.Snapshot latency(Command command){
+        return latency[command.ordinal()].snapshot();
+    }
+
+    // STATS lines. Times are in microseconds; percentiles are rounded up to
+    // within 1/16 of the true value.
+    @Override
+    public List<String> getStats(){
+        List<String> lines = new ArrayList<>();
+        lines.add("STAT connections active=" + getActiveConnections() + " opened=" + getOpenedConnections()
+            + " errors=" + getConnectionErrors());
+        lines.add("STAT bytes in=" + getBytesIn() + " out=" + getBytesOut());
+        for (Command command : COMMANDS){
+            LatencyHistogram.Snapshot times = latency(command);
+            lines.add("STAT " + command + " count=" + times.getCount() + " errors=" + errors[command.ordinal()].sum()
+                + times(times));
+        }
+        lines.add(lockLine("LOCK_READ", readLocks, readLockWait.snapshot()));
+        lines.add(lockLine("LOCK_WRITE", writeLocks, writeLockWait.snapshot()));
+        lines.add("STAT GET_CACHE hits=" + getGetCacheHits() + " misses=" + getGetCacheMisses());
+        lines.add("STAT LIMITS rejected_connections=" + getRejectedConnections() + " slow_consumers=" + getSlowConsumers()
+            + " rate_limited=" + getRateLimited() + " lines_too_long=" + getLinesTooLong());
+        return lines;
+    }
+
+    private static String lockLine(String name, LongAdder acquired, LatencyHistogram.Snapshot waits){
+        return "STAT " + name + " acquired=" + acquired.sum() + " waited=" + waits.getCount()
+            + " wait_total_us=" + micros(waits.getTotalNanos()) + times(waits);
+    }
+
+    private static String times(LatencyHistogram.Snapshot times){
+        return " mean_us=" + micros(times.getMeanNanos())
+            + " p50_us=" + micros(times.percentile(0.5))
+            + " p90_us=" + micros(times.percentile(0.9))
+            + " p99_us=" + micros(times.percentile(0.99))
+            + " p999_us=" + micros(times.percentile(0.999))
+            + " max_us=" + micros(times.getMaxNanos());
+    }
+
+    private static String micros(double nanos){
+        return String.format(Locale.ROOT, "%.1f", nanos / 1000);
+    }
+
+    // Make these metrics readable over JMX under the given name
+    public void register(String name) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(name));
+    }
+}
@@ -0,0 +1,31 @@
+package bulletinboard;
+
+import java.util.*;
+
+// What Metrics shows over JMX, e.g. in jconsole under bulletinboard:type=Metrics
+public interface MetricsMXBean {
+    long getActiveConnections();
+
+    long getOpenedConnections();
+
+    long getConnectionErrors();
+
+    long getBytesIn();
+
+    long getBytesOut();
+
+    long getGetCacheHits();
+
+    long getGetCacheMisses();
+
+    long getRejectedConnections();
+
+    long getSlowConsumers();
+
+    long getRateLimited();
+
+    long getLinesTooLong();
+
+    // The STATS reply, one line per group
+    List<String> getStats();
+}
@@ -0,0 +1,509 @@
+package bulletinboard;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Single-threaded selector reactor: every connection is a non-blocking channel,
+// input lines are decoded from ByteBuffers and handed to a CommandProcessor.
+public class NioServer {
+    // Size of the buffers replies are written into and queued on out as
+    private static final int CHUNK = 16 * 1024;
+    // Bytes a GET reply may queue before the rest of it waits for the
+    // socket to take them, at most a quarter of the output limit
+    private static final int PAGE_QUEUED = 4 * CHUNK;
+    private final BoardRegistry boards;
+    // records every connection if set
+    private final Capture capture;
+    private final Metrics metrics;
+    private final int port;
+    // reply bytes queued for a connection before it is closed, see checkOutput
+    private final long maxOutput;
+    // the port being served, once serve() has bound it
+    private volatile int boundPort = 0;
+    private Selector selector;
+    // connections whose subscription has events, added by board writers
+    private final Queue<SelectionKey> eventsReady = new ConcurrentLinkedQueue<>();
+
+    public NioServer(int port, BoardRegistry boards, Capture capture){
+        this(port, boards, capture, Limits.MAX_OUTPUT);
+    }
+
+    // Same, with the replies queued for a connection limited to maxOutput
+    // instead of Limits.MAX_OUTPUT
+    NioServer(int port, BoardRegistry boards, Capture capture, long maxOutput){
+        this.port = port;
+        this.boards = boards;
+        this.capture = capture;
+        this.metrics = boards.getMetrics();
+        this.maxOutput = maxOutput;
+    }
+
+    // The port serve() listens on, which the OS picked if it was given as
+    // 0; 0 until serve() has bound it
+    int getPort(){
+        return boundPort;
+    }
+
+    // Per-connection state kept as the selection key's attachment
+    private static class Connection {
+        final CommandProcessor processor;
+        final ByteBuffer in = ByteBuffer.allocate(8192);
+        // bytes of the line being read so far, may span several reads, and the
+        // chars they decode to; both are reused for every line
+        ByteBuffer line = ByteBuffer.allocate(256);
+        CharBuffer chars = CharBuffer.allocate(256);
+        // the line being read is over Limits.MAX_LINE and is being skipped
+        boolean lineTooLong = false;
+        final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final Deque<ByteBuffer> out = new ArrayDeque<>();
+        // bytes in out, held to Limits.MAX_OUTPUT
+        long queued = 0;
+        // since when the socket has taken none of out, 0 while it keeps up
+        long stalledSince = 0;
+        // replies produced by the current read, queued a chunk at a time
+        final Pending pending = new Pending(this);
+        // BufferReplies, or NioBinaryReplies once the client has switched
+        ReplyWriter replies = new BufferReplies(this);
+        // a GET reply too large to write at once, the rest of it written as
+        // out drains; no more input is handled until it is all written
+        NotePage page;
+        // PAGE_QUEUED, or less under a low output limit
+        final long pageQueued;
+        boolean lastWasCR = false;
+        // after BINARY: the frame being read, null while its length is
+        boolean binary = false;
+        byte[] frame;
+        int framePos;
+        int frameLength;
+        int lengthShift;
+        // the subscription whose events are being sent here, if any
+        Subscription subscription;
+
+        Connection(CommandProcessor processor, long pageQueued){
+            this.processor = processor;
+            this.pageQueued = pageQueued;
+        }
+
+        void queue(ByteBuffer buf){
+            out.add(buf);
+            queued += buf.remaining();
+        }
+
+        // Write page until out holds pageQueued bytes; true once all of it
+        // is written, false if it is to be carried on once out has drained
+        boolean fill(NotePage page){
+            while (queued < pageQueued) {
+                if (!page.writeNext(replies)) return true;
+            }
+            return false;
+        }
+
+        // A GET reply, written now if there is room for it, and otherwise
+        // started, the rest waiting for write
+        void page(NotePage page){
+            if (!fill(page)) this.page = page;
+        }
+    }
+
+    public void serve() throws IOException {
+        try (Selector selector = Selector.open();
+             ServerSocketChannel server = ServerSocketChannel.open()) {
+            this.selector = selector;
+            server.bind(new InetSocketAddress(port));
+            boundPort = server.socket().getLocalPort();
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+
+            long timeout = TimeUnit.SECONDS.toNanos(Limits.WRITE_TIMEOUT);
+            long sweepMillis = Math.max(100, TimeUnit.NANOSECONDS.toMillis(timeout) / 4);
+            long nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepMillis);
+            while (true) {
+                if (timeout > 0) {
+                    selector.select(sweepMillis);
+                    if (System.nanoTime() - nextSweep >= 0) {
+                        closeStalled(selector, timeout);
+                        nextSweep = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepMillis);
+                    }
+                } else {
+                    selector.select();
+                }
+                SelectionKey ready;
+                while ((ready = eventsReady.poll()) != null) {
+                    try {
+                        if (ready.isValid()) pushEvents(ready);
+                    } catch (IOException e) {
+                        metrics.connectionError();
+                        close(ready);
+                    }
+                }
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (key.isAcceptable()) {
+                            accept(server, selector);
+                        } else {
+                            if (key.isReadable()) read(key);
+                            if (key.isValid() && key.isWritable()) write(key);
+                        }
+                    } catch (IOException e) {
+                        // Close connection when client disconnects
+                        if (key.attachment() instanceof Connection) metrics.connectionError();
+                        close(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel server, Selector selector) throws IOException {
+        SocketChannel channel = server.accept();
+        if (channel == null) return;
+        if (!Limits.admits(metrics.getActiveConnections())) {
+            reject(channel);
+            return;
+        }
+        channel.configureBlocking(false);
+        long pageQueued = maxOutput > 0 ? Math.min(PAGE_QUEUED, maxOutput / 4) : PAGE_QUEUED;
+        Connection conn = new Connection(new CommandProcessor(boards, capture), pageQueued);
+        metrics.connectionOpened();
+        SelectionKey key = channel.register(selector, SelectionKey.OP_READ, conn);
+        //Main handshake
+        conn.processor.handshake(conn.replies);
+        flush(conn);
+        write(key);
+    }
+
+    private void read(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+        int n = channel.read(conn.in);
+        if (n < 0) {
+            close(key);
+            return;
+        }
+        metrics.bytesIn(n);
+        handleInput(key, conn);
+        write(key);
+    }
+
+    // Answer the lines and frames read into conn.in, stopping at a GET reply
+    // too large to write at once; what is after it stays in conn.in until
+    // write has sent all of it
+    private void handleInput(SelectionKey key, Connection conn) throws IOException {
+        conn.in.flip();
+        // one line or frame at a time; the byte loop is kept apart from the
+        // command handling so the JIT compiles the two separately
+        while (conn.in.hasRemaining() && !conn.processor.isDisconnected() && conn.page == null) {
+            if (conn.binary) {
+                readFrame(conn);
+            } else if (scanLine(conn)) {
+                endLine(conn);
+            }
+            // a read buffer of pipelined commands can answer more than the
+            // limit before flush sees it, so check after every command
+            checkOutput(conn);
+        }
+        conn.in.compact();
+        // every complete line handled has been answered, send them together
+        flush(conn);
+        Subscription current = conn.processor.getSubscription();
+        if (current != conn.subscription) {
+            conn.subscription = current;
+            if (current != null) {
+                current.setOnReady(() -> {
+                    eventsReady.add(key);
+                    selector.wakeup();
+                });
+            }
+        }
+    }
+
+    // The line being read is complete, answer it
+    // Move the bytes of the current text line from the read buffer into
+    // conn.line, true once its end has been read. Same line endings as
+    // BufferedReader.readLine: \n, \r or \r\n.
+    private static boolean scanLine(Connection conn) {
+        while (conn.in.hasRemaining()) {
+            byte b = conn.in.get();
+            if (b == '\n' && conn.lastWasCR) {
+                conn.lastWasCR = false;
+                continue;
+            }
+            conn.lastWasCR = b == '\r';
+            if (b == '\n' || b == '\r') {
+                return true;
+            }
+            if (Limits.MAX_LINE > 0 && conn.line.position() >= Limits.MAX_LINE) {
+                conn.lineTooLong = true;
+            } else {
+                if (!conn.line.hasRemaining()) {
+                    conn.line = grow(conn.line);
+                }
+                conn.line.put(b);
+            }
+        }
+        return false;
+    }
+
+    private void endLine(Connection conn) {
+        if (conn.lineTooLong) {
+            conn.lineTooLong = false;
+            conn.line.clear();
+            conn.processor.lineTooLong(conn.replies);
+            return;
+        }
+        conn.processor.handle(decodeLine(conn), conn.replies);
+        if (conn.processor.isBinary()) {
+            // the rest of this read, if any, is already frames
+            conn.binary = true;
+            conn.replies = new NioBinaryReplies(conn);
+        }
+    }
+
+    // Send queued events, but only once earlier output has gone out; until
+    // then they wait (bounded) in the subscription
+    private void pushEvents(SelectionKey key) throws IOException {
+        Connection conn = (Connection) key.attachment();
+        if (conn.out.isEmpty()) {
+            write(key);
+        }
+    }
+
+    // Take bytes of the current BinaryCodec frame from the read buffer,
+    // handling the frame once it is complete
+    private void readFrame(Connection conn) throws IOException {
+        if (conn.frame == null) {
+            byte b = conn.in.get();
+            conn.frameLength |= (b & 0x7F) << conn.lengthShift;
+            if ((b & 0x80) != 0) {
+                conn.lengthShift += 7;
+                if (conn.lengthShift > 28) throw new IOException("frame length too long");
+                return;
+            }
+            if (conn.frameLength < 0 || conn.frameLength > BinaryCodec.MAX_FRAME) {
+                throw new IOException("frame too large");
+            }
+            conn.frame = new byte[conn.frameLength];
+            conn.framePos = 0;
+        }
+        int n = Math.min(conn.in.remaining(), conn.frame.length - conn.framePos);
+        conn.in.get(conn.frame, conn.framePos, n);
+        conn.framePos += n;
+        if (conn.framePos == conn.frame.length) {
+            byte[] complete = conn.frame;
+            conn.frame = null;
+            conn.frameLength = 0;
+            conn.lengthShift = 0;
+            conn.processor.handleFrame(complete, conn.replies);
+        }
+    }
+
+    // Decode the buffered line bytes into the connection's reusable CharBuffer
+    private CharBuffer decodeLine(Connection conn){
+        conn.line.flip();
+        // UTF-8 never decodes to more chars than it has bytes
+        if (conn.chars.capacity() < conn.line.remaining()) {
+            conn.chars = CharBuffer.allocate(conn.line.capacity());
+        }
+        conn.chars.clear();
+        conn.decoder.reset();
+        conn.decoder.decode(conn.line, conn.chars, true);
+        conn.decoder.flush(conn.chars);
+        conn.chars.flip();
+        conn.line.clear();
+        return conn.chars;
+    }
+
+    private static ByteBuffer grow(ByteBuffer buf){
+        ByteBuffer bigger = ByteBuffer.allocate(buf.capacity() * 2);
+        buf.flip();
+        return bigger.put(buf);
+    }
+
+    private void write(SelectionKey key) throws IOException {
+        SocketChannel channel = (SocketChannel) key.channel();
+        Connection conn = (Connection) key.attachment();
+        while (true) {
+            while (!conn.out.isEmpty()) {
+                ByteBuffer head = conn.out.peek();
+                int n = channel.write(head);
+                metrics.bytesOut(n);
+                conn.queued -= n;
+                if (head.hasRemaining()) {
+                    // socket buffer is full, wait until it drains. Reading
+                    // stops meanwhile, so a client that doesn't take its
+                    // replies can't queue up more of them.
+                    if (n > 0 || conn.stalledSince == 0) conn.stalledSince = System.nanoTime();
+                    key.interestOps(SelectionKey.OP_WRITE);
+                    return;
+                }
+                conn.out.poll();
+            }
+            conn.stalledSince = 0;
+            if (conn.page != null) {
+                // carry on with the GET reply, then with the input after it
+                if (conn.fill(conn.page)) {
+                    conn.page = null;
+                    handleInput(key, conn);
+                }
+                continue;
+            }
+            // everything else is sent, so events can follow
+            if (conn.subscription == null || !conn.subscription.hasEvents()) break;
+            conn.subscription.drainTo(conn.replies);
+            flush(conn);
+        }
+        if (conn.processor.isDisconnected()) {
+            close(key);
+            return;
+        }
+        key.interestOps(SelectionKey.OP_READ);
+    }
+
+    private void flush(Connection conn) throws IOException {
+        conn.pending.handOver();
+        checkOutput(conn);
+    }
+
+    // Close the connection, through the IOException, once its replies not
+    // yet taken by the socket, queued or still being built, pass the limit
+    private void checkOutput(Connection conn) throws IOException {
+        if (maxOutput > 0 && conn.queued + conn.pending.size() > maxOutput) {
+            metrics.slowConsumer();
+            throw new IOException("slow consumer");
+        }
+    }
+
+    // Close connections whose socket has taken none of their replies for
+    // longer than timeout
+    private void closeStalled(Selector selector, long timeout) {
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.keys()) {
+            if (!(key.attachment() instanceof Connection)) continue;
+            Connection conn = (Connection) key.attachment();
+            if (conn.stalledSince != 0 && now - conn.stalledSince > timeout) {
+                metrics.slowConsumer();
+                metrics.connectionError();
+                close(key);
+            }
+        }
+    }
+
+    // Turn a connection away before any state is set up for it
+    private void reject(SocketChannel channel) {
+        metrics.connectionRejected();
+        try {
+            // a fresh socket's send buffer has room, so this writes it all
+            channel.write(ByteBuffer.wrap(Limits.SERVER_BUSY));
+        } catch (IOException e) {
+            // it is closed either way
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void close(SelectionKey key){
+        if (key.attachment() instanceof Connection && key.isValid()) {
+            ((Connection) key.attachment()).processor.close();
+            metrics.connectionClosed();
+        }
+        key.cancel();
+        try{
+            key.channel().close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Reply bytes not yet on out. They are written into a fixed-size chunk,
+    // queued as it fills, so no reply is ever held in one array whatever
+    // its size; a part-filled chunk is copied out by handOver, so the many
+    // short replies don't each keep a whole chunk.
+    private static class Pending extends OutputStream {
+        private final Connection conn;
+        private ByteBuffer chunk = ByteBuffer.allocate(CHUNK);
+
+        Pending(Connection conn){
+            this.conn = conn;
+        }
+
+        int size(){
+            return chunk.position();
+        }
+
+        @Override
+        public void write(int b){
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length){
+            while (length > 0) {
+                int n = Math.min(length, chunk.remaining());
+                chunk.put(bytes, offset, n);
+                offset += n;
+                length -= n;
+                if (!chunk.hasRemaining()) {
+                    chunk.flip();
+                    conn.queue(chunk);
+                    chunk = ByteBuffer.allocate(CHUNK);
+                }
+            }
+        }
+
+        // Queue whatever is in the current chunk
+        void handOver(){
+            if (chunk.position() > 0) {
+                conn.queue(ByteBuffer.wrap(Arrays.copyOf(chunk.array(), chunk.position())));
+                chunk.clear();
+            }
+        }
+    }
+
+    // Encodes reply lines as UTF-8 straight into the connection's pending bytes
+    private static class BufferReplies extends Utf8Replies {
+        private final Connection conn;
+
+        BufferReplies(Connection conn){
+            this.conn = conn;
+        }
+
+        @Override
+        protected void write(byte[] bytes, int offset, int length){
+            conn.pending.write(bytes, offset, length);
+        }
+
+        @Override
+        public void page(NotePage page){
+            conn.page(page);
+        }
+    }
+
+    // BinaryReplies into the connection's pending bytes, GET pages written
+    // a chunk at a time like the text ones
+    private static class NioBinaryReplies extends BinaryReplies {
+        private final Connection conn;
+
+        NioBinaryReplies(Connection conn){
+            super(conn.pending, conn.processor.getBoard().getColours());
+            this.conn = conn;
+        }
+
+        @Override
+        public void page(NotePage page){
+            conn.page(page);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package bulletinboard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class Note {
+    private final int x;
+    private final int y;
+    private final String colour;
+    // its GET reply line up to the PINNED= flag, "NOTE x y colour message",
+    // encoded as UTF-8 once at post time; the message starts at messageOffset.
+    // This is the note's only copy of its message.
+    private final byte[] line;
+    private final int messageOffset;
+    // the message lowercased as UTF-8 for refersTo= searches, null if
+    // lowercasing leaves it as it was, which saves most notes a second copy
+    private final byte[] lowerUtf8;
+    private final long seq;
+    // Wall clock millis the note expires at, 0 if it never does
+    private final long expiresAt;
+    // Pins through this note, null while there are none; only changed by
+    // Board under its write lock
+    private List<Pin> pins;
+    // Board's set of unpinned notes this one is in, null while it is pinned
+    Board.UnpinnedSet unpinned;
+    // Board's expiry timer for it, if it has an expiresAt
+    TimingWheel.Timer<Note> timer;
+
+    // Notes are all the board's note size, so that is left to the Board
+    public Note(long seq, int x, int y, String colour, String message) {
+        this(seq, x, y, colour, message, 0);
+    }
+
+    public Note(long seq, int x, int y, String colour, String message, long expiresAt) {
+        this.seq = seq;
+        this.x = x;
+        this.y = y;
+        this.colour = colour;
+        this.expiresAt = expiresAt;
+        byte[] prefix = linePrefix(x, y, colour);
+        byte[] text = message.getBytes(StandardCharsets.UTF_8);
+        this.line = Arrays.copyOf(prefix, prefix.length + text.length);
+        System.arraycopy(text, 0, line, prefix.length, text.length);
+        this.messageOffset = prefix.length;
+        String lower = message.toLowerCase();
+        this.lowerUtf8 = lower.equals(message) ? null : lower.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // "NOTE x y colour ", the part of a reply line before the message
+    static byte[] linePrefix(int x, int y, String colour) {
+        return ("NOTE " + x + " " + y + " " + colour + " ").getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Getters for the field variables
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public String getColour() {
+        return colour;
+    }
+
+    // Decoded on every call; a note is posted, logged and sent to
+    // subscribers once, and GET replies copy the encoded line
+    public String getMessage() {
+        return new String(line, messageOffset, line.length - messageOffset, StandardCharsets.UTF_8);
+    }
+
+    // Shared, not copied: never write to it
+    byte[] getLine() {
+        return line;
+    }
+
+    int getMessageOffset() {
+        return messageOffset;
+    }
+
+    // Shared, not copied: never write to it
+    byte[] getLowerUtf8() {
+        return lowerUtf8;
+    }
+
+    // The lowercased message as UTF-8 is getLower()[getLowerOffset() ..
+    // getLower().length): the line's message when lowercasing leaves it as
+    // it was. Shared, not copied: never write to it
+    byte[] getLower() {
+        return lowerUtf8 != null ? lowerUtf8 : line;
+    }
+
+    int getLowerOffset() {
+        return lowerUtf8 != null ? 0 : messageOffset;
+    }
+
+    // True if the lowercased message contains lowerRef, lowercased UTF-8
+    boolean refersTo(byte[] lowerRef) {
+        byte[] lower = getLower();
+        return BoardSnapshot.contains(lower, getLowerOffset(), lower.length, lowerRef);
+    }
+
+    public boolean isPinned() {
+        return pins != null;
+    }
+
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    // Taken off by SHAKE, but maybe not yet out of the board's indexes
+    boolean isShaken() {
+        return unpinned != null && unpinned.shaken;
+    }
+
+    void addPin(Pin pin) {
+        if (pins == null) pins = new ArrayList<>(2);
+        pins.add(pin);
+    }
+
+    void removePin(Pin pin) {
+        pins.remove(pin);
+        if (pins.isEmpty()) pins = null;
+    }
+
+    List<Pin> getPins() {
+        return pins != null ? pins : Collections.emptyList();
+    }
+
+    // Insertion order on the board, used to keep GET output in posting order
+    public long getSeq() {
+        return seq;
+    }
+}
+
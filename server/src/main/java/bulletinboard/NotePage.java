@@ -0,0 +1,82 @@
+package bulletinboard;
+
+// One GET page of a snapshot, made ready to write: its count, the matching
+// notes and, if more match after them, the cursor. The snapshot never
+// changes, so the page can be written a record at a time, stopping whenever
+// the engine's output is full, and still be the reply GET had when it ran.
+public final class NotePage {
+    private final BoardSnapshot snapshot;
+    private final int colourId;
+    private final byte[] lowerRef;
+    // records before the cursor's
+    private final int count;
+    // index of the last note to send, and whether a cursor follows it
+    private final int last;
+    private final boolean more;
+    // the next note to look at, from before the count is written
+    private int next;
+    private boolean started = false;
+
+    // The notes of snapshot after the cursor that match, up to limit, and
+    // the cursor for the next page if any match beyond them. The count is
+    // worked out here; the notes are found again as they are written, so
+    // the page holds nothing per note.
+    NotePage(BoardSnapshot snapshot, int colourId, byte[] lowerRef, long after, int limit){
+        this.snapshot = snapshot;
+        this.colourId = colourId;
+        this.lowerRef = lowerRef;
+        int from = after == Board.FROM_START ? 0 : snapshot.indexAfter(after);
+        int n = 0;
+        int lastSent = from - 1;
+        boolean moreAfter = false;
+        if(colourId < 0 && lowerRef == null){
+            n = Math.min(snapshot.size() - from, limit);
+            lastSent = from + n - 1;
+            moreAfter = lastSent + 1 < snapshot.size();
+        } else {
+            for(int i = from; i < snapshot.size(); i++){
+                if(!snapshot.matches(i, colourId, lowerRef)) continue;
+                if(n == limit){
+                    moreAfter = true;
+                    break;
+                }
+                n++;
+                lastSent = i;
+            }
+        }
+        this.count = n;
+        this.last = lastSent;
+        this.more = moreAfter;
+        this.next = from;
+    }
+
+    // Write the next record of the page to sink: the count first, then the
+    // notes, then the cursor. False once there is nothing left to write.
+    public boolean writeNext(NoteSink sink){
+        if(!started){
+            started = true;
+            // the count includes the cursor's record
+            sink.count(more ? count + 1 : count);
+            return true;
+        }
+        while(next <= last){
+            int i = next++;
+            if(snapshot.matches(i, colourId, lowerRef)){
+                sink.note(snapshot, i);
+                return true;
+            }
+        }
+        if(next == last + 1 && more){
+            next++;
+            sink.cursor(snapshot.getSeq(last));
+            return true;
+        }
+        return false;
+    }
+
+    // Write all of what is left of the page to sink
+    public void writeTo(NoteSink sink){
+        while(writeNext(sink)){
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package bulletinboard;
+
+// Receives the records of a GET one at a time, so a reply can be written out
+// as the board walks its notes instead of being collected into a list first
+public interface NoteSink {
+    // Called once, before any records, with how many will follow
+    void count(int n);
+
+    void note(int x, int y, String colour, String message, boolean pinned);
+
+    // Note i of snapshot, which also holds its reply line ready encoded;
+    // sinks that write bytes can copy that instead of formatting the fields
+    default void note(BoardSnapshot snapshot, int i) {
+        note(snapshot.getX(i), snapshot.getY(i), snapshot.getColour(i), snapshot.getMessage(i), snapshot.isPinned(i));
+    }
+
+    void pin(int x, int y);
+
+    // A whole GET page. Written out here by default; a sink that can't take
+    // a large reply at once may keep the page and write it with writeNext
+    // as its output drains, before anything else on the connection.
+    default void page(NotePage page) {
+        page.writeTo(this);
+    }
+
+    // Last record of a GET page with more matching notes after it: the
+    // after= value that asks for the next page
+    void cursor(long after);
+}
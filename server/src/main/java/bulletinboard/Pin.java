@@ -1,23 +1,32 @@
-public class Pin {
-    private final int x;
-    private final int y;
-    private final Note note;
-
-    public Pin(int x, int y, Note note) {
-        this.x = x;
-        this.y = y;
-        this.note = note;
-    }
-
-    public int getX() {
-        return x;
-    }
-
-    public int getY() {
-        return y;
-    }
-
-    public Note getNote() {
-        return note;
-    }
+package bulletinboard;
+
+public class Pin {
+    private final int x;
+    private final int y;
+    private final Note note;
+    private final long seq;
+
+    public Pin(long seq, int x, int y, Note note) {
+        this.seq = seq;
+        this.x = x;
+        this.y = y;
+        this.note = note;
+    }
+
+    public int getX() {
+        return x;
+    }
+
+    public int getY() {
+        return y;
+    }
+
+    public Note getNote() {
+        return note;
+    }
+
+    // Order the pin was added in, GET PINS lists pins by this
+    public long getSeq() {
+        return seq;
+    }
 }
\ No newline at end of file
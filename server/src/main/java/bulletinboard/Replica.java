@@ -0,0 +1,162 @@
+package bulletinboard;
+
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+
+// Keeps one board of a replica server in step with the same board on the
+// primary, from its ReplicationServer: a thread applies the records it is
+// sent with the same redo() a BoardStore recovers with, and after a dropped
+// connection reconnects and asks to carry on from the last record applied.
+//
+// Clients of a replica can only read. How far behind that makes them is
+// measured from the last time every record the primary had was applied;
+// past MAX_LAG GETs are refused rather than answered from a board that old.
+class Replica {
+    // Seconds a replica may be behind its primary and still answer GET
+    static final long MAX_LAG = Long.getLong("bulletinboard.maxLag", 5);
+    private static final long RETRY_MILLIS = 1000;
+    // no message, not even a heartbeat, for this long means the primary is gone
+    private static final int READ_TIMEOUT_MILLIS = 3000;
+
+    private final String name;
+    private final Board board;
+    private final String host;
+    private final int port;
+
+    // last record applied, and of which run of the primary's log
+    private volatile long epoch = 0;
+    private volatile long applied = 0;
+    // last record the primary said it had
+    private volatile long primaryLast = 0;
+    // nanoTime when applied last caught up with primaryLast; 0 before the first sync
+    private volatile long caughtUpAt = 0;
+    private volatile boolean connected = false;
+    // host:port clients of the primary connect to, once known
+    private volatile String primary;
+    private volatile long reconnects = 0;
+    // whole boards loaded, the first included
+    private volatile long snapshots = 0;
+
+    Replica(String name, Board board, String host, int port) {
+        this.name = name;
+        this.board = board;
+        this.host = host;
+        this.port = port;
+    }
+
+    void start() {
+        Thread thread = new Thread(this::followLoop, "replica-" + name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Where a write should go instead
+    String readOnlyError() {
+        return primary != null ? "ERROR READ_ONLY " + primary : "ERROR READ_ONLY";
+    }
+
+    // Milliseconds since this board last had everything the primary had, or
+    // -1 if it has never been in step
+    long lagMillis() {
+        long at = caughtUpAt;
+        return at == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - at);
+    }
+
+    // Whether a GET would be answered from a board too far behind
+    boolean isLagging() {
+        long lag = lagMillis();
+        return lag < 0 || lag > TimeUnit.SECONDS.toMillis(MAX_LAG);
+    }
+
+    String getStats() {
+        return "role=replica primary=" + host + ":" + port + " connected=" + connected + " applied=" + applied
+            + " behind=" + Math.max(0, primaryLast - applied) + " lag_ms=" + lagMillis() + " reconnects=" + reconnects
+            + " snapshots=" + snapshots;
+    }
+
+    private void followLoop() {
+        while (true) {
+            try (Socket socket = new Socket()) {
+                socket.connect(new InetSocketAddress(host, port), READ_TIMEOUT_MILLIS);
+                socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                socket.setTcpNoDelay(true);
+                follow(socket);
+            } catch (IOException e) {
+                // primary down or restarting; try again
+            } finally {
+                if (connected) {
+                    connected = false;
+                    reconnects++;
+                }
+            }
+            try {
+                Thread.sleep(RETRY_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void follow(Socket socket) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        out.writeUTF(name);
+        out.writeLong(epoch);
+        out.writeLong(applied);
+        out.flush();
+        String status = in.readUTF();
+        if (!status.equals("OK")) {
+            throw new IOException(status);
+        }
+        primary = host + ":" + in.readInt();
+        connected = true;
+        while (true) {
+            byte kind = in.readByte();
+            long received = System.nanoTime();
+            switch (kind) {
+                case ReplicationServer.SNAPSHOT:
+                    loadSnapshot(in);
+                    break;
+                case ReplicationServer.RECORDS: {
+                    primaryLast = in.readLong();
+                    int count = in.readInt();
+                    for (int i = 0; i < count; i++) {
+                        byte[] record = new byte[in.readInt()];
+                        in.readFully(record);
+                        BoardStore.redo(board, record);
+                        applied++;
+                    }
+                    break;
+                }
+                case ReplicationServer.HEARTBEAT:
+                    primaryLast = in.readLong();
+                    break;
+                default:
+                    throw new IOException("unknown replication message " + kind);
+            }
+            if (applied == primaryLast) {
+                caughtUpAt = received;
+            }
+        }
+    }
+
+    // Start over from the primary's whole board, as of a position in its log
+    private void loadSnapshot(DataInputStream in) throws IOException {
+        // refuse GETs until the board is whole again
+        caughtUpAt = 0;
+        long snapshotEpoch = in.readLong();
+        long at = in.readLong();
+        // a snapshot cut short leaves nothing to resume from
+        epoch = 0;
+        applied = 0;
+        board.clearBoard();
+        if (!BoardStore.readState(board, in)) {
+            throw new IOException("bad snapshot");
+        }
+        epoch = snapshotEpoch;
+        applied = at;
+        primaryLast = at;
+        snapshots++;
+    }
+}
@@ -0,0 +1,102 @@
+package bulletinboard;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+// The changes made to one board on a primary, in the order they were
+// applied, for ReplicationServer to ship to replicas. Records are the ones
+// BoardStore writes to its log, numbered from 1; the last `capacity` are
+// kept in a ring, so a replica that comes back within that many changes
+// carries on from where it stopped, and one further behind is sent the
+// whole board again.
+//
+// The numbering starts over whenever the board is loaded, so it is tagged
+// with a random epoch; a replica only resumes from a position of the same
+// epoch.
+class ReplicationLog implements BoardListener {
+    // Changes kept per board for replicas that fall behind or reconnect
+    static final int BACKLOG = Integer.getInteger("bulletinboard.replicationBacklog", 100000);
+
+    private final long epoch = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE | 1;
+    private final byte[][] ring;
+    // number of the last record appended, 0 before the first
+    private long last = 0;
+    // replicas streaming from this log, for STATS
+    final AtomicInteger followers = new AtomicInteger();
+
+    ReplicationLog(int capacity) {
+        this.ring = new byte[Math.max(1, capacity)][];
+    }
+
+    long getEpoch() {
+        return epoch;
+    }
+
+    synchronized long last() {
+        return last;
+    }
+
+    // Whether record n can still be sent; last() + 1 counts, as the next one
+    synchronized boolean has(long n) {
+        return n > last - ring.length && n <= last + 1;
+    }
+
+    // Wait up to millis for record `from` to be appended, then add it and as
+    // many following ones as are there, up to max, to batch. Returns the
+    // number of the last record appended, or -1 if `from` has already left
+    // the ring.
+    synchronized long await(long from, long millis, int max, List<byte[]> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+        long wait;
+        while (last < from && (wait = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, wait);
+        }
+        if (!has(from)) {
+            return -1;
+        }
+        for (long n = from; n <= last && batch.size() < max; n++) {
+            batch.add(ring[(int) (n % ring.length)]);
+        }
+        return last;
+    }
+
+    private synchronized void append(byte[] record) {
+        last++;
+        ring[(int) (last % ring.length)] = record;
+        notifyAll();
+    }
+
+    // BoardListener: called under the board's locks, in the order changes
+    // are applied, so the ring holds them in an order a replica can redo
+
+    @Override
+    public void notePosted(Note note) {
+        append(BoardStore.postRecord(note));
+    }
+
+    @Override
+    public void pinAdded(Pin pin) {
+        append(BoardStore.pinRecord(pin));
+    }
+
+    @Override
+    public void pinsRemoved(int x, int y, List<Pin> removed) {
+        append(BoardStore.unpinRecord(x, y));
+    }
+
+    @Override
+    public void shaken(Collection<Note> removed) {
+        append(BoardStore.shakeRecord());
+    }
+
+    @Override
+    public void expired(List<Note> removed) {
+        append(BoardStore.expireRecord(removed));
+    }
+
+    @Override
+    public void cleared() {
+        append(BoardStore.clearRecord());
+    }
+}
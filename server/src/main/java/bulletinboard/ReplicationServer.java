@@ -0,0 +1,142 @@
+package bulletinboard;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+// Ships the changes of a primary's boards to replicas (see Replica), on a
+// port of its own, one thread per replica connection. A replica names its
+// board and the epoch and position it has got to; if the board's
+// ReplicationLog still holds the next record it is streamed on from there,
+// otherwise it is sent the whole board first, cut at a known position.
+//
+// The stream is DataOutput framed: after the handshake, messages of
+//   SNAPSHOT epoch at <BoardStore.writeState>
+//   RECORDS  primaryLast count (length bytes)...
+//   HEARTBEAT primaryLast
+// with a heartbeat whenever the board has been idle for HEARTBEAT_MILLIS,
+// so a replica always knows how far behind it is.
+class ReplicationServer {
+    static final byte SNAPSHOT = 1;
+    static final byte RECORDS = 2;
+    static final byte HEARTBEAT = 3;
+    static final long HEARTBEAT_MILLIS = 100;
+    // Records per RECORDS message at most
+    private static final int BATCH = 1024;
+
+    private final ServerSocket serverSocket;
+    // where replicas send clients that try to write
+    private final int clientPort;
+    private final BoardRegistry boards;
+
+    ReplicationServer(int port, int clientPort, BoardRegistry boards) throws IOException {
+        this.serverSocket = new ServerSocket(port);
+        this.clientPort = clientPort;
+        this.boards = boards;
+    }
+
+    // The port replicas connect to, which the OS picked if it was given as 0
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    void start() {
+        Thread thread = new Thread(this::acceptLoop, "replication-accept");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void acceptLoop() {
+        while (true) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                System.out.println("ERROR SERVER_ERROR replication port closed");
+                return;
+            }
+            Thread thread = new Thread(() -> serve(socket), "replication-" + socket.getRemoteSocketAddress());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void serve(Socket socket) {
+        String name = null;
+        Board board = null;
+        try (socket) {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+            name = in.readUTF();
+            long epoch = in.readLong();
+            long applied = in.readLong();
+            board = boards.acquire(name);
+            ReplicationLog log = board != null ? boards.getReplicationLog(name) : null;
+            if (log == null) {
+                out.writeUTF("ERROR BOARD_NOT_FOUND");
+                out.flush();
+                return;
+            }
+            out.writeUTF("OK");
+            out.writeInt(clientPort);
+            log.followers.incrementAndGet();
+            try {
+                stream(board, log, epoch == log.getEpoch() && log.has(applied + 1) ? applied + 1 : 0, out);
+            } finally {
+                log.followers.decrementAndGet();
+            }
+        } catch (IOException e) {
+            // the replica went away; it reconnects and picks up from where it got to
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            if (board != null) {
+                boards.release(name);
+            }
+        }
+    }
+
+    // Send records from next on (0: the whole board first) until the replica goes
+    private static void stream(Board board, ReplicationLog log, long next, DataOutputStream out)
+            throws IOException, InterruptedException {
+        List<byte[]> batch = new ArrayList<>(BATCH);
+        while (true) {
+            if (next == 0) {
+                next = sendSnapshot(board, log, out) + 1;
+            }
+            batch.clear();
+            long last = log.await(next, HEARTBEAT_MILLIS, BATCH, batch);
+            if (last < 0) {
+                // fell out of the ring while being sent
+                next = 0;
+                continue;
+            }
+            if (batch.isEmpty()) {
+                out.writeByte(HEARTBEAT);
+                out.writeLong(last);
+            } else {
+                out.writeByte(RECORDS);
+                out.writeLong(last);
+                out.writeInt(batch.size());
+                for (byte[] record : batch) {
+                    out.writeInt(record.length);
+                    out.write(record);
+                }
+                next += batch.size();
+            }
+            out.flush();
+        }
+    }
+
+    // The board as of a position in the log, returned
+    private static long sendSnapshot(Board board, ReplicationLog log, DataOutputStream out) throws IOException {
+        long[] at = new long[1];
+        BoardSnapshot state = board.cut(() -> at[0] = log.last());
+        out.writeByte(SNAPSHOT);
+        out.writeLong(log.getEpoch());
+        out.writeLong(at[0]);
+        BoardStore.writeState(state, out);
+        return at[0];
+    }
+}
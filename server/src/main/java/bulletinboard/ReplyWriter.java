@@ -0,0 +1,74 @@
+package bulletinboard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Formats reply lines for one connection and hands each finished line to the
+// engine's output. GET records are formatted into one reused StringBuilder,
+// so streaming a large reply allocates nothing per note; engines that write
+// bytes (see Utf8Replies) copy the board's ready encoded NOTE lines instead.
+public abstract class ReplyWriter implements NoteSink {
+    private final StringBuilder line = new StringBuilder();
+
+    // Write one complete reply line; the text is only valid during the call
+    protected abstract void writeLine(CharSequence text);
+
+    public void println(String text){
+        writeLine(text);
+    }
+
+    @Override
+    public void count(int n){
+        line.setLength(0);
+        line.append("OK ").append(n);
+        writeLine(line);
+    }
+
+    @Override
+    public void note(int x, int y, String colour, String message, boolean pinned){
+        line.setLength(0);
+        line.append("NOTE ").append(x).append(' ').append(y).append(' ')
+            .append(colour).append(' ').append(message)
+            .append(pinned ? " PINNED=true" : " PINNED=false");
+        writeLine(line);
+    }
+
+    @Override
+    public void note(BoardSnapshot snapshot, int i){
+        int start = snapshot.getLineStart(i);
+        writeNote(snapshot.getLines(), start, snapshot.getLineStart(i + 1) - start, snapshot.isPinned(i));
+    }
+
+    // A NOTE line given as its UTF-8 bytes up to the PINNED= flag, which
+    // are only valid during the call. Decoded and written as text here.
+    protected void writeNote(byte[] utf8, int offset, int length, boolean pinned){
+        line.setLength(0);
+        line.append(new String(utf8, offset, length, StandardCharsets.UTF_8))
+            .append(pinned ? " PINNED=true" : " PINNED=false");
+        writeLine(line);
+    }
+
+    @Override
+    public void cursor(long after){
+        line.setLength(0);
+        line.append("CURSOR ").append(after);
+        writeLine(line);
+    }
+
+    @Override
+    public void pin(int x, int y){
+        line.setLength(0);
+        line.append("PIN ").append(x).append(' ').append(y);
+        writeLine(line);
+    }
+
+    // A writer that collects the lines, for callers that want a list after all
+    public static ReplyWriter into(List<String> lines){
+        return new ReplyWriter(){
+            @Override
+            protected void writeLine(CharSequence text){
+                lines.add(text.toString());
+            }
+        };
+    }
+}
@@ -0,0 +1,153 @@
+package bulletinboard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// One connection's SUBSCRIBE: its filter and the event lines waiting to be
+// sent to it. Board writers only ever add to the queue and never wait for
+// the client. If the client falls more than QUEUE_LIMIT events behind, the
+// queued events are dropped and replaced by a single EVENT RESYNC, telling it
+// to GET the board again, so a slow subscriber costs a bounded amount of memory.
+public class Subscription {
+    public static final int QUEUE_LIMIT = Integer.getInteger("bulletinboard.subscriberQueue", 1024);
+
+    private final String colour;
+    private final int[] contains;
+    private final byte[] lowerRef;
+    // event lines, and Removed sets whose lines are made as they are sent
+    private ArrayDeque<Object> queue = new ArrayDeque<>();
+    private boolean overflowed = false;
+    private boolean closed = false;
+    // run when events become available, e.g. to wake a selector
+    private volatile Runnable onReady = () -> {};
+
+    public Subscription(String colour, int[] contains, String referenceTo){
+        this.colour = colour;
+        this.contains = contains;
+        this.lowerRef = referenceTo != null ? referenceTo.toLowerCase().getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    // True if events about this note pass the filter
+    public boolean wants(Note note, int noteWidth, int noteHeight){
+        if (colour != null && !colour.equals(note.getColour())) return false;
+        if (contains != null){
+            int x = contains[0];
+            int y = contains[1];
+            if (x < note.getX() || x >= note.getX() + noteWidth || y < note.getY() || y >= note.getY() + noteHeight){
+                return false;
+            }
+        }
+        return lowerRef == null || note.refersTo(lowerRef);
+    }
+
+    // The notes of one SHAKE, for NOTE_REMOVED lines. They stay in memory
+    // until the lines are sent, at most QUEUE_LIMIT shakes' worth.
+    private static final class Removed {
+        final Collection<Note> notes;
+        final int noteWidth;
+        final int noteHeight;
+
+        Removed(Collection<Note> notes, int noteWidth, int noteHeight){
+            this.notes = notes;
+            this.noteWidth = noteWidth;
+            this.noteHeight = noteHeight;
+        }
+    }
+
+    // Queue one event line; called by board writers, so never blocks on the client
+    public void offer(String line){
+        enqueue(line);
+    }
+
+    // Queue an EVENT NOTE_REMOVED line for each of these notes that passes
+    // the filter, made only when they are sent. notes must not change after.
+    public void offerRemoved(Collection<Note> notes, int noteWidth, int noteHeight){
+        enqueue(new Removed(notes, noteWidth, noteHeight));
+    }
+
+    private void enqueue(Object event){
+        boolean ready;
+        synchronized (this){
+            if (closed || overflowed) return;
+            ready = queue.isEmpty();
+            if (queue.size() >= QUEUE_LIMIT){
+                queue.clear();
+                overflowed = true;
+            } else {
+                queue.add(event);
+            }
+            if (ready) notifyAll();
+        }
+        if (ready) onReady.run();
+    }
+
+    // Write out everything queued so far. Returns false once closed.
+    public boolean drainTo(ReplyWriter out){
+        ArrayDeque<Object> events;
+        boolean resync;
+        synchronized (this){
+            if (closed) return false;
+            events = queue;
+            resync = overflowed;
+            queue = new ArrayDeque<>();
+            overflowed = false;
+        }
+        // written outside the lock, the client may be slow to take them
+        for (Object event : events){
+            if (event instanceof String){
+                out.println((String) event);
+            } else if (!writeRemoved((Removed) event, out)){
+                // the rest is as good as lost with it
+                resync = true;
+                break;
+            }
+        }
+        if (resync){
+            out.println("EVENT RESYNC");
+        }
+        return true;
+    }
+
+    // NOTE_REMOVED lines for the notes this filter wants, or false, with
+    // none written, if there are more than QUEUE_LIMIT of them: as many as
+    // would have overflowed the queue had they been queued one by one
+    private boolean writeRemoved(Removed removed, ReplyWriter out){
+        int wanted = 0;
+        for (Note note : removed.notes){
+            if (wants(note, removed.noteWidth, removed.noteHeight) && ++wanted > QUEUE_LIMIT) return false;
+        }
+        if (wanted == 0) return true;
+        for (Note note : removed.notes){
+            if (wants(note, removed.noteWidth, removed.noteHeight)){
+                out.println("EVENT NOTE_REMOVED " + note.getX() + " " + note.getY());
+            }
+        }
+        return true;
+    }
+
+    // Block until there is something to drain or the subscription is closed
+    public synchronized void await() throws InterruptedException {
+        while (!closed && !overflowed && queue.isEmpty()){
+            wait();
+        }
+    }
+
+    public synchronized boolean hasEvents(){
+        return !closed && (overflowed || !queue.isEmpty());
+    }
+
+    public void setOnReady(Runnable onReady){
+        this.onReady = onReady;
+        if (hasEvents()) onReady.run();
+    }
+
+    public synchronized void close(){
+        closed = true;
+        queue.clear();
+        notifyAll();
+    }
+
+    public synchronized boolean isClosed(){
+        return closed;
+    }
+}
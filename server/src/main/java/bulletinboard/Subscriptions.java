@@ -0,0 +1,118 @@
+package bulletinboard;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+// Turns board changes into EVENT lines for every subscription whose filter
+// they pass. Runs under the board's locks like any BoardListener, so each
+// event line is built once and only queued, never written to a socket here.
+//
+//   EVENT NOTE_POSTED <x> <y> <colour> <message>
+//   EVENT PIN_ADDED <x> <y> <noteX> <noteY>
+//   EVENT PIN_REMOVED <x> <y> <noteX> <noteY>
+//   EVENT NOTE_REMOVED <x> <y>      (one per note a SHAKE took off)
+//   EVENT NOTE_EXPIRED <x> <y>      (its pins went with it)
+//   EVENT CLEARED
+//   EVENT RESYNC                    (events were dropped, GET again)
+public class Subscriptions implements BoardListener {
+    private final int noteWidth;
+    private final int noteHeight;
+    private final List<Subscription> active = new CopyOnWriteArrayList<>();
+
+    public Subscriptions(int noteWidth, int noteHeight){
+        this.noteWidth = noteWidth;
+        this.noteHeight = noteHeight;
+    }
+
+    public Subscription subscribe(String colour, int[] contains, String referenceTo){
+        Subscription subscription = new Subscription(colour, contains, referenceTo);
+        active.add(subscription);
+        return subscription;
+    }
+
+    public void unsubscribe(Subscription subscription){
+        active.remove(subscription);
+        subscription.close();
+    }
+
+    public int size(){
+        return active.size();
+    }
+
+    @Override
+    public void notePosted(Note note){
+        String line = null;
+        for (Subscription subscription : active){
+            if (subscription.wants(note, noteWidth, noteHeight)){
+                if (line == null){
+                    line = "EVENT NOTE_POSTED " + note.getX() + " " + note.getY() + " " + note.getColour() + " " + note.getMessage();
+                }
+                subscription.offer(line);
+            }
+        }
+    }
+
+    @Override
+    public void pinAdded(Pin pin){
+        pinEvent("EVENT PIN_ADDED ", pin);
+    }
+
+    @Override
+    public void pinsRemoved(int x, int y, List<Pin> removed){
+        if (active.isEmpty()) return;
+        for (Pin pin : removed){
+            pinEvent("EVENT PIN_REMOVED ", pin);
+        }
+    }
+
+    // SHAKE holds every tile lock and can take off any number of notes, so
+    // each subscription only queues the set; its lines are made when they
+    // are sent
+    @Override
+    public void shaken(Collection<Note> removed){
+        for (Subscription subscription : active){
+            subscription.offerRemoved(removed, noteWidth, noteHeight);
+        }
+    }
+
+    @Override
+    public void expired(List<Note> removed){
+        removeEvents("EVENT NOTE_EXPIRED ", removed);
+    }
+
+    @Override
+    public void cleared(){
+        for (Subscription subscription : active){
+            subscription.offer("EVENT CLEARED");
+        }
+    }
+
+    private void removeEvents(String prefix, Collection<Note> removed){
+        if (active.isEmpty()) return;
+        for (Note note : removed){
+            String line = null;
+            for (Subscription subscription : active){
+                if (subscription.wants(note, noteWidth, noteHeight)){
+                    if (line == null){
+                        line = prefix + note.getX() + " " + note.getY();
+                    }
+                    subscription.offer(line);
+                }
+            }
+        }
+    }
+
+    // Pins are filtered by the note they go through
+    private void pinEvent(String prefix, Pin pin){
+        Note note = pin.getNote();
+        String line = null;
+        for (Subscription subscription : active){
+            if (subscription.wants(note, noteWidth, noteHeight)){
+                if (line == null){
+                    line = prefix + pin.getX() + " " + pin.getY() + " " + note.getX() + " " + note.getY();
+                }
+                subscription.offer(line);
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package bulletinboard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// Trigram index over lowercased note messages, as the UTF-8 bytes the notes
+// keep them in. Any note containing a query also contains every three-byte
+// run of it, so the postings of the query's rarest trigram narrow the
+// candidates to a few notes; the exact substring check is still done on
+// those. Not thread safe, each tile guards its own index with its lock.
+public class TextIndex {
+    private final Map<Integer, Set<Note>> postings = new HashMap<>();
+
+    // Queries shorter than a trigram can't use the index
+    public static boolean canSearch(String lowerQuery){
+        return lowerQuery.length() >= 3;
+    }
+
+    public void add(Note note){
+        for (int trigram : trigrams(note)){
+            postings.computeIfAbsent(trigram, k -> new HashSet<>()).add(note);
+        }
+    }
+
+    public void remove(Note note){
+        for (int trigram : trigrams(note)){
+            Set<Note> set = postings.get(trigram);
+            if (set != null){
+                set.remove(note);
+                if (set.isEmpty()) postings.remove(trigram);
+            }
+        }
+    }
+
+    public void clear(){
+        postings.clear();
+    }
+
+    // Upper bound on how many notes find() would return: the postings of the
+    // query's rarest trigram
+    public int estimate(String lowerQuery){
+        int best = Integer.MAX_VALUE;
+        byte[] query = lowerQuery.getBytes(StandardCharsets.UTF_8);
+        for (int trigram : trigrams(query, 0, query.length)){
+            Set<Note> set = postings.get(trigram);
+            if (set == null) return 0;
+            best = Math.min(best, set.size());
+        }
+        return best;
+    }
+
+    // Number of distinct trigrams indexed
+    public int size(){
+        return postings.size();
+    }
+
+    // Add the notes whose lowercased message contains the query to out
+    public void find(String lowerQuery, Collection<Note> out){
+        byte[] query = lowerQuery.getBytes(StandardCharsets.UTF_8);
+        // start from the rarest trigram so the candidate set is smallest
+        Set<Note> smallest = null;
+        for (int trigram : trigrams(query, 0, query.length)){
+            Set<Note> set = postings.get(trigram);
+            if (set == null) return;
+            if (smallest == null || set.size() < smallest.size()) smallest = set;
+        }
+        for (Note note : smallest){
+            if (note.refersTo(query)) out.add(note);
+        }
+    }
+
+    private static Set<Integer> trigrams(Note note){
+        byte[] lower = note.getLower();
+        return trigrams(lower, note.getLowerOffset(), lower.length);
+    }
+
+    private static Set<Integer> trigrams(byte[] text, int from, int to){
+        Set<Integer> found = new HashSet<>();
+        for (int i = from; i + 3 <= to; i++){
+            found.add((text[i] & 0xFF) << 16 | (text[i + 1] & 0xFF) << 8 | (text[i + 2] & 0xFF));
+        }
+        return found;
+    }
+}
@@ -0,0 +1,150 @@
+package bulletinboard;
+
+import java.util.function.*;
+
+// Hierarchical timing wheel (Varghese and Lauck): timers are kept in LEVELS
+// rings of SLOTS lists, level L holding the ones due within SLOTS^(L+1)
+// ticks in the slot of their due tick's L-th base-SLOTS digit. Scheduling
+// and cancelling are O(1) whatever the number of timers. Each tick expires
+// one slot of level 0, and every SLOTS ticks the next slot of the level
+// above is spread down a level, so a timer is moved at most LEVELS - 1 times
+// before it is due.
+//
+// Ticks are whatever unit the caller counts in. Not thread safe.
+class TimingWheel<T> {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int LEVELS = 6;
+    // furthest ahead a timer is placed; later ones are placed there and
+    // placed again as it comes round
+    private static final long SPAN = 1L << (SLOT_BITS * LEVELS);
+
+    // A scheduled item, linked into its slot's list
+    static final class Timer<T> {
+        final T item;
+        final long due;
+        private Timer<T> prev;
+        private Timer<T> next;
+
+        private Timer(T item, long due) {
+            this.item = item;
+            this.due = due;
+        }
+    }
+
+    // circular list heads, level by level
+    private final Timer<T>[] slots;
+    // the last tick advanced to
+    private long now;
+    private int size = 0;
+
+    TimingWheel(long now) {
+        this.now = now;
+        this.slots = newSlots(LEVELS * SLOTS);
+        for (int i = 0; i < slots.length; i++) {
+            Timer<T> head = new Timer<>(null, 0);
+            head.prev = head.next = head;
+            slots[i] = head;
+        }
+    }
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static <T> Timer<T>[] newSlots(int n) {
+        return new Timer[n];
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Expire item at tick due; one already past expires on the next advance
+    Timer<T> schedule(T item, long due) {
+        Timer<T> timer = new Timer<>(item, due);
+        place(timer, now + 1);
+        size++;
+        return timer;
+    }
+
+    // Does nothing if the timer has already expired or been cancelled
+    void cancel(Timer<T> timer) {
+        if (timer.prev == null) return;
+        unlink(timer);
+        size--;
+    }
+
+    // Move on to tick to, handing every item due by then to expired
+    void advance(long to, Consumer<T> expired) {
+        while (now < to) {
+            if (size == 0) {
+                // nothing to cascade or expire on the way
+                now = to;
+                return;
+            }
+            now++;
+            // a level's slot comes due when every digit below it wraps to 0
+            for (int level = 1; level < LEVELS && digit(now, level - 1) == 0; level++) {
+                cascade(slots[level * SLOTS + digit(now, level)]);
+            }
+            Timer<T> head = slots[digit(now, 0)];
+            while (head.next != head) {
+                Timer<T> timer = head.next;
+                unlink(timer);
+                if (timer.due > now) {
+                    // placed early as beyond SPAN
+                    place(timer, now + 1);
+                    continue;
+                }
+                size--;
+                expired.accept(timer.item);
+            }
+        }
+    }
+
+    // Drop every timer
+    void clear() {
+        for (Timer<T> head : slots) {
+            for (Timer<T> timer = head.next; timer != head; ) {
+                Timer<T> next = timer.next;
+                timer.prev = timer.next = null;
+                timer = next;
+            }
+            head.prev = head.next = head;
+        }
+        size = 0;
+    }
+
+    private void cascade(Timer<T> head) {
+        while (head.next != head) {
+            Timer<T> timer = head.next;
+            unlink(timer);
+            // one due now goes to the level 0 slot about to be expired
+            place(timer, now);
+        }
+    }
+
+    // Level by how far off the timer is, slot by its due tick's digit there;
+    // earliest is the first tick whose slot hasn't been expired yet
+    private void place(Timer<T> timer, long earliest) {
+        long due = Math.min(Math.max(timer.due, earliest), now + SPAN - 1);
+        long delta = due - now;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << (SLOT_BITS * (level + 1))) {
+            level++;
+        }
+        Timer<T> head = slots[level * SLOTS + digit(due, level)];
+        timer.prev = head.prev;
+        timer.next = head;
+        head.prev.next = timer;
+        head.prev = timer;
+    }
+
+    private static <T> void unlink(Timer<T> timer) {
+        timer.prev.next = timer.next;
+        timer.next.prev = timer.prev;
+        timer.prev = timer.next = null;
+    }
+
+    private static int digit(long tick, int level) {
+        return (int) (tick >>> (SLOT_BITS * level)) & (SLOTS - 1);
+    }
+}
@@ -0,0 +1,38 @@
+package bulletinboard;
+
+// Commands one connection may send: refills at rate tokens a second up to
+// burst, and each command takes one. Used by a single connection's thread,
+// so it isn't synchronized.
+class TokenBucket {
+    private final double perNano;
+    private final double burst;
+    private double tokens;
+    private long last = System.nanoTime();
+
+    TokenBucket(double rate, double burst){
+        this.perNano = rate / 1e9;
+        this.burst = burst;
+        this.tokens = burst;
+    }
+
+    // Take a token for a command, or return false if there is none left
+    boolean tryTake(){
+        refill();
+        if (tokens < 1) return false;
+        tokens -= 1;
+        return true;
+    }
+
+    // Take a token for a line that can't be turned away, the rest of a
+    // BATCH; the bucket may go below zero and holds up what comes next
+    void take(){
+        refill();
+        tokens -= 1;
+    }
+
+    private void refill(){
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - last) * perNano);
+        last = now;
+    }
+}
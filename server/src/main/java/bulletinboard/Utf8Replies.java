@@ -0,0 +1,59 @@
+package bulletinboard;
+
+import java.nio.charset.StandardCharsets;
+
+// ReplyWriter for engines that send bytes. Text lines are encoded as UTF-8
+// into one reused buffer and handed over in a single write; a NOTE line is
+// handed over as the bytes its Note encoded when it was posted, with only
+// the PINNED= flag and line end added.
+abstract class Utf8Replies extends ReplyWriter {
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PINNED = (" PINNED=true" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+    private static final byte[] UNPINNED = (" PINNED=false" + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+
+    private byte[] buf = new byte[256];
+
+    // Send bytes[offset .. offset + length), which are only valid during the call
+    protected abstract void write(byte[] bytes, int offset, int length);
+
+    @Override
+    protected void writeLine(CharSequence text){
+        int n = text.length();
+        // at most 3 bytes per char, a surrogate pair 4 for the two
+        if (buf.length < n * 3 + NEWLINE.length){
+            buf = new byte[Math.max(n * 3 + NEWLINE.length, buf.length * 2)];
+        }
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                buf[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[size++] = (byte) (0xC0 | (c >> 6));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                buf[size++] = (byte) (0xF0 | (cp >> 18));
+                buf[size++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                buf[size++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, same replacement String.getBytes uses
+                buf[size++] = '?';
+            } else {
+                buf[size++] = (byte) (0xE0 | (c >> 12));
+                buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[size++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        System.arraycopy(NEWLINE, 0, buf, size, NEWLINE.length);
+        write(buf, 0, size + NEWLINE.length);
+    }
+
+    @Override
+    protected void writeNote(byte[] utf8, int offset, int length, boolean pinned){
+        write(utf8, offset, length);
+        byte[] flag = pinned ? PINNED : UNPINNED;
+        write(flag, 0, flag.length);
+    }
+}
@@ -0,0 +1,122 @@
+package bulletinboard;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.util.zip.*;
+
+// Append-only log file with group commit. Records are appended to an
+// in-memory buffer; sync() writes out everything buffered so far with one
+// write and at most one fsync, so writers that sync at the same time share it.
+// Each record is framed as length, CRC32, payload so a torn tail is detected.
+public class WriteAheadLog implements Closeable {
+    public enum Durability {
+        // written by the background flusher, never fsynced
+        NONE,
+        // written and fsynced by the background flusher, replies don't wait
+        ASYNC,
+        // replies wait until their record is fsynced, shared with concurrent writers
+        FSYNC
+    }
+
+    private final FileChannel channel;
+    private final boolean force;
+    private final Object appendLock = new Object();
+    private final Object flushLock = new Object();
+    // guarded by appendLock
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private long appended = 0;
+    // everything up to here has been written (and forced, if force is set)
+    private volatile long written = 0;
+
+    public WriteAheadLog(Path file, boolean force) throws IOException {
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.force = force;
+    }
+
+    // Buffer one record and return the position sync() must reach to cover it
+    public long append(byte[] payload){
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        synchronized (appendLock) {
+            DataOutputStream out = new DataOutputStream(buffer);
+            try {
+                out.writeInt(payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(payload);
+            } catch (IOException e) {
+                // ByteArrayOutputStream does not throw
+                throw new UncheckedIOException(e);
+            }
+            appended += 8 + payload.length;
+            return appended;
+        }
+    }
+
+    // Position of everything appended so far
+    public long appended(){
+        synchronized (appendLock) {
+            return appended;
+        }
+    }
+
+    // Make sure everything up to position is on disk. Whoever gets the flush
+    // lock first writes out the whole buffer, so the threads queued behind it
+    // usually find their records already written.
+    public void sync(long position) throws IOException {
+        if (written >= position) return;
+        synchronized (flushLock) {
+            if (written >= position) return;
+            byte[] data;
+            long upTo;
+            synchronized (appendLock) {
+                data = buffer.toByteArray();
+                buffer = new ByteArrayOutputStream(Math.max(32, data.length));
+                upTo = appended;
+            }
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            if (force) {
+                channel.force(false);
+            }
+            written = upTo;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync(appended());
+        channel.close();
+    }
+
+    // Read back the intact records of a log file, stopping at the first torn
+    // or corrupt one (the tail of a write interrupted by a crash)
+    public static void read(Path file, RecordHandler handler) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            while (true) {
+                byte[] payload;
+                int checksum;
+                try {
+                    int length = in.readInt();
+                    checksum = in.readInt();
+                    if (length < 0) return;
+                    payload = in.readNBytes(length);
+                    if (payload.length < length) return;
+                } catch (EOFException e) {
+                    return;
+                }
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) return;
+                handler.record(payload);
+            }
+        }
+    }
+
+    public interface RecordHandler {
+        void record(byte[] payload) throws IOException;
+    }
+}
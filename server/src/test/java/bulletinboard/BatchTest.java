@@ -0,0 +1,150 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.jupiter.api.Test;
+
+// A client sends the n lines of BATCH n whatever the server makes of the
+// header, so once the header has a count the next n lines belong to the
+// batch, even when it is refused: none of them may be applied or answered
+// on their own, or every later reply on the connection is off by n.
+class BatchTest {
+    private final Board board = new Board(100, 100, 2, 2, List.of("red", "blue"));
+    private final CommandProcessor processor = new CommandProcessor(board);
+    private final List<String> replies = new ArrayList<>();
+    private final ReplyWriter out = ReplyWriter.into(replies);
+
+    @Test
+    void appliesABatch() {
+        send("BATCH 3", "POST 1 1 red a", "PIN 2 2", "BOGUS");
+        assertEquals(List.of("OK 3", "OK NOTE_POSTED", "OK PIN_ADDED", "ERROR INVALID_FORMAT"), replies);
+        assertEquals(1, board.getNotes(null, null, null).size());
+    }
+
+    @Test
+    void locksOnlyTheTilesItChanges() throws Exception {
+        CountDownLatch inBatch = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        // holds the batch, and its locks, after its first POST
+        board.addListener(new BoardListener() {
+            @Override
+            public void notePosted(Note note) {
+                if (!note.getMessage().equals("held")) return;
+                inBatch.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void pinAdded(Pin pin) {
+            }
+
+            @Override
+            public void pinsRemoved(int x, int y, List<Pin> removed) {
+            }
+
+            @Override
+            public void shaken(Collection<Note> removed) {
+            }
+
+            @Override
+            public void expired(List<Note> removed) {
+            }
+
+            @Override
+            public void cleared() {
+            }
+        });
+        ExecutorService threads = Executors.newFixedThreadPool(2);
+        try {
+            Future<List<String>> batch = threads.submit(() ->
+                board.applyBatch(List.of(BoardOp.post(1, 1, "red", "held"), BoardOp.pin(2, 2))));
+            assertTrue(inBatch.await(10, TimeUnit.SECONDS));
+            // the far corner of the board is in another tile
+            Future<String> elsewhere = threads.submit(() -> board.postNote(96, 96, "blue", "elsewhere"));
+            assertEquals("OK NOTE_POSTED", elsewhere.get(10, TimeUnit.SECONDS));
+            release.countDown();
+            assertEquals(List.of("OK NOTE_POSTED", "OK PIN_ADDED"), batch.get(10, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            threads.shutdownNow();
+        }
+    }
+
+    @Test
+    void refusesATooLongBatchAfterItsLines() {
+        String[] lines = new String[CommandProcessor.MAX_BATCH + 2];
+        lines[0] = "BATCH " + (CommandProcessor.MAX_BATCH + 1);
+        for (int i = 1; i < lines.length; i++) {
+            lines[i] = "POST " + (i % 90) + " " + (i / 90) + " red m" + i;
+        }
+        send(lines);
+        assertEquals(List.of("ERROR INVALID_FORMAT"), replies);
+        assertEquals(0, board.getNotes(null, null, null).size());
+        assertNextCommandIsItsOwn();
+    }
+
+    @Test
+    void refusesAHeaderWithMoreAfterTheCount() {
+        send("BATCH 2 x", "POST 1 1 red a", "POST 3 3 red b");
+        assertEquals(List.of("ERROR INVALID_FORMAT"), replies);
+        assertEquals(0, board.getNotes(null, null, null).size());
+        assertNextCommandIsItsOwn();
+    }
+
+    @Test
+    void takesNoLinesWithoutACount() {
+        for (String header : new String[]{"BATCH", "BATCH 0", "BATCH -2", "BATCH x", "BATCH 99999999999"}) {
+            replies.clear();
+            send(header);
+            assertEquals(List.of("ERROR INVALID_FORMAT"), replies, header);
+            assertNextCommandIsItsOwn();
+        }
+    }
+
+    @Test
+    void answersALongLineInARefusedBatchWithTheBatch() {
+        send("BATCH 2 x", "POST 1 1 red a");
+        processor.lineTooLong(out);
+        assertEquals(List.of("ERROR INVALID_FORMAT"), replies);
+        assertNextCommandIsItsOwn();
+    }
+
+    @Test
+    void refusesARateLimitedBatchAsAUnit() {
+        // one command now and hardly any after
+        CommandProcessor limited = new CommandProcessor(BoardRegistry.of(board), null, new TokenBucket(1e-6, 1));
+        List<String> lines = new ArrayList<>();
+        ReplyWriter limitedOut = ReplyWriter.into(lines);
+        for (String line : new String[]{"POST 1 1 red a", "BATCH 2", "POST 3 3 red b", "PIN 1 1", "GET PINS"}) {
+            limited.handle(line, limitedOut);
+        }
+        assertEquals(List.of("OK NOTE_POSTED", "ERROR RATE_LIMITED", "ERROR RATE_LIMITED"), lines);
+        assertEquals(1, board.getNotes(null, null, null).size());
+    }
+
+    @Test
+    void clientsWontSendABatchTheServerRefuses() {
+        List<String> commands = Collections.nCopies(CommandProcessor.MAX_BATCH + 1, "PIN 1 1");
+        assertThrows(IllegalArgumentException.class, () -> ClientConnection.checkBatch(commands));
+        assertThrows(IllegalArgumentException.class, () -> ClientConnection.checkBatch(List.of()));
+        ClientConnection.checkBatch(commands.subList(0, CommandProcessor.MAX_BATCH));
+    }
+
+    private void send(String... lines) {
+        for (String line : lines) {
+            processor.handle(line, out);
+        }
+    }
+
+    private void assertNextCommandIsItsOwn() {
+        replies.clear();
+        send("GET PINS");
+        assertEquals(List.of("OK 0"), replies);
+    }
+}
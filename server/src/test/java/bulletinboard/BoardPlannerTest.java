@@ -0,0 +1,87 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// The GET planner picks the point, colour or text index, or a scan, for each
+// filter combination. Whatever it picks, the notes that pass the filters
+// must be the ones a plain scan of the whole board finds, in the same order.
+class BoardPlannerTest {
+    static final List<String> COLOURS = List.of("red", "blue", "green", "yellow", "white", "pink");
+    private static final String[] WORDS = {"meeting", "lunch", "Alpha", "beta gamma", "MeEt", "xy", "café", "ünïcode",
+        "quarterly review", "zebra"};
+
+    @Test
+    void plannedCandidatesMatchAScan() {
+        for (long seed = 1; seed <= 20; seed++) {
+            Random random = new Random(seed);
+            int noteWidth = 1 + random.nextInt(12);
+            int noteHeight = 1 + random.nextInt(12);
+            int width = noteWidth + random.nextInt(200);
+            int height = noteHeight + random.nextInt(200);
+            Board board = new Board(width, height, noteWidth, noteHeight, COLOURS);
+            for (int step = 0; step < 1500; step++) {
+                change(board, random, width, height);
+                if (step % 3 != 0) continue;
+                String colour = random.nextBoolean() ? null : COLOURS.get(random.nextInt(COLOURS.size()));
+                int[] contains = random.nextInt(3) == 0
+                    ? new int[]{random.nextInt(width + 4) - 2, random.nextInt(height + 4) - 2} : null;
+                String ref = random.nextBoolean() ? null : fragment(random);
+                String lowerRef = ref != null ? ref.toLowerCase() : null;
+                String where = "seed " + seed + " step " + step + " colour=" + colour + " contains="
+                    + Arrays.toString(contains) + " refersTo=" + ref;
+
+                // the indexes are only used while the published snapshot is
+                // behind the board, so plan before taking the snapshot
+                List<String> planned = filter(board.candidates(colour, contains, lowerRef), board, colour, contains, lowerRef);
+                List<String> scanned = filter(board.snapshot(), board, colour, contains, lowerRef);
+                assertEquals(scanned, planned, where);
+                assertEquals(scanned, board.getNotes(colour, contains, ref), where);
+            }
+        }
+    }
+
+    // A random POST, PIN, UNPIN, SHAKE or, rarely, CLEAR
+    static void change(Board board, Random random, int width, int height) {
+        int x = random.nextInt(width);
+        int y = random.nextInt(height);
+        int op = random.nextInt(100);
+        if (op < 55) {
+            board.postNote(x, y, COLOURS.get(random.nextInt(COLOURS.size())), WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(50));
+        } else if (op < 75) {
+            board.pinNote(x, y);
+        } else if (op < 93) {
+            board.unpinNote(x, y);
+        } else if (op < 99) {
+            board.shakeBoard();
+        } else if (random.nextInt(4) == 0) {
+            board.clearBoard();
+        }
+    }
+
+    // Part of a note's text, in any case; long enough for the text index or not
+    static String fragment(Random random) {
+        String word = WORDS[random.nextInt(WORDS.length)] + " " + random.nextInt(50);
+        int start = random.nextInt(word.length());
+        String part = word.substring(start, start + 1 + random.nextInt(word.length() - start));
+        return random.nextBoolean() ? part.toUpperCase() : part;
+    }
+
+    // The notes of snapshot passing every filter, checked one by one, as GET lines
+    static List<String> filter(BoardSnapshot snapshot, Board board, String colour, int[] contains, String lowerRef) {
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < snapshot.size(); i++) {
+            int x = snapshot.getX(i);
+            int y = snapshot.getY(i);
+            String message = snapshot.getMessage(i);
+            if (colour != null && !snapshot.getColour(i).equals(colour)) continue;
+            if (contains != null && (contains[0] < x || contains[0] >= x + board.getNoteWidth()
+                    || contains[1] < y || contains[1] >= y + board.getNoteHeight())) continue;
+            if (lowerRef != null && !message.toLowerCase().contains(lowerRef)) continue;
+            lines.add("NOTE " + x + " " + y + " " + snapshot.getColour(i) + " " + message + " PINNED=" + snapshot.isPinned(i));
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,138 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+// A board opened again on its store's directory must come back as it was
+// closed: the same notes, seqs and pins, whatever mix of records the log
+// holds, and with the next seq after any note ever posted. A record torn
+// off the end of the log by a crash is dropped and the rest kept.
+class BoardStoreTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void recoversShakeClearAndExpiry() throws Exception {
+        Board board = board();
+        BoardStore store = open(board);
+        Random random = new Random(11);
+        change(board, random, 300);
+        board.clearBoard();
+        change(board, random, 300);
+        // the board so far from a snapshot, the rest from the log after it
+        store.checkpoint();
+        board.shakeBoard();
+        change(board, random, 200);
+        board.shakeBoard();
+        change(board, random, 50);
+
+        // notes that expire while the store is logging, one of them pinned
+        int posted = 0;
+        for (int x = 0; x <= 56 && posted < 5; x += 4) {
+            if (board.postNote(x, 56, "red", "short lived " + x, 1).equals("OK NOTE_POSTED")) posted++;
+        }
+        assertEquals(5, posted);
+        BoardSnapshot withShort = board.snapshot();
+        long lastSeq = withShort.getSeq(withShort.size() - 1);
+        assertEquals("OK PIN_ADDED", board.pinNote(1, 57));
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (board.getNotes(null, null, "short lived").size() > 0) {
+            assertTrue(System.nanoTime() < deadline, "notes never expired");
+            Thread.sleep(20);
+        }
+        List<String> closed = state(board);
+        store.close();
+
+        Board recovered = board();
+        BoardStore reopened = open(recovered);
+        try {
+            assertEquals(closed, state(recovered));
+            // expired notes keep their seqs used up
+            assertEquals("OK NOTE_POSTED", recovered.postNote(0, 56, "blue", "after"));
+            BoardSnapshot after = recovered.snapshot();
+            assertTrue(after.getSeq(after.size() - 1) > lastSeq);
+        } finally {
+            reopened.close();
+        }
+    }
+
+    @Test
+    void dropsATornRecord() throws Exception {
+        Board board = board();
+        BoardStore store = open(board);
+        change(board, new Random(12), 300);
+        List<String> before = state(board);
+        // the last record of the log
+        board.clearBoard();
+        store.close();
+
+        Path log = newestLog();
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        Board recovered = board();
+        BoardStore reopened = open(recovered);
+        assertEquals(before, state(recovered));
+        // the torn log is never appended to, so what comes next is kept
+        change(recovered, new Random(13), 100);
+        List<String> closed = state(recovered);
+        reopened.close();
+
+        Board again = board();
+        BoardStore last = open(again);
+        try {
+            assertEquals(closed, state(again));
+        } finally {
+            last.close();
+        }
+    }
+
+    private static Board board() {
+        return new Board(60, 60, 4, 4, BoardPlannerTest.COLOURS);
+    }
+
+    private BoardStore open(Board board) throws IOException {
+        return BoardStore.open(board, dir, WriteAheadLog.Durability.FSYNC, Long.MAX_VALUE);
+    }
+
+    private static void change(Board board, Random random, int n) {
+        for (int i = 0; i < n; i++) {
+            BoardPlannerTest.change(board, random, 60, 60);
+        }
+    }
+
+    // Every note with its seq, then every pin
+    private static List<String> state(Board board) {
+        List<String> lines = new ArrayList<>();
+        BoardSnapshot snapshot = board.snapshot();
+        for (int i = 0; i < snapshot.size(); i++) {
+            lines.add(snapshot.getSeq(i) + " " + snapshot.getX(i) + " " + snapshot.getY(i) + " "
+                + snapshot.getColour(i) + " " + snapshot.getMessage(i) + " " + snapshot.isPinned(i));
+        }
+        lines.addAll(board.getPins());
+        return lines;
+    }
+
+    private Path newestLog() throws IOException {
+        Path newest = null;
+        long generation = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "wal-*.log")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                long at = Long.parseLong(name.substring("wal-".length(), name.length() - ".log".length()));
+                if (at > generation) {
+                    generation = at;
+                    newest = file;
+                }
+            }
+        }
+        return newest;
+    }
+}
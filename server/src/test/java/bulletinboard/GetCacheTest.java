@@ -0,0 +1,45 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// A cached GET result is only reused while nothing it could contain has
+// changed. Clients repeating a few filters over a changing board must see
+// exactly what a fresh scan finds, whether the reply came from the cache
+// or not.
+class GetCacheTest {
+    @Test
+    void cachedResultsMatchAScan() {
+        List<String> colours = BoardPlannerTest.COLOURS;
+        for (long seed = 1; seed <= 5; seed++) {
+            Random random = new Random(seed);
+            Board board = new Board(60, 60, 6, 4, colours);
+            // few enough queries that each comes round many times
+            List<Object[]> queries = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String colour = random.nextInt(3) == 0 ? null : colours.get(random.nextInt(colours.size()));
+                int[] contains = random.nextBoolean() ? null : new int[]{random.nextInt(62) - 1, random.nextInt(62) - 1};
+                String ref = random.nextInt(3) == 0 ? BoardPlannerTest.fragment(random) : null;
+                queries.add(new Object[]{colour, contains, ref});
+            }
+            for (int step = 0; step < 5000; step++) {
+                BoardPlannerTest.change(board, random, 60, 60);
+                for (int q = 0; q < 3; q++) {
+                    Object[] query = queries.get(random.nextInt(queries.size()));
+                    String colour = (String) query[0];
+                    int[] contains = (int[]) query[1];
+                    String ref = (String) query[2];
+                    List<String> scanned = BoardPlannerTest.filter(board.snapshot(), board, colour, contains,
+                        ref != null ? ref.toLowerCase() : null);
+                    assertEquals(scanned, board.getNotes(colour, contains, ref),
+                        "seed " + seed + " step " + step + " " + Arrays.deepToString(query));
+                }
+            }
+            if (GetCache.MAX_ENTRIES > 0) {
+                assertTrue(board.getMetrics().getGetCacheHits() > 0, "no GET was answered from the cache");
+            }
+        }
+    }
+}
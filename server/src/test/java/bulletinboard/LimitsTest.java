@@ -0,0 +1,150 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// The limits a client can't get around: a message over Limits.MAX_MESSAGE
+// bytes is refused, a line over Limits.MAX_LINE is read to its end and
+// answered on its own, and a client that sends commands but doesn't take
+// their replies is closed once they pass the output limit, while one that
+// reads a reply larger than the limit is sent all of it.
+class LimitsTest {
+    private static final long MAX_OUTPUT = 256 * 1024;
+
+    @Test
+    void refusesAMessageOverTheLimitInBytes() {
+        Board board = new Board(100, 100, 2, 2, List.of("red"));
+        CommandProcessor processor = new CommandProcessor(board);
+        List<String> replies = new ArrayList<>();
+        ReplyWriter out = ReplyWriter.into(replies);
+        processor.handle("POST 1 1 red " + "x".repeat(Limits.MAX_MESSAGE), out);
+        processor.handle("POST 5 5 red " + "x".repeat(Limits.MAX_MESSAGE + 1), out);
+        // two bytes each in UTF-8
+        processor.handle("POST 9 9 red " + "é".repeat(Limits.MAX_MESSAGE / 2 + 1), out);
+        assertEquals(List.of("OK NOTE_POSTED", "ERROR MESSAGE_TOO_LONG", "ERROR MESSAGE_TOO_LONG"), replies);
+        assertEquals(1, board.getNotes(null, null, null).size());
+    }
+
+    @Test
+    void readsALongLineToItsEnd() throws IOException {
+        LineReader reader = new LineReader(new StringReader("GET\n" + "x".repeat(20) + "\r\nGET PINS"), 10);
+        assertEquals("GET", reader.readLine().toString());
+        assertFalse(reader.isTooLong());
+        reader.readLine();
+        assertTrue(reader.isTooLong());
+        assertEquals("GET PINS", reader.readLine().toString());
+        assertFalse(reader.isTooLong());
+        assertNull(reader.readLine());
+    }
+
+    @Test
+    void nioAnswersALongLineOnItsOwn() throws Exception {
+        Board board = new Board(100, 100, 2, 2, List.of("red"));
+        try (Client client = new Client(serve(board))) {
+            client.send("POST 1 1 red " + "x".repeat(Limits.MAX_LINE) + "\nGET PINS\n");
+            assertEquals("ERROR LINE_TOO_LONG", client.readLine());
+            assertEquals("OK 0", client.readLine());
+        }
+        assertEquals(0, board.getNotes(null, null, null).size());
+        assertEquals(1, board.getMetrics().getLinesTooLong());
+    }
+
+    @Test
+    void nioSendsAReaderMoreThanTheOutputLimit() throws Exception {
+        Board board = new Board(400, 400, 2, 2, List.of("red", "blue"));
+        int notes = 0;
+        for (int x = 0; x < 400; x += 2) {
+            for (int y = 0; y < 100; y += 2) {
+                board.postNote(x, y, notes % 2 == 0 ? "red" : "blue", "note " + notes++ + " with some text");
+            }
+        }
+        try (Client client = new Client(serve(board))) {
+            for (String get : new String[]{"GET", "GET colour=red", "GET"}) {
+                client.send(get + "\n");
+                String count = client.readLine();
+                int expected = get.equals("GET") ? notes : notes / 2;
+                assertEquals("OK " + expected, count);
+                long bytes = 0;
+                for (int i = 0; i < expected; i++) {
+                    bytes += client.readLine().length();
+                }
+                assertTrue(bytes > MAX_OUTPUT);
+            }
+            client.send("GET PINS\n");
+            assertEquals("OK 0", client.readLine());
+        }
+        assertEquals(0, board.getMetrics().getSlowConsumers());
+    }
+
+    @Test
+    void nioClosesAClientThatDoesntRead() throws Exception {
+        Board board = new Board(400, 400, 2, 2, List.of("red"));
+        for (int x = 0; x < 400; x += 2) {
+            for (int y = 0; y < 40; y += 2) {
+                board.postNote(x, y, "red", "n");
+                board.pinNote(x, y);
+            }
+        }
+        // each GET PINS is answered with some 40 KB, and none are read
+        try (Client client = new Client(serve(board))) {
+            client.send("GET PINS\n".repeat(100));
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (board.getMetrics().getSlowConsumers() == 0) {
+                assertTrue(System.nanoTime() < deadline, "never closed");
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    // A nio server for board on a port the OS picks, with the output limit
+    // of this test; the server thread lives as long as the test JVM
+    private static int serve(Board board) throws InterruptedException {
+        NioServer server = new NioServer(0, BoardRegistry.of(board), null, MAX_OUTPUT);
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, "nio-test");
+        thread.setDaemon(true);
+        thread.start();
+        while (server.getPort() == 0) {
+            Thread.sleep(10);
+        }
+        return server.getPort();
+    }
+
+    // A raw text connection, past the handshake
+    private static final class Client implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+
+        Client(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 0; i < 3; i++) {
+                in.readLine();
+            }
+        }
+
+        void send(String text) throws IOException {
+            socket.getOutputStream().write(text.getBytes(StandardCharsets.UTF_8));
+            socket.getOutputStream().flush();
+        }
+
+        String readLine() throws IOException {
+            return in.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.jupiter.api.Test;
+
+// Paging with GET limit= and after= while another thread posts and shakes.
+// Cursors are seqs, so however the board changes between pages, the notes
+// of a paging come in posting order with none twice, and a note on the
+// board from the first page to the last, here a pinned one, is in exactly
+// one page.
+class PagingTest {
+    private static final int PINNED = 300;
+
+    @Test
+    void pagesStayInOrderAcrossPostsAndShakes() throws Exception {
+        Board board = new Board(200, 200, 2, 2, List.of("red", "blue"));
+        for (int i = 0; i < PINNED; i++) {
+            int x = (i % 30) * 6;
+            int y = (i / 30) * 6;
+            assertEquals("OK NOTE_POSTED", board.postNote(x, y, i % 2 == 0 ? "red" : "blue", "p" + i));
+            assertEquals("OK PIN_ADDED", board.pinNote(x, y));
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        ExecutorService writer = Executors.newSingleThreadExecutor();
+        Future<Integer> writes = writer.submit(() -> {
+            Random random = new Random(25);
+            int posted = 0;
+            while (!done.get()) {
+                // never on a pinned note's corner, so none is unpinned
+                int x = random.nextInt(199);
+                int y = random.nextInt(199);
+                if (x % 6 == 0 && y % 6 == 0) continue;
+                board.postNote(x, y, random.nextBoolean() ? "red" : "blue", "w" + posted++);
+                if (posted % 50 == 0) board.shakeBoard();
+            }
+            return posted;
+        });
+        try {
+            for (int pass = 0; pass < 20; pass++) {
+                checkPaging(board, null, 1 + pass % 9);
+                checkPaging(board, "red", 1 + pass % 9);
+            }
+        } finally {
+            done.set(true);
+            writer.shutdown();
+        }
+        assertTrue(writes.get(10, TimeUnit.SECONDS) > 0);
+    }
+
+    private static void checkPaging(Board board, String colour, int limit) {
+        long after = Board.FROM_START;
+        long lastKey = -1;
+        Set<Integer> pinned = new HashSet<>();
+        while (true) {
+            List<String> lines = new ArrayList<>();
+            board.streamNotes(colour, null, null, after, limit, ReplyWriter.into(lines));
+            assertEquals("OK " + (lines.size() - 1), lines.get(0));
+            String last = lines.get(lines.size() - 1);
+            boolean more = last.startsWith("CURSOR ");
+            List<String> notes = lines.subList(1, more ? lines.size() - 1 : lines.size());
+            assertTrue(notes.size() <= limit);
+            for (String note : notes) {
+                String[] parts = note.split(" ");
+                if (colour != null) assertEquals(colour, parts[3]);
+                String message = parts[4];
+                // pinned notes were all posted before any other
+                long key = message.startsWith("p") ? Integer.parseInt(message.substring(1))
+                    : PINNED + Long.parseLong(message.substring(1));
+                assertTrue(key > lastKey, "out of posting order: " + note);
+                lastKey = key;
+                if (message.startsWith("p")) pinned.add(Integer.parseInt(message.substring(1)));
+            }
+            if (!more) break;
+            assertEquals(limit, notes.size());
+            after = Long.parseLong(last.substring("CURSOR ".length()));
+        }
+        for (int i = 0; i < PINNED; i++) {
+            if (colour == null || colour.equals(i % 2 == 0 ? "red" : "blue")) {
+                assertTrue(pinned.contains(i), "pinned note p" + i + " missing");
+            }
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// A primary and a replica in one JVM, on loopback ports the OS picks, with a
+// proxy between them that is cut and restored. A replica cut off for fewer
+// records than the primary keeps must carry on from the log; one cut off
+// for more must be sent the whole board again. Either way it ends up with
+// the primary's notes and pins, and its clients can read but not write.
+class ReplicationTest {
+    private static final int BACKLOG = 50;
+    // where the replica sends clients that try to write; nothing listens
+    private static final int CLIENT_PORT = 7000;
+
+    @Test
+    void followsThePrimaryAcrossCuts() throws Exception {
+        BoardRegistry primary = registry();
+        primary.enableReplication(BACKLOG);
+        Board board = primary.acquire(BoardRegistry.DEFAULT);
+        ReplicationServer server = new ReplicationServer(0, CLIENT_PORT, primary);
+        server.start();
+        Random random = new Random(24);
+        try (Proxy proxy = new Proxy(server.getPort())) {
+            BoardRegistry replica = registry();
+            replica.follow("127.0.0.1", proxy.getPort());
+            CommandProcessor client = new CommandProcessor(replica);
+
+            // never in step yet
+            assertEquals(List.of("ERROR REPLICA_LAGGING"), send(client, "GET"));
+            assertEquals(List.of("ERROR READ_ONLY"), send(client, "POST 1 1 red a"));
+
+            writeRecords(primary, board, random, 20);
+            proxy.restore();
+            awaitInStep(primary, replica);
+            assertEquals("0", stat(replica, "reconnects"));
+            assertEquals("1", stat(replica, "snapshots"));
+
+            String readOnly = "ERROR READ_ONLY 127.0.0.1:" + CLIENT_PORT;
+            assertEquals(List.of(readOnly), send(client, "POST 1 1 red a"));
+            assertEquals(List.of(readOnly), send(client, "SHAKE"));
+            // refused as a whole, its lines never answered on their own
+            assertEquals(List.of(readOnly), send(client, "BATCH 2", "POST 1 1 red a", "PIN 1 1"));
+            assertEquals(board.getPins().size() + 1, send(client, "GET PINS").size());
+
+            proxy.cut();
+            writeRecords(primary, board, random, BACKLOG / 2);
+            proxy.restore();
+            awaitInStep(primary, replica);
+            assertEquals("1", stat(replica, "reconnects"));
+            assertEquals("1", stat(replica, "snapshots"), "resumed from the log");
+
+            proxy.cut();
+            writeRecords(primary, board, random, BACKLOG * 2);
+            proxy.restore();
+            awaitInStep(primary, replica);
+            assertEquals("2", stat(replica, "reconnects"));
+            assertEquals("2", stat(replica, "snapshots"), "sent the whole board past the backlog");
+        }
+    }
+
+    private static BoardRegistry registry() {
+        BoardRegistry registry = new BoardRegistry(new Metrics(), null, WriteAheadLog.Durability.NONE, 0);
+        registry.define(BoardRegistry.DEFAULT, 60, 60, 4, 4, BoardPlannerTest.COLOURS);
+        return registry;
+    }
+
+    // Change the board until the primary's log has at least n more records
+    private static void writeRecords(BoardRegistry primary, Board board, Random random, int n) {
+        long until = Long.parseLong(stat(primary, "last")) + n;
+        while (Long.parseLong(stat(primary, "last")) < until) {
+            BoardPlannerTest.change(board, random, 60, 60);
+        }
+    }
+
+    // Wait for the replica to have every record the primary has, and the
+    // same notes and pins
+    private static void awaitInStep(BoardRegistry primary, BoardRegistry replica) throws Exception {
+        Board expected = primary.acquire(BoardRegistry.DEFAULT);
+        Board actual = replica.acquire(BoardRegistry.DEFAULT);
+        try {
+            long deadline = System.nanoTime() + 15_000_000_000L;
+            while (true) {
+                boolean caughtUp = stat(primary, "last").equals(stat(replica, "applied"))
+                    && stat(replica, "behind").equals("0");
+                if (caughtUp && expected.getNotes(null, null, null).equals(actual.getNotes(null, null, null))
+                        && expected.getPins().equals(actual.getPins())) {
+                    return;
+                }
+                assertTrue(System.nanoTime() < deadline, "replica never caught up: " + replica.getReplicationStats(BoardRegistry.DEFAULT));
+                Thread.sleep(20);
+            }
+        } finally {
+            primary.release(BoardRegistry.DEFAULT);
+            replica.release(BoardRegistry.DEFAULT);
+        }
+    }
+
+    // One field of the default board's STAT REPLICATION line
+    private static String stat(BoardRegistry registry, String key) {
+        for (String part : registry.getReplicationStats(BoardRegistry.DEFAULT).split(" ")) {
+            if (part.startsWith(key + "=")) return part.substring(key.length() + 1);
+        }
+        throw new AssertionError("no " + key);
+    }
+
+    private static List<String> send(CommandProcessor client, String... lines) {
+        List<String> replies = new ArrayList<>();
+        for (String line : lines) {
+            client.handle(line, ReplyWriter.into(replies));
+        }
+        return replies;
+    }
+
+    // Forwards connections to the replication port while up; cut closes
+    // the ones open and turns new ones away. Starts cut.
+    private static final class Proxy implements Closeable {
+        private final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final int target;
+        private final List<Socket> open = new ArrayList<>();
+        private volatile boolean up = false;
+
+        Proxy(int target) throws IOException {
+            this.target = target;
+            Thread thread = new Thread(this::acceptLoop, "proxy");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        void restore() {
+            up = true;
+        }
+
+        void cut() throws IOException {
+            up = false;
+            synchronized (open) {
+                for (Socket socket : open) {
+                    socket.close();
+                }
+                open.clear();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            cut();
+        }
+
+        private void acceptLoop() {
+            while (true) {
+                try {
+                    Socket from = serverSocket.accept();
+                    if (!up) {
+                        from.close();
+                        continue;
+                    }
+                    Socket to = new Socket(InetAddress.getLoopbackAddress(), target);
+                    synchronized (open) {
+                        open.add(from);
+                        open.add(to);
+                    }
+                    pump(from, to);
+                    pump(to, from);
+                } catch (IOException e) {
+                    if (serverSocket.isClosed()) return;
+                }
+            }
+        }
+
+        private static void pump(Socket from, Socket to) {
+            Thread thread = new Thread(() -> {
+                byte[] buf = new byte[8192];
+                try {
+                    InputStream in = from.getInputStream();
+                    OutputStream out = to.getOutputStream();
+                    int n;
+                    while ((n = in.read(buf)) > 0) {
+                        out.write(buf, 0, n);
+                    }
+                } catch (IOException e) {
+                    // cut, or one end went away
+                }
+                try {
+                    from.close();
+                    to.close();
+                } catch (IOException e) {
+                    // closed either way
+                }
+            }, "proxy-pump");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// SHAKE only queues its removed notes for each subscription; the NOTE_REMOVED
+// lines are made when the events are sent, after SHAKE has let go of the
+// tiles and while the sweeper is taking the same notes out of the indexes.
+// They must still be one line per removed note the filter wants, in order
+// with the events around them.
+class SubscriptionsTest {
+    private final Board board = new Board(400, 400, 2, 2, List.of("red", "blue"));
+
+    @Test
+    void shakeEventsAreMadeWhenSent() throws Exception {
+        Subscription reds = board.getSubscriptions().subscribe("red", null, null);
+        Subscription point = board.getSubscriptions().subscribe(null, new int[]{31, 1}, null);
+        Set<String> removedReds = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            int x = (i % 20) * 10;
+            int y = (i / 20) * 10;
+            String colour = i % 3 == 0 ? "blue" : "red";
+            assertEquals("OK NOTE_POSTED", board.postNote(x, y, colour, "note " + i));
+            if (i % 7 == 0) {
+                board.pinNote(x, y);
+            } else if (colour.equals("red")) {
+                removedReds.add("EVENT NOTE_REMOVED " + x + " " + y);
+            }
+        }
+        drain(reds);
+        drain(point);
+        assertEquals("OK SHAKE_COMPLETE", board.shakeBoard());
+        // posted where a shaken note was, maybe before the sweeper got to it
+        assertEquals("OK NOTE_POSTED", board.postNote(10, 0, "red", "after"));
+
+        List<String> lines = drain(reds);
+        assertEquals("EVENT NOTE_POSTED 10 0 red after", lines.get(lines.size() - 1));
+        List<String> removed = lines.subList(0, lines.size() - 1);
+        assertEquals(removedReds.size(), removed.size());
+        assertEquals(removedReds, new HashSet<>(removed));
+        assertEquals(List.of("EVENT NOTE_REMOVED 30 0"), drain(point));
+    }
+
+    @Test
+    void aShakeTooBigForTheQueueIsAResync() {
+        Subscription all = board.getSubscriptions().subscribe(null, null, null);
+        Subscription point = board.getSubscriptions().subscribe(null, new int[]{1, 1}, null);
+        int posted = 0;
+        for (int x = 0; x < 400 && posted <= Subscription.QUEUE_LIMIT; x += 2) {
+            for (int y = 0; y < 400 && posted <= Subscription.QUEUE_LIMIT; y += 2) {
+                board.postNote(x, y, "red", "n");
+                posted++;
+            }
+        }
+        drain(all);
+        drain(point);
+        board.shakeBoard();
+        assertEquals(List.of("EVENT RESYNC"), drain(all));
+        // a narrow filter still gets its few lines
+        assertEquals(List.of("EVENT NOTE_REMOVED 0 0"), drain(point));
+    }
+
+    private static List<String> drain(Subscription subscription) {
+        List<String> lines = new ArrayList<>();
+        assertTrue(subscription.drainTo(ReplyWriter.into(lines)));
+        return lines;
+    }
+}
@@ -0,0 +1,72 @@
+package bulletinboard;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+// The wheel must expire exactly what a plain map of item to due tick says is
+// due, on the advance that passes it, whether the timer sat in level 0 or
+// was cascaded down from a higher level, and never expire one early.
+class TimingWheelTest {
+    @Test
+    void expiresWhatAModelSaysIsDue() {
+        for (long seed = 1; seed <= 20; seed++) {
+            Random random = new Random(seed);
+            long now = random.nextInt(1 << 20);
+            TimingWheel<Integer> wheel = new TimingWheel<>(now);
+            Map<Integer, Long> due = new HashMap<>();
+            Map<Integer, TimingWheel.Timer<Integer>> timers = new HashMap<>();
+            List<Integer> expired = new ArrayList<>();
+            int next = 0;
+            for (int step = 0; step < 5000; step++) {
+                int op = random.nextInt(100);
+                if (op < 50) {
+                    long at = now + delay(random);
+                    timers.put(next, wheel.schedule(next, at));
+                    due.put(next, at);
+                    next++;
+                } else if (op < 65) {
+                    // any timer made so far, expired and cancelled ones too
+                    if (next == 0) continue;
+                    int item = random.nextInt(next);
+                    wheel.cancel(timers.get(item));
+                    due.remove(item);
+                } else if (op < 99) {
+                    // advance goes a tick at a time, so not too far
+                    long to = now + (random.nextInt(10) == 0 ? random.nextInt(64 * 64 * 4) : random.nextInt(100));
+                    expired.clear();
+                    wheel.advance(to, expired::add);
+                    Set<Integer> expected = new HashSet<>();
+                    for (Map.Entry<Integer, Long> entry : due.entrySet()) {
+                        // anything scheduled in the past comes due on the next tick
+                        if (to > now && entry.getValue() <= to) expected.add(entry.getKey());
+                    }
+                    assertEquals(expected.size(), expired.size(), "seed " + seed + " step " + step + " expired twice");
+                    assertEquals(expected, new HashSet<>(expired), "seed " + seed + " step " + step);
+                    due.keySet().removeAll(expected);
+                    now = to;
+                } else {
+                    wheel.clear();
+                    due.clear();
+                }
+                assertEquals(due.size(), wheel.size(), "seed " + seed + " step " + step);
+            }
+        }
+    }
+
+    // Mostly a few ticks, sometimes across a level or past the wheel's span,
+    // and sometimes already past
+    private static long delay(Random random) {
+        switch (random.nextInt(6)) {
+            case 0:
+                return -random.nextInt(100);
+            case 1:
+                return random.nextInt(64 * 64 * 64);
+            case 2:
+                return 1L << (36 + random.nextInt(3));
+            default:
+                return random.nextInt(200);
+        }
+    }
+}